@@ -8,6 +8,7 @@
 import java.io.*;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.*;
 import java.util.function.*;
 import java.util.stream.*;
 
@@ -17,8 +18,8 @@ import static java.lang.System.out;
 /****************************************************************************************
  * This class implements relational database tables (including attribute names, domains
  * and a list of tuples.  Five basic relational algebra operators are provided: project,
- * select, union, minus join.  The insert data manipulation operator is also provided.
- * Missing are update and delete data manipulation operators.
+ * select, union, minus join.  The insert and delete data manipulation operators are also
+ * provided.  Missing is the update data manipulation operator.
  */
 public class BPTreeTable
        implements Serializable
@@ -35,6 +36,16 @@ public class BPTreeTable
      */
     private static int count = 0;
 
+    /** The number of distinct tuples union and project hold in memory before they
+     *  spill to disk.
+     */
+    private static int distinctLimit = DistinctTuples.DEFAULT_LIMIT;
+
+    /** The fewest tuples a parallel select scans in parallel, unless the table sets
+     *  its own threshold.
+     */
+    public static final int PARALLEL_THRESHOLD = 10000;
+
     /** BPTreeTable name.
      */
     private final String name;
@@ -50,17 +61,86 @@ public class BPTreeTable
      */
     private final Class [] domain;
 
-    /** Collection of tuples (data storage).
+    /** Collection of tuples (data storage): a list of rows, or a ColumnStore once the
+     *  table stores its columns (see storeColumns).
      */
-    protected final List <Comparable []> tuples;
+    protected List <Comparable []> tuples;
 
     /** Primary key. 
      */
     private final String [] key;
 
-    /** Index into tuples (maps key to tuple number).
+    /** Index into tuples (maps key to tuple number).  It is not saved with the table,
+     *  but bulk loaded again from the tuples when the table is read back in.
      */
-    private final Map <KeyType, Comparable []> index;
+    private transient Map <KeyType, Comparable []> index;
+
+    /** Secondary indexes, by the attributes they are on.  Their descriptions are saved
+     *  with the table, and their B+Trees rebuilt from the tuples when it is read back.
+     */
+    private Map <String, SecondaryIndex> indexes = new LinkedHashMap <> ();
+
+    /** The fewest tuples for select (Predicate) to scan in parallel, or 0 to always
+     *  scan sequentially.
+     */
+    private transient int parallelThreshold = 0;
+
+    /************************************************************************************
+     * This nested class describes a secondary index: the attributes it is on and
+     * whether their values must be unique.  Its B+Tree maps each combination of values
+     * to the ids (positions in tuples) of the tuples having it.
+     */
+    private static class SecondaryIndex
+            implements Serializable
+    {
+        final String [] attrs;
+        final int []    cols;
+        final boolean   unique;
+        transient MultiBpTreeMap <KeyType> ids;
+
+        SecondaryIndex (String [] _attrs, int [] _cols, boolean _unique)
+        {
+            attrs  = _attrs;
+            cols   = _cols;
+            unique = _unique;
+        } // constructor
+    } // SecondaryIndex class
+
+    /************************************************************************************
+     * This nested class is the fork-join task for a parallel select.  It splits its
+     * Spliterator in two until a part is no larger than the chunk size, filters that
+     * part, and returns the selected tuples of its parts in order.
+     */
+    private static class SelectTask
+            extends RecursiveTask <List <Comparable []>>
+    {
+        private final Spliterator <Comparable []> part;
+        private final Predicate <Comparable []>   predicate;
+        private final int                         chunk;
+
+        SelectTask (Spliterator <Comparable []> _part, Predicate <Comparable []> _predicate, int _chunk)
+        {
+            part      = _part;
+            predicate = _predicate;
+            chunk     = _chunk;
+        } // constructor
+
+        protected List <Comparable []> compute ()
+        {
+            Spliterator <Comparable []> prefix = (part.estimateSize () > chunk) ? part.trySplit () : null;
+            if (prefix != null) {
+                SelectTask left = new SelectTask (prefix, predicate, chunk);
+                left.fork ();
+                List <Comparable []> right = new SelectTask (part, predicate, chunk).compute ();
+                List <Comparable []> rows  = left.join ();
+                rows.addAll (right);
+                return rows;
+            } // if
+            List <Comparable []> rows = new ArrayList <> ();
+            part.forEachRemaining (tup -> { if (predicate.test (tup)) rows.add (tup); });
+            return rows;
+        } // compute
+    } // SelectTask class
 
     //----------------------------------------------------------------------------------
     // Constructors
@@ -81,7 +161,7 @@ public class BPTreeTable
         domain    = _domain;
         key       = _key;
         tuples    = new ArrayList <> ();
-        index     = new BpTreeMap<>(KeyType.class, Comparable[].class);      // also try BPTreeMap, LinHashMap or ExtHashMap
+        index     = newIndex ();
     } // constructor
 
     /************************************************************************************
@@ -101,7 +181,23 @@ public class BPTreeTable
         domain    = _domain;
         key       = _key;
         tuples    = _tuples;
-        index     = new BpTreeMap<>(KeyType.class, Comparable[].class);       // also try BPTreeMap, LinHashMap or ExtHashMap
+        index     = newIndex ();
+        buildIndex ();
+    } // constructor
+
+    /************************************************************************************
+     * Construct a table from the raw string specifications and data in _tuples list.
+     *
+     * @param name        the name of the relation
+     * @param attributes  the string containing attributes names
+     * @param domains     the string containing attribute domains (data types)
+     * @param _key        the string containing the primary key attributes
+     * @param _tuples     the list of tuples containing the data
+     */
+    public BPTreeTable (String name, String attributes, String domains, String _key,
+                        List <Comparable []> _tuples)
+    {
+        this (name, attributes.split (" "), findClass (domains.split (" ")), _key.split (" "), _tuples);
     } // constructor
 
     /************************************************************************************
@@ -121,9 +217,22 @@ public class BPTreeTable
     // Public Methods
     //----------------------------------------------------------------------------------
 
+    /************************************************************************************
+     * Set the number of distinct tuples union and project may hold in memory while
+     * removing duplicates, beyond which they partition the rest to disk.
+     *
+     * @param limit  the number of tuples (at least 1)
+     */
+    public static void setDistinctLimit (int limit)
+    {
+        if (limit < 1) throw new IllegalArgumentException ("setDistinctLimit: limit must be positive");
+        distinctLimit = limit;
+    } // setDistinctLimit
+
     /************************************************************************************
      * Project the tuples onto a lower dimension by keeping only the given attributes.
-     * Check whether the original key is included in the projection.
+     * Check whether the original key is included in the projection.  If it is not,
+     * duplicate tuples are removed in one pass (see DistinctTuples).
      *
      * #usage movie.project ("title year studioNo")
      *
@@ -135,19 +244,41 @@ public class BPTreeTable
     	//out.println ("RA> " + name + ".project (" + attributes + ")");
         String [] attrs     = attributes.split (" ");
         Class []  colDomain = extractDom (match (attrs), domain);
-        String [] newKey    = (Arrays.asList (attrs).containsAll (Arrays.asList (key))) ? key : attrs;
-
-        List <Comparable []> rows = new ArrayList<Comparable[]>();
-        for(Map.Entry<KeyType, Comparable[]> mapIndex: index.entrySet()){
-        	rows.add(extract(mapIndex.getValue(),attrs));
-		
-        		}
+        boolean   keyKept   = Arrays.asList (attrs).containsAll (Arrays.asList (key));
+        String [] newKey    = keyKept ? key : attrs;
+
+        List <Comparable []> rows;
+        if (tuples instanceof ColumnStore && scanIndex () instanceof TupleIdIndex) {
+            // Read the projected columns of the indexed tuples, with no rows in between
+            ColumnStore store = (ColumnStore) tuples;
+            Collection <Integer> idList = ((TupleIdIndex) scanIndex ()).ids ().values ();
+            int [] ids = new int [idList.size ()], cols = match (attrs);
+            int    n   = 0;
+            for (int id : idList) ids [n++] = id;
+            if (keyKept) {
+                rows = store.project (cols, ids);
+            } else {
+                DistinctTuples distinct = new DistinctTuples (attrs.length, distinctLimit);
+                for (int id : ids) distinct.add (store.cells (id, cols));
+                rows = distinct.rows ();
+            } // if
+        } else if (keyKept) {
+            // The index has one tuple per key, so the projections are already distinct
+            rows = new ArrayList <> ();
+            for (Comparable [] tup : scanIndex ().values ()) rows.add (extract (tup, attrs));
+        } else {
+            DistinctTuples distinct = new DistinctTuples (attrs.length, distinctLimit);
+            for (Comparable [] tup : scanIndex ().values ()) distinct.add (extract (tup, attrs));
+            rows = distinct.rows ();
+        } // if
 
         return new BPTreeTable (name + count++, attrs, colDomain, newKey, rows);
     } // project
 
     /************************************************************************************
-     * Select the tuples satisfying the given predicate (Boolean function).
+     * Select the tuples satisfying the given predicate (Boolean function).  The tuples
+     * are scanned in parallel if the table is set to (see setParallelSelect) and is
+     * large enough.
      *
      * #usage movie.select (t -> t[movie.col("year")].equals (1977))
      *
@@ -155,23 +286,57 @@ public class BPTreeTable
      * @return  a table with tuples satisfying the predicate
      */
     public BPTreeTable select (Predicate <Comparable []> predicate)
+    {
+        return select (predicate, parallelThreshold > 0);
+    } // select
+
+    /************************************************************************************
+     * Select the tuples satisfying the given predicate (Boolean function), choosing
+     * for this call whether to scan in parallel.  A parallel scan splits a Spliterator
+     * over the tuples into chunks, filters them as tasks on the common ForkJoinPool,
+     * and concatenates the results in the order of the tuples, so the result is the
+     * same as a sequential scan's.  The predicate must then be safe to call from
+     * several threads at once.  A table smaller than the threshold (the table's, else
+     * PARALLEL_THRESHOLD) is scanned sequentially anyway.
+     *
+     * #usage movie.select (t -> t[movie.col("year")].equals (1977), true)
+     *
+     * @param predicate  the check condition for tuples
+     * @param parallel   whether to scan in parallel
+     * @return  a table with tuples satisfying the predicate
+     */
+    public BPTreeTable select (Predicate <Comparable []> predicate, boolean parallel)
     {
         //out.println ("RA> " + name + ".select (" + predicate + ")");
+        int threshold = (parallelThreshold > 0) ? parallelThreshold : PARALLEL_THRESHOLD;
 
-        List <Comparable []> rows = new ArrayList<Comparable []>();
-        
-        //BPTreeTable check = new BPTreeTable("check", attribute, domain, key, rows);
-        for (Comparable [] tup : this.tuples) 
-    	{
-        	if(predicate.test(tup))
-    		{
-    			rows.add(tup);
-    		}
-        } 
+        List <Comparable []> rows;
+        if (parallel && tuples.size () >= threshold) {
+            int chunk = Math.max (1024, tuples.size () / (4 * ForkJoinPool.getCommonPoolParallelism ()));
+            rows = ForkJoinPool.commonPool ().invoke (new SelectTask (tuples.spliterator (), predicate, chunk));
+        } else {
+            rows = new ArrayList <> ();
+            for (Comparable [] tup : tuples) {
+                if (predicate.test (tup)) rows.add (tup);
+            } // for
+        } // if
 
         return new BPTreeTable (name + count++, attribute, domain, key, rows);
     } // select
 
+    /************************************************************************************
+     * Set whether select (Predicate) scans this table in parallel: only when it has at
+     * least threshold tuples, or never if threshold is 0.  The setting is not saved
+     * with the table.
+     *
+     * @param threshold  the fewest tuples to scan in parallel (0 for never)
+     */
+    public void setParallelSelect (int threshold)
+    {
+        if (threshold < 0) throw new IllegalArgumentException ("setParallelSelect: threshold is negative");
+        parallelThreshold = threshold;
+    } // setParallelSelect
+
     /************************************************************************************
      * Select the tuples satisfying the given key predicate (key = value).  Use an index
      * (Map) to retrieve the tuple with the given key value.
@@ -192,9 +357,134 @@ public class BPTreeTable
     } // select
 
     /************************************************************************************
-     * Union this table and table2.  Check that the two tables are compatible.
-     * Does NOT check for compatability, as he said we did not have to worry
-     * about this until project 2
+     * Select the tuples whose values for the given attributes equal keyVal.  Use a
+     * secondary index on exactly these attributes if there is one, or the primary key
+     * index if they are the primary key; otherwise scan the tuples.
+     *
+     * #usage transcript.select ("semester", new KeyType ("Fall"))
+     *
+     * @param attributes  the attributes to compare
+     * @param keyVal      the values they must have
+     * @return  a table with the tuples having those values
+     */
+    public BPTreeTable select (String attributes, KeyType keyVal)
+    {
+        String []            attrs = attributes.split (" ");
+        SecondaryIndex       sx    = indexes.get (String.join (" ", attrs));
+        List <Comparable []> rows  = new ArrayList <> ();
+
+        if (sx != null) {
+            for (int id : sx.ids.getAll (keyVal)) rows.add (tuples.get (id));
+        } else if (Arrays.equals (attrs, key)) {
+            Comparable [] tup = index.get (keyVal);
+            if (tup != null) rows.add (tup);
+        } else if (tuples instanceof ColumnStore) {
+            for (int id : scanColumns (match (attrs), keyVal, true, keyVal, true)) rows.add (tuples.get (id));
+        } else {
+            int [] cols = match (attrs);
+            for (Comparable [] tup : tuples) {
+                if (tup != null && keyOf (tup, cols).compareTo (keyVal) == 0) rows.add (tup);
+            } // for
+        } // if
+
+        return new BPTreeTable (name + count++, attribute, domain, key, rows);
+    } // select
+
+    /************************************************************************************
+     * Select the tuples whose values for the given attributes lie between lo and hi.
+     * Use a secondary index on exactly these attributes if there is one, or the primary
+     * key index if they are the primary key, seeking to lo and walking the B+Tree's
+     * leaves up to hi, so the cost follows the size of the result.  Otherwise scan the
+     * tuples.
+     *
+     * #usage transcript.select ("semester", new KeyType ("Fall"), true, new KeyType ("Spring"), true)
+     *
+     * @param attributes   the attributes to compare
+     * @param lo           the lower bound (null for none)
+     * @param loInclusive  whether lo itself is in the range
+     * @param hi           the upper bound (null for none)
+     * @param hiInclusive  whether hi itself is in the range
+     * @return  a table with the tuples whose values are in the range
+     */
+    public BPTreeTable select (String attributes, KeyType lo, boolean loInclusive, KeyType hi, boolean hiInclusive)
+    {
+        String []            attrs = attributes.split (" ");
+        SecondaryIndex       sx    = indexes.get (String.join (" ", attrs));
+        List <Comparable []> rows  = new ArrayList <> ();
+
+        if (sx != null) {
+            for (int id : sx.ids.getAll (lo, loInclusive, hi, hiInclusive)) rows.add (tuples.get (id));
+        } else if (Arrays.equals (attrs, key) && scanIndex () instanceof SortedMap) {
+            if (lo == null || hi == null || lo.compareTo (hi) <= 0) {
+                for (Map.Entry <KeyType, Comparable []> e : keyRange (lo, hi).entrySet ()) {
+                    if (inRange (e.getKey (), lo, loInclusive, hi, hiInclusive)) rows.add (e.getValue ());
+                } // for
+            } // if
+        } else if (tuples instanceof ColumnStore) {
+            for (int id : scanColumns (match (attrs), lo, loInclusive, hi, hiInclusive)) rows.add (tuples.get (id));
+        } else {
+            int [] cols = match (attrs);
+            for (Comparable [] tup : tuples) {
+                if (tup != null && inRange (keyOf (tup, cols), lo, loInclusive, hi, hiInclusive)) rows.add (tup);
+            } // for
+        } // if
+
+        return new BPTreeTable (name + count++, attribute, domain, key, rows);
+    } // select
+
+    /************************************************************************************
+     * Select the tuples whose value for the given attribute lies between lo and hi,
+     * using an index on the attribute if there is one (see above).
+     *
+     * #usage student.select ("id", 40000, true, 42000, false)
+     *
+     * @param attr         the attribute to compare
+     * @param lo           the lower bound (null for none)
+     * @param loInclusive  whether lo itself is in the range
+     * @param hi           the upper bound (null for none)
+     * @param hiInclusive  whether hi itself is in the range
+     * @return  a table with the tuples whose value is in the range
+     */
+    public BPTreeTable select (String attr, Comparable lo, boolean loInclusive, Comparable hi, boolean hiInclusive)
+    {
+        return select (attr, (lo == null) ? null : new KeyType (lo), loInclusive,
+                             (hi == null) ? null : new KeyType (hi), hiInclusive);
+    } // select
+
+    /************************************************************************************
+     * Select the tuples whose primary key starts with the given values, e.g., all the
+     * transcripts of one student.  The prefix padded with KeyType.MIN and KeyType.MAX
+     * bounds a range of the primary key index, so only the leaves holding the matching
+     * keys are read.
+     *
+     * #usage transcript.selectByKeyPrefix (12345)
+     *
+     * @param prefix  the values of the leading key attributes
+     * @return  a table with the tuples whose key starts with the prefix
+     */
+    public BPTreeTable selectByKeyPrefix (Comparable ... prefix)
+    {
+        if (prefix.length > key.length) {
+            throw new IllegalArgumentException ("selectByKeyPrefix: key has only " + key.length + " attributes");
+        } // if
+        KeyType lo = null, hi = null;
+        if (prefix.length > 0) {
+            Comparable [] loVal = Arrays.copyOf (prefix, key.length, Comparable [].class);
+            Comparable [] hiVal = loVal.clone ();
+            Arrays.fill (loVal, prefix.length, key.length, KeyType.MIN);
+            Arrays.fill (hiVal, prefix.length, key.length, KeyType.MAX);
+            lo = new KeyType (loVal);
+            hi = new KeyType (hiVal);
+        } // if
+        return select (String.join (" ", key), lo, true, hi, true);
+    } // selectByKeyPrefix
+
+    /************************************************************************************
+     * Union this table and table2.  Check that the two tables are compatible.  A tuple
+     * in both tables appears once in the union.  When the tables have the same key,
+     * their indexes are merged in key order, so only tuples with equal keys are
+     * compared; otherwise duplicates are removed by hashing (see DistinctTuples).
+     *
      * #usage movie.union (show)
      *
      * @param table2  the rhs table in the union operation
@@ -205,26 +495,41 @@ public class BPTreeTable
         //out.println ("RA> " + name + ".union (" + table2.name + ")");
         if (! compatible (table2)) return null;
 
-        List <Comparable []> rows = new ArrayList<Comparable []>();
-
-     // Iterate through current tuples
-     		for (Map.Entry<KeyType, Comparable[]> e : index.entrySet())
-     			// Add current table tupples
-     			rows.add(e.getValue());
-     		
-     		// Iterate through table2 tuples
-     		for (Map.Entry<KeyType, Comparable[]> e : table2.index.entrySet())
-     			// Add table2 table tupples
-     			rows.add(e.getValue());
-        
-        //check.print();
+        Map <KeyType, Comparable []> index1 = scanIndex ();
+        Map <KeyType, Comparable []> index2 = table2.scanIndex ();
+        List <Comparable []>         rows;
+
+        if (Arrays.equals (key, table2.key) && index1 instanceof SortedMap && index2 instanceof SortedMap) {
+            // Each index has one tuple per key, so only the tuples at equal keys can be equal
+            rows = new ArrayList <> (index1.size () + index2.size ());
+            Iterator <Map.Entry <KeyType, Comparable []>> it1 = index1.entrySet ().iterator ();
+            Iterator <Map.Entry <KeyType, Comparable []>> it2 = index2.entrySet ().iterator ();
+            Map.Entry <KeyType, Comparable []> e1 = it1.hasNext () ? it1.next () : null;
+            Map.Entry <KeyType, Comparable []> e2 = it2.hasNext () ? it2.next () : null;
+            while (e1 != null || e2 != null) {
+                int cmp = (e1 == null) ? 1 : (e2 == null) ? -1 : e1.getKey ().compareTo (e2.getKey ());
+                if (cmp <= 0) rows.add (e1.getValue ());
+                if (cmp >= 0 && (cmp > 0 || ! Arrays.equals (e1.getValue (), e2.getValue ()))) rows.add (e2.getValue ());
+                if (cmp <= 0) e1 = it1.hasNext () ? it1.next () : null;
+                if (cmp >= 0) e2 = it2.hasNext () ? it2.next () : null;
+            } // while
+        } else {
+            DistinctTuples distinct = new DistinctTuples (attribute.length, distinctLimit);
+            for (Comparable [] tup : index1.values ()) distinct.add (tup);
+            for (Comparable [] tup : index2.values ()) distinct.add (tup);
+            rows = distinct.rows ();
+        } // if
 
         return new BPTreeTable (name + count++, attribute, domain, key, rows);
     } // union
 
     /************************************************************************************
      * Take the difference of this table and table2.  Check that the two tables are
-     * compatible.
+     * compatible.  A tuple is in the difference when no tuple of table2 has the same
+     * values in the key columns (compared by position, as the tables may name their
+     * attributes differently).  This is an anti-join on those columns: each tuple
+     * makes one probe of table2's key index (or of a hash table built once over
+     * table2, if its key is in other columns) and stops at the first match.
      *
      * #usage movie.minus (show)
      *
@@ -233,27 +538,78 @@ public class BPTreeTable
      */
     public BPTreeTable minus (BPTreeTable table2)
     {
-    	int count = 0;
         //out.println ("RA> " + name + ".minus (" + table2.name + ")");
-       if (! compatible (table2)) return null;
-        boolean minus = false;
-        //List <Comparable []> rows = null;
-        List <Comparable []> rows = new ArrayList<Comparable[]>();
-        for(Map.Entry<KeyType, Comparable[]> mapIndex : index.entrySet()){
-        	for(Map.Entry<KeyType, Comparable[]> mapIndex2: table2.index.entrySet()){
-        		if(mapIndex.getKey().equals(mapIndex2.getKey()) ){
-        			minus = true;
-        			}
-        		}//for mapIndex2
-        	if(minus == false){
-    			rows.add(mapIndex.getValue());
-    		}
-    		minus = false;
-        	}//for mapIndex
-        	
+        if (! compatible (table2)) return null;
 
+        int [] cols = match (key);
+        List <Comparable []> rows = filterByMatch (scanIndex ().values (), cols, table2, cols, false);
         return new BPTreeTable (name + count++, attribute, domain, key, rows);
     } // minus
+
+    /************************************************************************************
+     * Intersect this table and table2.  Check that the two tables are compatible.  A
+     * tuple is in the intersection when some tuple of table2 has the same values in
+     * the key columns: a semi-join on those columns, probing as in minus.
+     *
+     * #usage movie.intersect (show)
+     *
+     * @param table2  The rhs table in the intersect operation
+     * @return  a table representing the intersection
+     */
+    public BPTreeTable intersect (BPTreeTable table2)
+    {
+        //out.println ("RA> " + name + ".intersect (" + table2.name + ")");
+        if (! compatible (table2)) return null;
+
+        int [] cols = match (key);
+        List <Comparable []> rows = filterByMatch (scanIndex ().values (), cols, table2, cols, true);
+        return new BPTreeTable (name + count++, attribute, domain, key, rows);
+    } // intersect
+
+    /************************************************************************************
+     * Semi-join this table with table2: keep the tuples of this table for which some
+     * tuple of table2 has attributes2 equal to their attributes1 (an EXISTS subquery).
+     * The result has this table's attributes, and each tuple at most once however
+     * many tuples of table2 match it.
+     *
+     * #usage student.semiJoin ("id", "studId", transcript)
+     *
+     * @param attributes1  the attributes of this table to be compared
+     * @param attributes2  the attributes of table2 to be compared
+     * @param table2       the rhs table in the semi-join
+     * @return  a table with the tuples having a match
+     */
+    public BPTreeTable semiJoin (String attributes1, String attributes2, BPTreeTable table2)
+    {
+        String [] t_attrs = attributes1.split (" ");
+        String [] u_attrs = attributes2.split (" ");
+        if (t_attrs.length != u_attrs.length) return null;
+
+        List <Comparable []> rows = filterByMatch (tuples, match (t_attrs), table2, table2.match (u_attrs), true);
+        return new BPTreeTable (name + count++, attribute, domain, key, rows);
+    } // semiJoin
+
+    /************************************************************************************
+     * Anti-join this table with table2: keep the tuples of this table for which no
+     * tuple of table2 has attributes2 equal to their attributes1 (a NOT EXISTS
+     * subquery).  The result has this table's attributes.
+     *
+     * #usage student.antiJoin ("id", "studId", transcript)
+     *
+     * @param attributes1  the attributes of this table to be compared
+     * @param attributes2  the attributes of table2 to be compared
+     * @param table2       the rhs table in the anti-join
+     * @return  a table with the tuples having no match
+     */
+    public BPTreeTable antiJoin (String attributes1, String attributes2, BPTreeTable table2)
+    {
+        String [] t_attrs = attributes1.split (" ");
+        String [] u_attrs = attributes2.split (" ");
+        if (t_attrs.length != u_attrs.length) return null;
+
+        List <Comparable []> rows = filterByMatch (tuples, match (t_attrs), table2, table2.match (u_attrs), false);
+        return new BPTreeTable (name + count++, attribute, domain, key, rows);
+    } // antiJoin
     
     
     /************************************************************************************
@@ -354,25 +710,226 @@ public class BPTreeTable
      */
     public BPTreeTable indexedJoin(String attribute1, String attribute2, BPTreeTable table2) 
     {
-    	String[] t_attrs = attribute1.split(" ");
-		String[] u_attrs = attribute2.split(" ");
+        return indexedJoin (attribute1, attribute2, table2, 1);
+    } //indexedJoin
 
-		List<Comparable[]> rows = rows = new ArrayList<Comparable[]>();
-		// Go through each of the tuples
-		for (Map.Entry<KeyType, Comparable[]> e : index.entrySet()) 
-		{
-			// Checks if value exists, if not then skips this iteration
-			if (table2.index.get(new KeyType(extract(e.getValue(), t_attrs))) == null) 
-			{
-				continue;
-			}
-			// Adds tuple to table
-			rows.add(ArrayUtil.concat((e.getValue()), table2.index.get(new KeyType(extract(e.getValue(), t_attrs)))));			
-		}
+    /************************************************************************************
+     * Join this table and table2 as indexedJoin does, on the given number of threads.
+     * This table's index is split into key ranges at divider keys from the top of its
+     * B+Tree (several per thread, to even out the work), and each range is walked
+     * along its leaves by a task on a pool of that many threads, probing table2's
+     * index, which is only read.  The tasks' outputs are concatenated in key order, so
+     * the result is the same as on one thread.  An index that cannot be split (e.g.,
+     * one kept off heap) is joined on the calling thread, as is any table2 whose index
+     * is not safe to read from several threads at once (e.g., a paged one, whose buffer
+     * pool changes on every read).
+     *
+     * #usage transcript.indexedJoin ("studId", "id", student, 8)
+     *
+     * @param attribute1  the attributes of this table to be compared (Foreign Key)
+     * @param attribute2  the attributes of table2 to be compared (Primary Key)
+     * @param table2      the rhs table in the join operation
+     * @param threads     the number of threads to join on
+     * @return  a table with tuples satisfying the equality predicate
+     */
+    public BPTreeTable indexedJoin (String attribute1, String attribute2, BPTreeTable table2, int threads)
+    {
+        if (threads < 1) throw new IllegalArgumentException ("indexedJoin: threads must be positive");
+        int [] tCols = match (attribute1.split (" "));
 
-		return new BPTreeTable (name + count++, ArrayUtil.concat (attribute, table2.attribute),
-				ArrayUtil.concat (domain, table2.domain), key, rows);
-	} //indexedJoin
+        Map <KeyType, Comparable []> index1 = scanIndex ();
+        Map <KeyType, Comparable []> index2 = table2.scanIndex ();
+        List <KeyType> bounds = (threads > 1 && sharedReads (index2)) ? splitKeys (index1, 4 * threads)
+                                                                       : new ArrayList <> ();
+
+        List <Comparable []> rows;
+        if (bounds.isEmpty ()) {
+            rows = probe (index1, null, tCols, index2);
+        } else {
+            List <ForkJoinTask <List <Comparable []>>> tasks = new ArrayList <> ();
+            for (int p = 0; p <= bounds.size (); p++) {
+                KeyType lo = (p == 0) ? null : bounds.get (p - 1);
+                KeyType hi = (p == bounds.size ()) ? null : bounds.get (p);
+                Map <KeyType, Comparable []> range = keyRange (index1, lo, hi);
+                tasks.add (ForkJoinTask.adapt (() -> probe (range, hi, tCols, index2)));
+            } // for
+            ForkJoinPool pool = new ForkJoinPool (threads);
+            try {
+                pool.invoke (ForkJoinTask.adapt (() -> ForkJoinTask.invokeAll (tasks)));
+            } finally {
+                pool.shutdown ();
+            } // try
+            rows = new ArrayList <> ();
+            for (ForkJoinTask <List <Comparable []>> task : tasks) rows.addAll (task.join ());
+        } // if
+
+        return new BPTreeTable (name + count++, ArrayUtil.concat (attribute, table2.attribute),
+                                ArrayUtil.concat (domain, table2.domain), key, rows);
+    } // indexedJoin
+
+    /************************************************************************************
+     * Join this table and table2 by hashing: build an open-addressing hash table on
+     * the smaller of the two, keyed by its join attributes, then stream the larger one
+     * past it, so the cost is linear in the sizes of the inputs and the result.  The
+     * attributes need not be indexed, and values are matched by equals.  The result
+     * has this table's attributes followed by table2's either way.
+     *
+     * #usage transcript.hashJoin ("studId", "id", student)
+     *
+     * @param attributes1  the attributes of this table to be compared
+     * @param attributes2  the attributes of table2 to be compared
+     * @param table2       the rhs table in the join operation
+     * @return  a table with tuples satisfying the equality predicate
+     */
+    public BPTreeTable hashJoin (String attributes1, String attributes2, BPTreeTable table2)
+    {
+        String [] t_attrs = attributes1.split (" ");
+        String [] u_attrs = attributes2.split (" ");
+        if (t_attrs.length != u_attrs.length) return null;
+
+        boolean              buildThis = tuples.size () <= table2.tuples.size ();
+        List <Comparable []> build     = buildThis ? tuples : table2.tuples;
+        List <Comparable []> probe     = buildThis ? table2.tuples : tuples;
+        int []               buildCols = buildThis ? match (t_attrs) : table2.match (u_attrs);
+        int []               probeCols = buildThis ? table2.match (u_attrs) : match (t_attrs);
+
+        List <Comparable []> rows = new ArrayList <> ();
+        if (build instanceof ColumnStore || probe instanceof ColumnStore) {
+            hashJoinColumns (build, buildCols, probe, probeCols, buildThis, rows);
+            return new BPTreeTable (name + count++, ArrayUtil.concat (attribute, table2.attribute),
+                                    ArrayUtil.concat (domain, table2.domain), key, rows);
+        } // if
+
+        TupleHashTable table = new TupleHashTable (buildCols, build.size ());
+        for (Comparable [] tup : build) {
+            if (tup != null) table.add (tup);
+        } // for
+
+        for (Comparable [] tup : probe) {
+            if (tup == null) continue;
+            for (int i = table.find (tup, probeCols); i != TupleHashTable.NONE; i = table.next (i)) {
+                rows.add (buildThis ? ArrayUtil.concat (table.get (i), tup) : ArrayUtil.concat (tup, table.get (i)));
+            } // for
+        } // for
+
+        return new BPTreeTable (name + count++, ArrayUtil.concat (attribute, table2.attribute),
+                                ArrayUtil.concat (domain, table2.domain), key, rows);
+    } // hashJoin
+
+    /************************************************************************************
+     * Perform hashJoin's build and probe when either side stores its columns.  Only
+     * the join columns are read to hash and match: the hash table holds each build
+     * tuple's join values, and whole tuples are built only for the matches.
+     *
+     * @param build      the tuples to build the hash table on
+     * @param buildCols  their join columns
+     * @param probe      the tuples to probe with
+     * @param probeCols  their join columns
+     * @param buildThis  whether the build side is this table (whose tuples come first)
+     * @param rows       the list to add the joined tuples to
+     */
+    private static void hashJoinColumns (List <Comparable []> build, int [] buildCols, List <Comparable []> probe,
+                                         int [] probeCols, boolean buildThis, List <Comparable []> rows)
+    {
+        int [] keyCols = new int [buildCols.length];
+        for (int j = 0; j < keyCols.length; j++) keyCols [j] = j;
+
+        TupleHashTable table = new TupleHashTable (keyCols, build.size ());
+        int []         ids   = new int [build.size ()];             // build tuple for each table entry
+        for (int i = 0; i < build.size (); i++) {
+            Comparable [] vals = cells (build, i, buildCols);
+            if (vals == null) continue;
+            ids [table.size ()] = i;
+            table.add (vals);
+        } // for
+
+        for (int i = 0; i < probe.size (); i++) {
+            Comparable [] vals = cells (probe, i, probeCols);
+            if (vals == null) continue;
+            Comparable [] tup = null;
+            for (int m = table.find (vals, keyCols); m != TupleHashTable.NONE; m = table.next (m)) {
+                if (tup == null) tup = probe.get (i);
+                Comparable [] match = build.get (ids [m]);
+                rows.add (buildThis ? ArrayUtil.concat (match, tup) : ArrayUtil.concat (tup, match));
+            } // for
+        } // for
+    } // hashJoinColumns
+
+    /************************************************************************************
+     * Return the values in the given columns of tuple i of a list of tuples, reading
+     * only those columns of a ColumnStore.
+     *
+     * @param tuples  the tuples
+     * @param i       the position of the tuple
+     * @param cols    the columns to read
+     * @return  the values, or null if there is no tuple at i
+     */
+    private static Comparable [] cells (List <Comparable []> tuples, int i, int [] cols)
+    {
+        if (tuples instanceof ColumnStore) return ((ColumnStore) tuples).cells (i, cols);
+        Comparable [] tup = tuples.get (i);
+        if (tup == null) return null;
+        Comparable [] vals = new Comparable [cols.length];
+        for (int j = 0; j < cols.length; j++) vals [j] = tup [cols [j]];
+        return vals;
+    } // cells
+
+    /************************************************************************************
+     * Join this table and table2 by merging: read both in order of their join
+     * attributes and walk the two sequences together, with no hashing or random
+     * probes.  Each side is read from an index that already has that order when there
+     * is one: a secondary index on the join attributes, or the primary key index when
+     * they are the leading attributes of the key (e.g., Transcript's studId), whose
+     * leaves are walked in turn.  A side with no such index is sorted first.  Runs of
+     * equal values on either side are joined with each other.  A tuple with a null
+     * join value matches nothing.
+     *
+     * #usage transcript.mergeJoin ("studId", "id", student)
+     *
+     * @param attributes1  the attributes of this table to be compared
+     * @param attributes2  the attributes of table2 to be compared
+     * @param table2       the rhs table in the join operation
+     * @return  a table with tuples satisfying the equality predicate
+     */
+    public BPTreeTable mergeJoin (String attributes1, String attributes2, BPTreeTable table2)
+    {
+        String [] t_attrs = attributes1.split (" ");
+        String [] u_attrs = attributes2.split (" ");
+        if (t_attrs.length != u_attrs.length) return null;
+        int [] tCols = match (t_attrs);
+        int [] uCols = table2.match (u_attrs);
+
+        Iterator <Comparable []> left  = inOrder (t_attrs);
+        Iterator <Comparable []> right = table2.inOrder (u_attrs);
+        List <Comparable []>     rows  = new ArrayList <> ();
+        List <Comparable []>     run   = new ArrayList <> ();
+
+        Comparable [] t = nextJoinable (left, tCols);
+        Comparable [] u = nextJoinable (right, uCols);
+        while (t != null && u != null) {
+            int cmp = compareCols (t, tCols, u, uCols);
+            if (cmp < 0) {
+                t = nextJoinable (left, tCols);
+            } else if (cmp > 0) {
+                u = nextJoinable (right, uCols);
+            } else {
+                // Gather table2's run of tuples with this value, then join each of ours to it
+                Comparable [] first = u;
+                run.clear ();
+                while (u != null && compareCols (u, uCols, first, uCols) == 0) {
+                    run.add (u);
+                    u = nextJoinable (right, uCols);
+                } // while
+                while (t != null && compareCols (t, tCols, first, uCols) == 0) {
+                    for (Comparable [] v : run) rows.add (ArrayUtil.concat (t, v));
+                    t = nextJoinable (left, tCols);
+                } // while
+            } // if
+        } // while
+
+        return new BPTreeTable (name + count++, ArrayUtil.concat (attribute, table2.attribute),
+                                ArrayUtil.concat (domain, table2.domain), key, rows);
+    } // mergeJoin
 
     /************************************************************************************
      * Return the column position for the given attribute name.
@@ -402,17 +959,203 @@ public class BPTreeTable
         //out.println ("DML> insert into " + name + " values ( " + Arrays.toString (tup) + " )");
 
         if (typeCheck (tup)) {
+            for (SecondaryIndex sx : indexes.values ()) {
+                if (sx.unique && sx.ids.count (keyOf (tup, sx.cols)) > 0) return false;
+            } // for
             tuples.add (tup);
-            Comparable [] keyVal = new Comparable [key.length];
-            int []        cols   = match (key);
-            for (int j = 0; j < keyVal.length; j++) keyVal [j] = tup [cols [j]];
-            index.put (new KeyType (keyVal), tup);
+            index.putIfAbsent (keyOf (tup, match (key)), tup);       // first tuple for a key stays indexed
+            for (SecondaryIndex sx : indexes.values ()) sx.ids.add (keyOf (tup, sx.cols), tuples.size () - 1);
             return true;
         } else {
             return false;
         } // if
     } // insert
 
+    /************************************************************************************
+     * Delete the tuple with the given key from the table.
+     *
+     * #usage movie.delete (new KeyType ("Star_Wars", 1977))
+     *
+     * @param keyVal  the key of the tuple to delete
+     * @return  whether a tuple was deleted
+     */
+    public boolean delete (KeyType keyVal)
+    {
+        //out.println ("DML> delete from " + name + " where key = " + keyVal);
+
+        int id = -1;
+        if (index instanceof TupleIdIndex) {
+            Integer removed = ((TupleIdIndex) index).ids ().remove (keyVal);
+            if (removed == null) return false;
+            id = removed;
+            tuples.remove (id);
+        } else {
+            Comparable [] tup = index.remove (keyVal);
+            if (tup == null) return false;
+            for (int i = 0; i < tuples.size (); i++) {
+                if (tuples.get (i) == tup) {
+                    tuples.remove (i);
+                    id = i;
+                    break;
+                } // if
+            } // for
+        } // if
+        if (id < 0) return true;
+
+        int gone = id;                                                  // ids after it have moved up
+        if (index instanceof TupleIdIndex) ((TupleIdIndex) index).renumber (i -> (i > gone) ? i - 1 : i);
+        for (SecondaryIndex sx : indexes.values ()) sx.ids.renumber (i -> (i < gone) ? i : (i == gone) ? -1 : i - 1);
+        return true;
+    } // delete
+
+    /************************************************************************************
+     * Delete the tuples satisfying the given predicate from the table, in one pass over
+     * the tuples.  The indexes of tuple ids are then renumbered in one pass each,
+     * rather than rebuilt.
+     *
+     * #usage movie.delete (t -> t[movie.col("year")].equals (1977))
+     *
+     * @param predicate  the check condition for tuples to delete
+     * @return  the number of tuples deleted
+     */
+    public int delete (Predicate <Comparable []> predicate)
+    {
+        //out.println ("DML> delete from " + name + " where " + predicate);
+
+        int []     cols   = match (key);
+        int        n      = tuples.size ();
+        boolean [] keep   = new boolean [n];
+        int []     newIds = new int [n];                               // position of each tuple after the delete
+        int        kept   = 0;
+        for (int i = 0; i < n; i++) {
+            Comparable [] tup = tuples.get (i);
+            keep [i] = ! predicate.test (tup);
+            if (keep [i]) {
+                newIds [i] = kept++;
+            } else {
+                newIds [i] = -1;
+                if (index instanceof TupleIdIndex) {                    // unindex only if this tuple is the indexed one
+                    ((TupleIdIndex) index).ids ().remove (keyOf (tup, cols), i);
+                } else {
+                    index.remove (keyOf (tup, cols), tup);
+                } // if
+            } // if
+        } // for
+        if (kept == n) return 0;
+
+        removeTuples (keep);
+        if (index instanceof TupleIdIndex) ((TupleIdIndex) index).renumber (i -> newIds [i]);
+        for (SecondaryIndex sx : indexes.values ()) sx.ids.renumber (i -> newIds [i]);
+        return n - kept;
+    } // delete
+
+    /************************************************************************************
+     * Keep this table's index as a map from keys to tuple ids in the given (empty)
+     * map, such as an OffHeapBpTreeMap or a PagedBpTreeMap, instead of on the heap.
+     * The index is built from the current tuples.  It is not saved with the table.
+     *
+     * #usage movie.indexTupleIds (new PagedBpTreeMap <> ("movie.idx", movie.keyCodec (32), 256))
+     *
+     * @param ids  the map to hold the index
+     */
+    public void indexTupleIds (SortedMap <KeyType, Integer> ids)
+    {
+        index = new TupleIdIndex (ids, tuples);
+        buildIndex ();
+    } // indexTupleIds
+
+    /************************************************************************************
+     * Store this table's tuples by column (see ColumnStore) instead of as an array per
+     * tuple: Integer, Long and Double columns as primitive arrays, and String columns
+     * dictionary-encoded or packed.  The primary key index then holds tuple ids.
+     * project, the selects on attributes and the hash and indexed joins read just the
+     * columns they compare and build tuples only for their results.  The layout is
+     * saved with the table.
+     *
+     * #usage transcript.storeColumns ()
+     */
+    public void storeColumns ()
+    {
+        if (tuples instanceof ColumnStore) return;
+        tuples = new ColumnStore (domain, tuples);
+        index  = newIndex ();
+        buildIndex ();
+        for (SecondaryIndex sx : indexes.values ()) buildIndex (sx);   // any null tuples are gone
+    } // storeColumns
+
+    /************************************************************************************
+     * Create a secondary index on the given attributes, kept up to date by insert and
+     * delete and used by the selects on attributes.  A unique index makes insert
+     * reject a tuple whose values for the attributes are already in the table.
+     *
+     * #usage transcript.createIndex ("semester", false)
+     *
+     * @param attributes  the attributes to index on
+     * @param unique      whether their values must be unique
+     * @return  whether the index was created
+     */
+    public boolean createIndex (String attributes, boolean unique)
+    {
+        String [] attrs = attributes.split (" ");
+        for (String attr : attrs) {
+            if (col (attr) < 0) {
+                out.println ("createIndex ERROR: " + name + " has no attribute " + attr);
+                return false;
+            } // if
+        } // for
+        SecondaryIndex sx = new SecondaryIndex (attrs, match (attrs), unique);
+        if (! buildIndex (sx)) {
+            out.println ("createIndex ERROR: values of " + attributes + " are not unique in " + name);
+            return false;
+        } // if
+        indexes.put (String.join (" ", attrs), sx);
+        return true;
+    } // createIndex
+
+    /************************************************************************************
+     * Drop the secondary index on the given attributes.
+     *
+     * #usage transcript.dropIndex ("semester")
+     *
+     * @param attributes  the attributes the index is on
+     * @return  whether there was such an index
+     */
+    public boolean dropIndex (String attributes)
+    {
+        return indexes.remove (String.join (" ", attributes.split (" "))) != null;
+    } // dropIndex
+
+    /************************************************************************************
+     * Keep this table's index in a copy-on-write BpTreeMap.  Then project, union and
+     * indexedJoin scan a snapshot of the index, so they see it as it was when they
+     * started while inserts into the table go on.  It is not saved with the table.
+     * A table that stores its columns has no row objects to index, so it keeps its
+     * index of tuple ids.
+     *
+     * #usage movie.copyOnWriteIndex ()
+     *
+     * @throws IllegalStateException if the table stores its columns
+     */
+    public void copyOnWriteIndex ()
+    {
+        if (tuples instanceof ColumnStore) {
+            throw new IllegalStateException ("copyOnWriteIndex: " + name + " stores its columns");
+        } // if
+        index = new BpTreeMap <> (KeyType.class, Comparable [].class, BpTreeMap.DEFAULT_ORDER, true);
+        buildIndex ();
+    } // copyOnWriteIndex
+
+    /************************************************************************************
+     * Return a fixed-width codec for this table's keys, for use with indexTupleIds.
+     *
+     * @param maxChars  the longest String key attribute allowed
+     * @return  the codec for the key attributes' domains
+     */
+    public OffHeapBpTreeMap.KeyCodec <KeyType> keyCodec (int maxChars)
+    {
+        return OffHeapBpTreeMap.keyTypeKeys (extractDom (match (key), domain), maxChars);
+    } // keyCodec
+
     /************************************************************************************
      * Get the name of the table.
      *
@@ -565,6 +1308,370 @@ public class BPTreeTable
     // Private Methods
     //----------------------------------------------------------------------------------
 
+    /************************************************************************************
+     * Create an empty index suited to the primary key.  A key that is a single Integer
+     * or Long column is indexed by a B+Tree with primitive int or long keys, any other
+     * key by a BpTreeMap over KeyTypes.
+     *
+     * @return  the new index
+     */
+    private Map <KeyType, Comparable []> newIndex ()
+    {
+        Class keyDomain = (key.length == 1) ? domain [match (key) [0]] : null;
+        if (tuples instanceof ColumnStore) {
+            // Index the ids of the tuples, since the columns keep no row objects to refer to
+            if (keyDomain == Integer.class) return new TupleIdIndex (new PrimitiveKeyIndex <> (new IntBpTreeMap <Integer> ()), tuples);
+            if (keyDomain == Long.class)    return new TupleIdIndex (new PrimitiveKeyIndex <> (new LongBpTreeMap <Integer> ()), tuples);
+            return new TupleIdIndex (new BpTreeMap <> (KeyType.class, Integer.class), tuples);
+        } // if
+        if (keyDomain == Integer.class) return new PrimitiveKeyIndex <> (new IntBpTreeMap <Comparable []> ());
+        if (keyDomain == Long.class)    return new PrimitiveKeyIndex <> (new LongBpTreeMap <Comparable []> ());
+        return new BpTreeMap <> (KeyType.class, Comparable [].class);
+    } // newIndex
+
+    /************************************************************************************
+     * Return the index for a scan to read: a snapshot if the index is copy-on-write,
+     * otherwise the index itself.
+     *
+     * @return  the map to scan
+     */
+    private Map <KeyType, Comparable []> scanIndex ()
+    {
+        if (index instanceof BpTreeMap) {
+            BpTreeMap <KeyType, Comparable []> bpt = (BpTreeMap <KeyType, Comparable []>) index;
+            if (bpt.copyOnWrite ()) return bpt.snapshot ();
+        } // if
+        return index;
+    } // scanIndex
+
+    /************************************************************************************
+     * Join the tuples in a range of an index with the tuples of index2 whose keys are
+     * their values in tCols, with one probe of index2 per tuple.  If this table stores
+     * its columns, the range's tuple ids are walked and only the columns in tCols read
+     * for the probe, so whole tuples are built only for matches.
+     *
+     * @param range   the range of this table's index to join, in key order
+     * @param hi      the key at which to stop (exclusive), or null to take them all
+     * @param tCols   the columns of the tuples to look up in index2
+     * @param index2  the index to probe
+     * @return  the joined tuples
+     */
+    private List <Comparable []> probe (Map <KeyType, Comparable []> range, KeyType hi,
+                                        int [] tCols, Map <KeyType, Comparable []> index2)
+    {
+        List <Comparable []> rows = new ArrayList <> ();
+        if (tuples instanceof ColumnStore && range instanceof TupleIdIndex) {
+            ColumnStore store = (ColumnStore) tuples;
+            for (Map.Entry <KeyType, Integer> e : ((TupleIdIndex) range).ids ().entrySet ()) {
+                if (hi != null && e.getKey ().compareTo (hi) >= 0) break;
+                int           id    = e.getValue ();
+                Comparable [] match = index2.get (new KeyType (store.cells (id, tCols)));
+                if (match != null) rows.add (ArrayUtil.concat (store.get (id), match));
+            } // for
+            return rows;
+        } // if
+
+        for (Map.Entry <KeyType, Comparable []> e : range.entrySet ()) {
+            if (hi != null && e.getKey ().compareTo (hi) >= 0) break;
+            Comparable [] tup   = e.getValue ();
+            Comparable [] match = index2.get (keyOf (tup, tCols));
+            if (match != null) rows.add (ArrayUtil.concat (tup, match));
+        } // for
+        return rows;
+    } // probe
+
+    /************************************************************************************
+     * Return keys that divide an index into about the given number of key ranges,
+     * from its B+Tree (or the B+Tree of its tuple ids), or none if it cannot be split.
+     *
+     * @param index  the index to divide
+     * @param parts  the number of ranges wanted
+     * @return  up to parts - 1 keys in ascending order
+     */
+    private static List <KeyType> splitKeys (Map <KeyType, ?> index, int parts)
+    {
+        if (index instanceof BpTreeMap)         return ((BpTreeMap <KeyType, ?>) index).splitKeys (parts);
+        if (index instanceof PrimitiveKeyIndex) return ((PrimitiveKeyIndex <?>) index).splitKeys (parts);
+        if (index instanceof TupleIdIndex)      return splitKeys (((TupleIdIndex) index).ids (), parts);
+        return new ArrayList <> ();
+    } // splitKeys
+
+    /************************************************************************************
+     * Return whether the given index may be read from several threads at once, which
+     * holds for the heap-based B+Trees (including copy-on-write snapshots) as long as
+     * no thread changes them, but not for one kept in a buffer pool.
+     * @param index  the index to be read
+     */
+    private static boolean sharedReads (Map <KeyType, ?> index)
+    {
+        if (index instanceof TupleIdIndex) return sharedReads (((TupleIdIndex) index).ids ());
+        return index instanceof BpTreeMap || index instanceof PrimitiveKeyIndex;
+    } // sharedReads
+
+    /************************************************************************************
+     * Return the tuples in order of the given attributes, from a secondary index on
+     * them, or from the primary key index if they lead the key and no two tuples share
+     * a key (the index holds only the first of them), or else from a sorted copy of
+     * the tuples, which leaves out those with a null in the attributes.
+     *
+     * @param attrs  the attributes to order by
+     * @return  an iterator over the tuples in that order
+     */
+    private Iterator <Comparable []> inOrder (String [] attrs)
+    {
+        SecondaryIndex sx = indexes.get (String.join (" ", attrs));
+        if (sx != null) {
+            Iterator <MultiBpTreeMap.PostingList> lists = sx.ids.postings (null, false, null, false).values ().iterator ();
+            return new Iterator <Comparable []> () {
+                MultiBpTreeMap.PostingList list = null;
+                int                        i    = 0;
+
+                public boolean hasNext ()
+                {
+                    while ((list == null || i == list.size ()) && lists.hasNext ()) {
+                        list = lists.next ();
+                        i    = 0;
+                    } // while
+                    return list != null && i < list.size ();
+                } // hasNext
+
+                public Comparable [] next ()
+                {
+                    if (! hasNext ()) throw new NoSuchElementException ();
+                    return tuples.get (list.get (i++));
+                } // next
+            };
+        } // if
+
+        Map <KeyType, Comparable []> primary = scanIndex ();
+        if (attrs.length <= key.length && Arrays.equals (attrs, Arrays.copyOf (key, attrs.length))
+                && primary instanceof SortedMap && primary.size () == tuples.size ()) {
+            return primary.values ().iterator ();
+        } // if
+
+        int [] cols = match (attrs);
+        List <Comparable []> sorted = new ArrayList <> (tuples.size ());
+        for (Comparable [] tup : tuples) {
+            if (tup != null && ! hasNull (tup, cols)) sorted.add (tup);
+        } // for
+        sorted.sort ((t, u) -> compareCols (t, cols, u, cols));
+        return sorted.iterator ();
+    } // inOrder
+
+    /************************************************************************************
+     * Return the next tuple from the iterator that has no null in the given columns,
+     * or null once there is none.
+     *
+     * @param it    the tuples in join order
+     * @param cols  the join columns
+     * @return  the next tuple that can be joined
+     */
+    private static Comparable [] nextJoinable (Iterator <Comparable []> it, int [] cols)
+    {
+        while (it.hasNext ()) {
+            Comparable [] tup = it.next ();
+            if (tup != null && ! hasNull (tup, cols)) return tup;
+        } // while
+        return null;
+    } // nextJoinable
+
+    /************************************************************************************
+     * Determine whether tuple t has a null in any of the given columns.
+     */
+    private static boolean hasNull (Comparable [] t, int [] cols)
+    {
+        for (int c : cols) {
+            if (t [c] == null) return true;
+        } // for
+        return false;
+    } // hasNull
+
+    /************************************************************************************
+     * Return the given tuples that have (or, for an anti-join, do not have) a match in
+     * table2: a tuple whose values in uCols equal theirs in tCols.  When uCols are
+     * table2's key columns, in order, each tuple probes table2's key index; otherwise
+     * a hash table is built over table2 once and probed instead.  Either way a tuple
+     * is decided by its first match.
+     *
+     * @param source   the tuples of this table to filter
+     * @param tCols    the columns of these tuples to compare
+     * @param table2   the table to look for matches in
+     * @param uCols    the columns of table2 to compare
+     * @param keep     whether to keep the tuples with a match (else those without)
+     * @return  the tuples kept, in the order of source
+     */
+    private static List <Comparable []> filterByMatch (Collection <Comparable []> source, int [] tCols,
+                                                       BPTreeTable table2, int [] uCols, boolean keep)
+    {
+        List <Comparable []> rows = new ArrayList <> ();
+        if (Arrays.equals (uCols, table2.match (table2.key))) {
+            Map <KeyType, Comparable []> index2 = table2.scanIndex ();
+            for (Comparable [] tup : source) {
+                if (tup != null && index2.containsKey (table2.keyOf (tup, tCols)) == keep) rows.add (tup);
+            } // for
+            return rows;
+        } // if
+
+        TupleHashTable table = new TupleHashTable (uCols, table2.tuples.size ());
+        for (Comparable [] tup : table2.tuples) {
+            if (tup != null) table.add (tup);
+        } // for
+        for (Comparable [] tup : source) {
+            if (tup != null && (table.find (tup, tCols) != TupleHashTable.NONE) == keep) rows.add (tup);
+        } // for
+        return rows;
+    } // filterByMatch
+
+    /************************************************************************************
+     * Compare tuple t's values in columns tCols with tuple u's values in columns uCols,
+     * in turn.
+     *
+     * @param t      the first tuple
+     * @param tCols  the columns of t to compare
+     * @param u      the second tuple
+     * @param uCols  the columns of u to compare
+     * @return  a negative, zero or positive integer as t's values are less, equal or greater
+     */
+    @SuppressWarnings("unchecked")
+    private static int compareCols (Comparable [] t, int [] tCols, Comparable [] u, int [] uCols)
+    {
+        for (int j = 0; j < tCols.length; j++) {
+            int cmp = t [tCols [j]].compareTo (u [uCols [j]]);
+            if (cmp != 0) return cmp;
+        } // for
+        return 0;
+    } // compareCols
+
+    /************************************************************************************
+     * Return the entries of the primary key index with keys from lo to hi, both
+     * inclusive as for subMap.  The view seeks to lo instead of scanning.
+     *
+     * @param lo  the lower bound (null for none)
+     * @param hi  the upper bound (null for none), not below lo
+     * @return  the view of the index
+     */
+    private SortedMap <KeyType, Comparable []> keyRange (KeyType lo, KeyType hi)
+    {
+        return keyRange (scanIndex (), lo, hi);
+    } // keyRange
+
+    /************************************************************************************
+     * Return the portion of the given index with keys from lo to hi (both inclusive).
+     *
+     * @param index  the index, which must be sorted
+     * @param lo     the lower bound (null for none)
+     * @param hi     the upper bound (null for none)
+     * @return  the view of the index
+     */
+    private static SortedMap <KeyType, Comparable []> keyRange (Map <KeyType, Comparable []> index, KeyType lo, KeyType hi)
+    {
+        SortedMap <KeyType, Comparable []> sorted = (SortedMap <KeyType, Comparable []>) index;
+        if (lo == null) return (hi == null) ? sorted : sorted.headMap (hi);
+        return (hi == null) ? sorted.tailMap (lo) : sorted.subMap (lo, hi);
+    } // keyRange
+
+    /************************************************************************************
+     * Build the index over the tuples the table was constructed with.  The key-tuple
+     * pairs are sorted once and bulk loaded into the B+Tree instead of being inserted
+     * one at a time.  As with insert, the first tuple for a duplicate key is indexed.
+     * An index of tuple ids is loaded with the ids.
+     */
+    private void buildIndex ()
+    {
+        int [] cols = match (key);
+        List <Map.Entry <KeyType, Integer>> entries = new ArrayList <> (tuples.size ());
+        for (int i = 0; i < tuples.size (); i++) {
+            KeyType k = keyAt (i, cols);
+            if (k != null) entries.add (new AbstractMap.SimpleEntry <> (k, i));
+        } // for
+        entries.sort (Map.Entry.comparingByKey ());          // stable, so first tuple stays first
+
+        List <Map.Entry <KeyType, Integer>> unique = new ArrayList <> (entries.size ());
+        for (Map.Entry <KeyType, Integer> e : entries) {
+            if (unique.isEmpty () || unique.get (unique.size () - 1).getKey ().compareTo (e.getKey ()) != 0) {
+                unique.add (e);
+            } // if
+        } // for
+        if (index instanceof TupleIdIndex) {
+            ((TupleIdIndex) index).loadIds (unique.iterator ());
+            return;
+        } // if
+
+        List <Map.Entry <KeyType, Comparable []>> tups = new ArrayList <> (unique.size ());
+        for (Map.Entry <KeyType, Integer> e : unique) tups.add (new AbstractMap.SimpleEntry <> (e.getKey (), tuples.get (e.getValue ())));
+        if (index instanceof BpTreeMap) {
+            ((BpTreeMap <KeyType, Comparable []>) index).bulkLoad (tups.iterator (), 1.0);
+        } else if (index instanceof PrimitiveKeyIndex) {
+            ((PrimitiveKeyIndex <Comparable []>) index).bulkLoad (tups.iterator (), 1.0);
+        } else {
+            for (Map.Entry <KeyType, Comparable []> e : tups) index.put (e.getKey (), e.getValue ());
+        } // if
+    } // buildIndex
+
+    /************************************************************************************
+     * Build the B+Tree of a secondary index over the tuples.  The (values, id) pairs
+     * are sorted once and bulk loaded into posting lists.
+     *
+     * @param sx  the secondary index
+     * @return  false if the index is unique and two tuples share values, else true
+     */
+    private boolean buildIndex (SecondaryIndex sx)
+    {
+        List <Map.Entry <KeyType, Integer>> entries = new ArrayList <> (tuples.size ());
+        for (int i = 0; i < tuples.size (); i++) {
+            KeyType k = keyAt (i, sx.cols);
+            if (k != null) entries.add (new AbstractMap.SimpleEntry <> (k, i));
+        } // for
+        entries.sort (Map.Entry.comparingByKey ());          // stable, so ids stay ascending
+
+        if (sx.unique) {
+            for (int i = 1; i < entries.size (); i++) {
+                if (entries.get (i - 1).getKey ().compareTo (entries.get (i).getKey ()) == 0) return false;
+            } // for
+        } // if
+        sx.ids = new MultiBpTreeMap <> (KeyType.class);
+        sx.ids.bulkLoad (entries.iterator ());
+        return true;
+    } // buildIndex
+
+    /************************************************************************************
+     * Read a saved table back in, rebuilding its indexes from the tuples.
+     *
+     * @param ois  the stream to read the table from
+     */
+    private void readObject (ObjectInputStream ois)
+            throws IOException, ClassNotFoundException
+    {
+        ois.defaultReadObject ();
+        index = newIndex ();
+        buildIndex ();
+        if (indexes == null) indexes = new LinkedHashMap <> ();     // saved before there were any
+        for (SecondaryIndex sx : indexes.values ()) buildIndex (sx);
+    } // readObject
+
+    /************************************************************************************
+     * Determine whether key k lies between lo and hi.
+     *
+     * @param k            the key to check
+     * @param lo           the lower bound (null for none)
+     * @param loInclusive  whether lo itself is in the range
+     * @param hi           the upper bound (null for none)
+     * @param hiInclusive  whether hi itself is in the range
+     * @return  whether k is in the range
+     */
+    private static boolean inRange (KeyType k, KeyType lo, boolean loInclusive, KeyType hi, boolean hiInclusive)
+    {
+        if (lo != null) {
+            int cmp = k.compareTo (lo);
+            if (cmp < 0 || (cmp == 0 && ! loInclusive)) return false;
+        } // if
+        if (hi != null) {
+            int cmp = k.compareTo (hi);
+            if (cmp > 0 || (cmp == 0 && ! hiInclusive)) return false;
+        } // if
+        return true;
+    } // inRange
+
     /************************************************************************************
      * Determine whether the two tables (this and table2) are compatible, i.e., have
      * the same number of attributes each with the same corresponding domain.
@@ -613,6 +1720,87 @@ public class BPTreeTable
         return colPos;
     } // match
 
+    /************************************************************************************
+     * Form the key of tuple t from the values in the given key columns.
+     *
+     * @param t     the tuple to take the key from
+     * @param cols  the column positions of the key attributes
+     * @return  the key for tuple t
+     */
+    private KeyType keyOf (Comparable [] t, int [] cols)
+    {
+        Comparable [] keyVal = new Comparable [cols.length];
+        for (int j = 0; j < keyVal.length; j++) keyVal [j] = t [cols [j]];
+        return new KeyType (keyVal);
+    } // keyOf
+
+    /************************************************************************************
+     * Form a key from the values in the given columns of tuple i, reading only those
+     * columns if the table stores its columns.
+     *
+     * @param i     the position of the tuple
+     * @param cols  the column positions of the key attributes
+     * @return  the key, or null if there is no tuple at i
+     */
+    private KeyType keyAt (int i, int [] cols)
+    {
+        if (tuples instanceof ColumnStore) return new KeyType (((ColumnStore) tuples).cells (i, cols));
+        Comparable [] tup = tuples.get (i);
+        return (tup == null) ? null : keyOf (tup, cols);
+    } // keyAt
+
+    /************************************************************************************
+     * Remove the tuples not marked in keep, moving the others up in order, in one pass
+     * over the tuples.
+     *
+     * @param keep  whether to keep each tuple
+     */
+    private void removeTuples (boolean [] keep)
+    {
+        if (tuples instanceof ColumnStore) {
+            ((ColumnStore) tuples).retain (keep);
+            return;
+        } // if
+        int n = 0;
+        for (int i = 0; i < keep.length; i++) {
+            if (! keep [i]) continue;
+            if (n != i) tuples.set (n, tuples.get (i));
+            n++;
+        } // for
+        tuples.subList (n, keep.length).clear ();
+    } // removeTuples
+
+    /************************************************************************************
+     * Return the ids of the tuples of a columnar table whose values in the given
+     * columns lie between lo and hi.  A single column is compared as it is stored (see
+     * ColumnStore.range); otherwise only the compared columns of each tuple are read.
+     *
+     * @param cols         the columns to compare
+     * @param lo           the lower bound (null for none)
+     * @param loInclusive  whether lo itself is in the range
+     * @param hi           the upper bound (null for none)
+     * @param hiInclusive  whether hi itself is in the range
+     * @return  the ids in ascending order
+     */
+    private int [] scanColumns (int [] cols, KeyType lo, boolean loInclusive, KeyType hi, boolean hiInclusive)
+    {
+        ColumnStore store = (ColumnStore) tuples;
+        if (cols.length == 1 && (lo == null || lo.length () == 1) && (hi == null || hi.length () == 1)) {
+            int [] ids = store.range (cols [0], (lo == null) ? null : lo.get (0), loInclusive,
+                                                (hi == null) ? null : hi.get (0), hiInclusive);
+            if (ids != null) return ids;
+        } // if
+        int [] ids = new int [16];
+        int    n   = 0;
+        for (int i = 0; i < store.size (); i++) {
+            if (inRange (new KeyType (store.cells (i, cols)), lo, loInclusive, hi, hiInclusive)) {
+                if (n == ids.length) ids = Arrays.copyOf (ids, 2 * n);
+                ids [n++] = i;
+            } // if
+        } // for
+        return Arrays.copyOf (ids, n);
+    } // scanColumns
+
     /************************************************************************************
      * Extract the attributes specified by the column array from tuple t.
      *
@@ -17,15 +17,26 @@ import java.util.*;
 
 /************************************************************************************
  * This class provides B+Tree maps.  B+Trees are used as multi-level index structures
- * that provide efficient access for both point queries and range queries.
+ * that provide efficient access for both point queries and range queries.  A map may
+ * be made copy-on-write, in which case a writer copies the nodes it changes and
+ * snapshot returns an immutable version of the map at constant cost.
  */
 public class BpTreeMap <K extends Comparable <K>, V>
        extends AbstractMap <K, V>
        implements Serializable, Cloneable, SortedMap <K, V>
 {
-    /** The maximum fanout for a B+Tree node.
+    /** The default maximum fanout for a B+Tree node (BPTreeTimes.fanoutTimes compares
+     *  others).
      */
-    private static final int ORDER = 5;
+    public static final int DEFAULT_ORDER = 128;
+
+    /** The smallest fanout that still allows a node to be split in two.
+     */
+    public static final int MIN_ORDER = 3;
+
+    /** The maximum fanout for a B+Tree node (set per instance).
+     */
+    private final int order;
 
     /** The class for type K.
      */
@@ -50,25 +61,422 @@ public class BpTreeMap <K extends Comparable <K>, V>
         {
             isLeaf = _isLeaf;
             nKeys  = 0;
-            key    = (K []) Array.newInstance (classK, ORDER - 1);
+            key    = (K []) Array.newInstance (classK, order - 1);
             if (isLeaf) {
                 //ref = (V []) Array.newInstance (classV, ORDER);
-                ref = new Object [ORDER];
+                ref = new Object [order];
             } else {
-                ref = (Node []) Array.newInstance (Node.class, ORDER);
+                ref = (Node []) Array.newInstance (Node.class, order);
             } // if
         } // constructor
     } // Node inner class
 
+    /********************************************************************************
+     * This inner class iterates over the leaf chain from a starting position up to
+     * an optional upper bound.  So that no entry is allocated per key, the iterator
+     * is itself the entry for the key it last returned (a flyweight): an entry is
+     * only valid until the next call to next, and setValue writes through to the leaf.
+     */
+    private class EntryIterator
+            implements Iterator <Map.Entry <K, V>>, Map.Entry <K, V>
+    {
+        Node    leaf;                // leaf holding the next key (null when done)
+        int     pos;                 // position of the next key in leaf
+        Node    curLeaf;             // leaf holding the current key
+        int     cur;                 // position of the current key in curLeaf
+        final K       hi;            // upper bound (null for none)
+        final boolean hiInclusive;   // whether the upper bound is in the range
+        int     expectedModCount = modCount;
+
+        EntryIterator (Node _leaf, int _pos, K _hi, boolean _hiInclusive)
+        {
+            leaf        = _leaf;
+            pos         = _pos;
+            hi          = _hi;
+            hiInclusive = _hiInclusive;
+            advance ();
+        } // constructor
+
+        /** Skip past exhausted leaves and stop once the upper bound is passed.
+         */
+        private void advance ()
+        {
+            while (leaf != null && pos >= leaf.nKeys) {
+                leaf = copyOnWrite ? nextLeaf (leaf) : (Node) leaf.ref [leaf.nKeys];
+                pos  = 0;
+            } // while
+            if (leaf != null && hi != null) {
+                int cmp = leaf.key [pos].compareTo (hi);
+                if (cmp > 0 || (cmp == 0 && ! hiInclusive)) leaf = null;
+            } // if
+        } // advance
+
+        public boolean hasNext ()
+        {
+            return leaf != null;
+        } // hasNext
+
+        public Map.Entry <K, V> next ()
+        {
+            if (modCount != expectedModCount) throw new ConcurrentModificationException ();
+            if (leaf == null) throw new NoSuchElementException ();
+            curLeaf = leaf;
+            cur     = pos++;
+            advance ();
+            return this;
+        } // next
+
+        /** Remove the current entry from the map.  The removal may move keys between
+         *  nodes, so the iterator seeks to the next key again.
+         */
+        public void remove ()
+        {
+            if (curLeaf == null) throw new IllegalStateException ();
+            if (modCount != expectedModCount) throw new ConcurrentModificationException ();
+            K nextKey = (leaf != null) ? leaf.key [pos] : null;
+            BpTreeMap.this.remove (curLeaf.key [cur]);
+            curLeaf          = null;
+            expectedModCount = modCount;
+            if (nextKey != null) {
+                leaf = findLeaf (nextKey, root);
+                pos  = search (nextKey, leaf);
+            } // if
+        } // remove
+
+        public K getKey ()
+        {
+            if (curLeaf == null) throw new IllegalStateException ();
+            return curLeaf.key [cur];
+        } // getKey
+
+        @SuppressWarnings("unchecked")
+        public V getValue ()
+        {
+            if (curLeaf == null) throw new IllegalStateException ();
+            return (V) curLeaf.ref [cur];
+        } // getValue
+
+        public V setValue (V value)
+        {
+            V old = getValue ();
+            if (copyOnWrite) {
+                // The leaf may be shared with snapshots, so put copies it: move to the copy
+                K key = getKey ();
+                BpTreeMap.this.put (key, value);
+                Node copy = findLeaf (key, root);
+                if (leaf == curLeaf) leaf = copy;
+                curLeaf = copy;
+            } else {
+                curLeaf.ref [cur] = value;
+            } // if
+            return old;
+        } // setValue
+
+        public boolean equals (Object o)
+        {
+            if (! (o instanceof Map.Entry)) return false;
+            Map.Entry <?, ?> e = (Map.Entry <?, ?>) o;
+            return Objects.equals (getKey (), e.getKey ()) && Objects.equals (getValue (), e.getValue ());
+        } // equals
+
+        public int hashCode ()
+        {
+            return Objects.hashCode (getKey ()) ^ Objects.hashCode (getValue ());
+        } // hashCode
+
+        public String toString ()
+        {
+            return getKey () + "=" + getValue ();
+        } // toString
+    } // EntryIterator inner class
+
+    /********************************************************************************
+     * This inner class provides a live view of the keys of the B+Tree map that lie
+     * between optional lower and upper bounds.  Nothing is copied: iterating the view
+     * seeks to the lower bound and walks the leaf chain until the upper bound.
+     */
+    private class RangeView
+            extends AbstractMap <K, V>
+            implements SortedMap <K, V>
+    {
+        final K       lo;            // lower bound (null for none)
+        final boolean loInclusive;   // whether the lower bound is in the range
+        final K       hi;            // upper bound (null for none)
+        final boolean hiInclusive;   // whether the upper bound is in the range
+
+        RangeView (K _lo, boolean _loInclusive, K _hi, boolean _hiInclusive)
+        {
+            lo          = _lo;
+            loInclusive = _loInclusive;
+            hi          = _hi;
+            hiInclusive = _hiInclusive;
+        } // constructor
+
+        boolean tooLow (K key)
+        {
+            if (lo == null) return false;
+            int cmp = key.compareTo (lo);
+            return cmp < 0 || (cmp == 0 && ! loInclusive);
+        } // tooLow
+
+        boolean tooHigh (K key)
+        {
+            if (hi == null) return false;
+            int cmp = key.compareTo (hi);
+            return cmp > 0 || (cmp == 0 && ! hiInclusive);
+        } // tooHigh
+
+        /** Seek to the first key in the range.
+         */
+        EntryIterator iterator ()
+        {
+            if (lo == null) return new EntryIterator (firstLeaf (), 0, hi, hiInclusive);
+            Node leaf = findLeaf (lo, root);
+            int  i    = search (lo, leaf);
+            i = (i >= 0) ? (loInclusive ? i : i + 1) : -i - 1;
+            return new EntryIterator (leaf, i, hi, hiInclusive);
+        } // iterator
+
+        public Set <Map.Entry <K, V>> entrySet ()
+        {
+            return new EntrySet (this);
+        } // entrySet
+
+        public int size ()
+        {
+            if (lo == null && hi == null) return BpTreeMap.this.size ();
+            int n = 0;
+            for (EntryIterator it = iterator (); it.hasNext (); it.next ()) n++;
+            return n;
+        } // size
+
+        public boolean isEmpty ()
+        {
+            if (lo == null && hi == null) return BpTreeMap.this.isEmpty ();
+            return ! iterator ().hasNext ();
+        } // isEmpty
+
+        @SuppressWarnings("unchecked")
+        public boolean containsKey (Object key)
+        {
+            K k = (K) key;
+            return ! tooLow (k) && ! tooHigh (k) && BpTreeMap.this.containsKey (k);
+        } // containsKey
+
+        @SuppressWarnings("unchecked")
+        public V get (Object key)
+        {
+            K k = (K) key;
+            return (tooLow (k) || tooHigh (k)) ? null : BpTreeMap.this.get (k);
+        } // get
+
+        public V put (K key, V value)
+        {
+            if (tooLow (key) || tooHigh (key)) {
+                throw new IllegalArgumentException ("RangeView.put: key out of range " + key);
+            } // if
+            return BpTreeMap.this.put (key, value);
+        } // put
+
+        @SuppressWarnings("unchecked")
+        public V remove (Object key)
+        {
+            K k = (K) key;
+            return (tooLow (k) || tooHigh (k)) ? null : BpTreeMap.this.remove (k);
+        } // remove
+
+        public Comparator <? super K> comparator ()
+        {
+            return null;
+        } // comparator
+
+        public K firstKey ()
+        {
+            EntryIterator it = iterator ();
+            if (! it.hasNext ()) throw new NoSuchElementException ();
+            return it.next ().getKey ();
+        } // firstKey
+
+        public K lastKey ()
+        {
+            K k = lastKeyBelow (hi, hiInclusive);
+            if (k == null || tooLow (k)) throw new NoSuchElementException ();
+            return k;
+        } // lastKey
+
+        public SortedMap <K, V> headMap (K toKey)
+        {
+            return subView (lo, loInclusive, toKey, true);
+        } // headMap
+
+        public SortedMap <K, V> tailMap (K fromKey)
+        {
+            return subView (fromKey, true, hi, hiInclusive);
+        } // tailMap
+
+        public SortedMap <K, V> subMap (K fromKey, K toKey)
+        {
+            return subView (fromKey, true, toKey, true);
+        } // subMap
+
+        /** Narrow this view to the intersection with the given bounds.
+         */
+        RangeView subView (K _lo, boolean _loInclusive, K _hi, boolean _hiInclusive)
+        {
+            if (_lo == null || (lo != null && tooLow (_lo))) {
+                _lo = lo; _loInclusive = loInclusive;
+            } else if (lo != null && _lo.compareTo (lo) == 0) {
+                _loInclusive &= loInclusive;
+            } // if
+            if (_hi == null || (hi != null && tooHigh (_hi))) {
+                _hi = hi; _hiInclusive = hiInclusive;
+            } else if (hi != null && _hi.compareTo (hi) == 0) {
+                _hiInclusive &= hiInclusive;
+            } // if
+            return new RangeView (_lo, _loInclusive, _hi, _hiInclusive);
+        } // subView
+    } // RangeView inner class
+
+    /********************************************************************************
+     * This inner class is the entry set of a range view.  Since its iterator returns
+     * flyweight entries, toArray copies each entry so the array stays meaningful.
+     */
+    private class EntrySet
+            extends AbstractSet <Map.Entry <K, V>>
+    {
+        final RangeView view;
+
+        EntrySet (RangeView _view)
+        {
+            view = _view;
+        } // constructor
+
+        public Iterator <Map.Entry <K, V>> iterator ()
+        {
+            return view.iterator ();
+        } // iterator
+
+        public int size ()
+        {
+            return view.size ();
+        } // size
+
+        public boolean isEmpty ()
+        {
+            return view.isEmpty ();
+        } // isEmpty
+
+        public Object [] toArray ()
+        {
+            List <Map.Entry <K, V>> copy = new ArrayList <> ();
+            for (Map.Entry <K, V> e : this) copy.add (new AbstractMap.SimpleImmutableEntry <> (e));
+            return copy.toArray ();
+        } // toArray
+
+        public <T> T [] toArray (T [] a)
+        {
+            List <Map.Entry <K, V>> copy = new ArrayList <> ();
+            for (Map.Entry <K, V> e : this) copy.add (new AbstractMap.SimpleImmutableEntry <> (e));
+            return copy.toArray (a);
+        } // toArray
+    } // EntrySet inner class
+
+    /********************************************************************************
+     * This inner class is a version of a copy-on-write B+Tree map published by a
+     * writer: a root whose nodes will not change again, with the statistics for it.
+     */
+    private class Version
+    {
+        final Node root;
+        final int  size, height, nodes, leaves;
+
+        Version (Node _root, int _size, int _height, int _nodes, int _leaves)
+        {
+            root   = _root;
+            size   = _size;
+            height = _height;
+            nodes  = _nodes;
+            leaves = _leaves;
+        } // constructor
+    } // Version inner class
+
+    /********************************************************************************
+     * This nested class holds a snapshot of the statistics a B+Tree map maintains as
+     * it changes, so reading them costs no scan of the tree.
+     */
+    public static class Stats
+    {
+        /** The number of entries */
+        public final int    size;
+        /** The number of levels */
+        public final int    height;
+        /** The number of nodes, internal and leaf */
+        public final int    nodes;
+        /** The number of leaf nodes */
+        public final int    leaves;
+        /** The average fraction of each leaf's key slots in use */
+        public final double avgLeafFill;
+
+        Stats (int _size, int _height, int _nodes, int _leaves, int order)
+        {
+            size        = _size;
+            height      = _height;
+            nodes       = _nodes;
+            leaves      = _leaves;
+            avgLeafFill = _size / (double) (_leaves * (order - 1));
+        } // constructor
+
+        public String toString ()
+        {
+            return "Stats (size = " + size + ", height = " + height + ", nodes = " + nodes +
+                   ", leaves = " + leaves + ", avgLeafFill = " + String.format ("%.3f", avgLeafFill) + ")";
+        } // toString
+    } // Stats class
+
 
     /** The root of the B+Tree
      */
     private Node root;
 
-    /** The counter for the number nodes accessed (for performance testing).
+    /** The counter for the number nodes accessed (for performance testing), which
+     *  may miss some accesses when several threads read the tree at once.
      */
     private int count = 0;
 
+    /** The number of entries (key-value pairs) in the B+Tree.
+     */
+    private int size = 0;
+
+    /** The number of levels in the B+Tree (1 when the root is a leaf).
+     */
+    private int height = 1;
+
+    /** The number of nodes (internal and leaf) in the B+Tree.
+     */
+    private int nodes = 1;
+
+    /** The number of leaf nodes in the B+Tree.
+     */
+    private int leaves = 1;
+
+    /** The number of structural changes, so iterators can fail fast.
+     */
+    private transient int modCount = 0;
+
+    /** Whether writers copy the nodes on the path they change instead of changing them
+     *  in place, so that snapshots can share the nodes.  Such a map keeps no leaf chain,
+     *  since a copied leaf would leave its left neighbor linked to the old one.
+     */
+    private final boolean copyOnWrite;
+
+    /** Whether this map is a read-only snapshot of a copy-on-write map.
+     */
+    private final boolean readOnly;
+
+    /** The version last published by the writer of a copy-on-write map.
+     */
+    private transient volatile Version current;
+
     
     /********************************************************************************
      * Construct an empty B+Tree map.
@@ -77,12 +485,100 @@ public class BpTreeMap <K extends Comparable <K>, V>
      */
     public BpTreeMap (Class <K> _classK, Class <V> _classV)
     {
-        classK = _classK;
-        classV = _classV;
-        root   = new Node (true);
-       
+        this (_classK, _classV, DEFAULT_ORDER);
+    } // constructor
+
+    /********************************************************************************
+     * Construct an empty B+Tree map with the given maximum fanout.  Nodes hold up to
+     * order - 1 keys and order references.
+     * @param _classK  the class for keys (K)
+     * @param _classV  the class for values (V)
+     * @param _order   the maximum fanout for a node (at least MIN_ORDER)
+     */
+    public BpTreeMap (Class <K> _classK, Class <V> _classV, int _order)
+    {
+        this (_classK, _classV, _order, false);
+    } // constructor
+
+    /********************************************************************************
+     * Construct an empty B+Tree map with the given maximum fanout, optionally in
+     * copy-on-write mode.  Each change then copies the nodes on its path from the root
+     * and publishes the new root, leaving the old nodes to the snapshots still using
+     * them (and to the garbage collector after that).
+     * @param _classK       the class for keys (K)
+     * @param _classV       the class for values (V)
+     * @param _order        the maximum fanout for a node (at least MIN_ORDER)
+     * @param _copyOnWrite  whether changes copy nodes so snapshots can be taken
+     */
+    public BpTreeMap (Class <K> _classK, Class <V> _classV, int _order, boolean _copyOnWrite)
+    {
+        if (_order < MIN_ORDER) {
+            throw new IllegalArgumentException ("BpTreeMap: order must be at least " + MIN_ORDER);
+        } // if
+        classK      = _classK;
+        classV      = _classV;
+        order       = _order;
+        copyOnWrite = _copyOnWrite;
+        readOnly    = false;
+        root        = new Node (true);
+        publish ();
     } // constructor
 
+    /********************************************************************************
+     * Construct a read-only snapshot of a copy-on-write map from one of its versions.
+     * @param map  the copy-on-write map
+     * @param v    the version of it to present
+     */
+    private BpTreeMap (BpTreeMap <K, V> map, Version v)
+    {
+        classK      = map.classK;
+        classV      = map.classV;
+        order       = map.order;
+        copyOnWrite = true;
+        readOnly    = true;
+        root        = v.root;
+        size        = v.size;
+        height      = v.height;
+        nodes       = v.nodes;
+        leaves      = v.leaves;
+        current     = v;
+    } // constructor
+
+    /********************************************************************************
+     * Return the maximum fanout for the nodes of this B+Tree map.
+     * @return  the order of the B+Tree
+     */
+    public int order ()
+    {
+        return order;
+    } // order
+
+    /********************************************************************************
+     * Return whether this B+Tree map is copy-on-write (snapshots included).
+     */
+    public boolean copyOnWrite ()
+    {
+        return copyOnWrite;
+    } // copyOnWrite
+
+    /********************************************************************************
+     * Return a read-only snapshot of this copy-on-write B+Tree map as of its last
+     * change.  The snapshot shares the published root, so taking one costs O(1) and
+     * copies nothing, and later changes to the map never show through it.  It may be
+     * taken and read from any thread while the (single) writer goes on changing the
+     * map; neither waits for the other.
+     * @return  the immutable snapshot (this map if it is itself a snapshot)
+     * @throws UnsupportedOperationException if the map is not copy-on-write
+     */
+    public BpTreeMap <K, V> snapshot ()
+    {
+        if (readOnly) return this;
+        if (! copyOnWrite) {
+            throw new UnsupportedOperationException ("BpTreeMap: snapshots need a copy-on-write map");
+        } // if
+        return new BpTreeMap <> (this, current);
+    } // snapshot
+
     /********************************************************************************
      * Return null to use the natural order based on the key type.  This requires the
      * key type to implement Comparable.
@@ -93,55 +589,14 @@ public class BpTreeMap <K extends Comparable <K>, V>
     } // comparator
 
     /********************************************************************************
-     * Return a set containing all the entries as pairs of keys and values.
+     * Return a live set view of all the entries as pairs of keys and values.  Its
+     * iterator walks the leaf chain directly and returns flyweight entries, so no
+     * copy of the map is made.
      * @return  the set view of the map
-     *
      */
-    
     public Set <Map.Entry <K, V>> entrySet ()
     {
-    	Set <Map.Entry <K, V>> enSet = new LinkedHashSet <> ();
-
-    	// Creates node bottomLevel that will start as the root, and move its way down
-    	// to the bottom of the b+ tree
-        Node bottomLevel = root;
-
-        // Moves to the bottom left child node until it reaches the leaf level
-        while (bottomLevel.isLeaf == false) 
-        { 
-        	bottomLevel = (Node) bottomLevel.ref[0]; 
-        }
-        
-        // Moves through each leaf and and adds the key and ref value to the enset
-        while (true) 
-        {
-        	// Used to iterate through ref
-        	int i = 0;
-            // For every key in the node, adds the key and ref pair to enSet
-            for (K key : bottomLevel.key) 
-            {
-            	if(key == null)
-            	{
-            		break;
-            	}
-            	// Creates the entry to be added
-            	java.util.AbstractMap.SimpleEntry<K, V> enSetEntry = new AbstractMap.SimpleEntry <> (key, (V) bottomLevel.ref[i]);
-            	// Adds the entry
-            	enSet.add(enSetEntry);
-            	i++;
-            }
-            
-            // Moves to the next node moving to the right, while loop ends when this becomes null
-           // out.println("bottom level " + bottomLevel);
-            bottomLevel = (Node) bottomLevel.ref[bottomLevel.nKeys];    
-            if(bottomLevel == null)
-            {
-            	// Exits loop and returns enSet
-            	break;
-            }
-        } 
-            
-        return enSet;
+        return new EntrySet (new RangeView (null, false, null, false));
     } // entrySet
 
     /********************************************************************************
@@ -156,17 +611,94 @@ public class BpTreeMap <K extends Comparable <K>, V>
     } // get
 
     /********************************************************************************
-     * Put the key-value pair in the B+Tree map.
+     * Determine whether the B+Tree map contains the key, using a single descent.
+     * @param key  the key to look for
+     * @return  whether the key is present
+     */
+    @SuppressWarnings("unchecked")
+    public boolean containsKey (Object key)
+    {
+        K k = (K) key;
+        return search (k, findLeaf (k, root)) >= 0;
+    } // containsKey
+
+    /********************************************************************************
+     * Put the key-value pair in the B+Tree map, replacing the value of an existing key.
      * @param key    the key to insert
      * @param value  the value to insert
-     * @return  null (not the previous value)
+     * @return  the previous value for the key, or null if there was none
      */
     public V put (K key, V value)
     {
-        insert (key, value, root, null);
-        return null;
+        checkWritable ();
+        return insert (key, value, root, true);
     } // put
 
+    /********************************************************************************
+     * Put the key-value pair in the B+Tree map unless the key already has a value.
+     * Uses the same single descent as put.
+     * @param key    the key to insert
+     * @param value  the value to insert
+     * @return  the current value for the key, or null if the pair was inserted
+     */
+    public V putIfAbsent (K key, V value)
+    {
+        checkWritable ();
+        return insert (key, value, root, false);
+    } // putIfAbsent
+
+    /********************************************************************************
+     * Remove the key and its value from the B+Tree map.  A node left less than half
+     * full borrows a key from a sibling, or is merged with one, and the root shrinks
+     * when it is left with a single child.
+     * @param key  the key to remove
+     * @return  the value that was removed, or null if the key was not present
+     */
+    @SuppressWarnings("unchecked")
+    public V remove (Object key)
+    {
+        checkWritable ();
+        K k = (K) key;
+
+        // Descend to the leaf, remembering the path and the child taken at each node
+        List <Node> parentList = new ArrayList <> ();
+        int []      childPos   = new int [height];
+        Node n = root;
+        while (! n.isLeaf) {
+            int c = child (k, n);
+            childPos [parentList.size ()] = c;
+            parentList.add (n);
+            n = (Node) n.ref [c];
+        } // while
+
+        int i = search (k, n);
+        if (i < 0) return null;
+        V old = (V) n.ref [i];
+        if (copyOnWrite) n = copyPath (k, parentList, n);
+        removeAt (n, i);
+        size--;
+        modCount++;
+
+        rebalance (n, parentList, childPos, parentList.size () - 1);
+        publish ();
+        return old;
+    } // remove
+
+    /********************************************************************************
+     * Remove all the entries from the B+Tree map.
+     */
+    public void clear ()
+    {
+        checkWritable ();
+        root   = new Node (true);
+        size   = 0;
+        height = 1;
+        nodes  = 1;
+        leaves = 1;
+        modCount++;
+        publish ();
+    } // clear
+
     /********************************************************************************
      * Return the first (smallest) key in the B+Tree map.
      * @return  the first key in the B+Tree map.
@@ -220,174 +752,271 @@ public class BpTreeMap <K extends Comparable <K>, V>
     } // lastKey
 
     /********************************************************************************
-     * Return the portion of the B+Tree map where key < toKey.
-     * @return  the submap with keys in the range [firstKey, toKey)
+     * Return a live view of the portion of the B+Tree map where key <= toKey.
+     * @param toKey  the upper bound (inclusive)
+     * @return  the submap with keys in the range [firstKey, toKey]
      */
     public SortedMap <K,V> headMap (K toKey)
     {
-    	// Starts node at the root
-    	Node node = root;
-    	
-    	// Will store the headMap
-    	SortedMap<K,V> headMapHolder = new TreeMap<>();
-    	
-    	// Goes down to the leftmost leaf node
-    	 while (node.isLeaf == false) 
-         { 
-         	node = (Node) node.ref[0]; 
-         }
-    	 
-    	 boolean continueLoop = true;
-         while ( continueLoop && node != null) 
-         { 
-             // Adds all keys between the firstKey and toKey
-             for (int i = 0; i < node.nKeys; i++) 
-             {
-            	 // If the key is less than or equal to toKey add it to the map
-                 if(node.key[i].compareTo(toKey) <= 0) 
-                 {
-                 	headMapHolder.put(node.key[i], (V) node.ref[i]);
-                 }
-                 // If the key is greater than toKey, end the loops
-                 if(node.key[i].compareTo(toKey) == 1)
-                 {
-                 	continueLoop = false;
-                 	break;
-                 }
-             } 
-             node = (Node) node.ref[node.nKeys];   
-         }
-        return headMapHolder;
+        return headMap (toKey, true);
+    } // headMap
+
+    /********************************************************************************
+     * Return a live view of the portion of the B+Tree map below toKey.
+     * @param toKey      the upper bound
+     * @param inclusive  whether toKey itself is in the range
+     * @return  the submap with keys up to toKey
+     */
+    public SortedMap <K,V> headMap (K toKey, boolean inclusive)
+    {
+        return new RangeView (null, false, toKey, inclusive);
     } // headMap
 
     /********************************************************************************
-     * Return the portion of the B+Tree map where fromKey <= key.
+     * Return a live view of the portion of the B+Tree map where fromKey <= key.
+     * @param fromKey  the lower bound (inclusive)
      * @return  the submap with keys in the range [fromKey, lastKey]
      */
     public SortedMap <K,V> tailMap (K fromKey)
     {
-    	// Will store the tailmap
-    	SortedMap<K,V> tailMapHolder = new TreeMap<>();
-    	// initializes index
-    	int index;
-        // Determine which ref index to go down into
-        Node node = root;
-        while(node.isLeaf == false) 
-        { 
-        	index = 0;
-        	for(int i = 0; i < node.nKeys; i++)
-        	{
-        		if(node.key[i].compareTo(fromKey) >= 0)
-        		{
-        			break;
-        		}
-        		index++;
-        	}
-        
-        	node = (Node) node.ref[index]; 
-        }
-        
-        
-        while (node != null) 
-        { 
-            // if a key is between fromKey and toKey, add it to the map
-            for (int i = 0; i < node.nKeys; i++) 
-            {
-            	// Checks for condition
-                if(fromKey.compareTo(node.key[i]) <= 0) 
-                {
-                	tailMapHolder.put(node.key[i], (V) node.ref[i]);
-                }
-            } 
-            
-            node = (Node) node.ref[node.nKeys];   
-        }
-                
-        
-        return tailMapHolder;
+        return tailMap (fromKey, true);
     } // tailMap
 
     /********************************************************************************
-     * Return the portion of the B+Tree map whose keys are between fromKey and toKey,
-     * i.e., fromKey <= key < toKey.
-     * @return  the submap with keys in the range [fromKey, toKey)
+     * Return a live view of the portion of the B+Tree map above fromKey.
+     * @param fromKey    the lower bound
+     * @param inclusive  whether fromKey itself is in the range
+     * @return  the submap with keys from fromKey on
+     */
+    public SortedMap <K,V> tailMap (K fromKey, boolean inclusive)
+    {
+        return new RangeView (fromKey, inclusive, null, false);
+    } // tailMap
+
+    /********************************************************************************
+     * Return a live view of the portion of the B+Tree map whose keys are between
+     * fromKey and toKey, i.e., fromKey <= key <= toKey.
+     * @param fromKey  the lower bound (inclusive)
+     * @param toKey    the upper bound (inclusive)
+     * @return  the submap with keys in the range [fromKey, toKey]
      * @author Michael Tan
      */
-    public SortedMap<K,V> subMap(K fromKey, K toKey) 
+    public SortedMap <K,V> subMap (K fromKey, K toKey) 
     {
-    	// Will store the submap
-    	SortedMap<K,V> subMapHolder = new TreeMap<>();
-    	// initializes index
-    	int index;
-        // Determine which ref index to go down into
-        Node node = root;
-        while(node.isLeaf == false) 
-        { 
-        	index = 0;
-        	for(int i = 0; i < node.nKeys; i++)
-        	{
-        		if(node.key[i].compareTo(fromKey) >= 0)
-        		{
-        			break;
-        		}
-        		index++;
-        	}
-        
-        	node = (Node) node.ref[index]; 
-        }
-        
-        boolean continueLoop = true;
-        while ( continueLoop && node != null) 
-        { 
-            // if a key is between fromKey and toKey, add it to the map
-            for (int i = 0; i < node.nKeys; i++) 
-            {
-            	// Checks for condition
-                if(fromKey.compareTo(node.key[i]) <= 0  && node.key[i].compareTo(toKey) <= 0) 
-                {
-                	subMapHolder.put(node.key[i], (V) node.ref[i]);
-                }
-                // End loop if key is greater than toKey
-                if(node.key[i].compareTo(toKey) == 1)
-                {
-                	continueLoop = false;
-                	break;
-                }
-            } 
-            
-            node = (Node) node.ref[node.nKeys];   
-        }
-                
-        
-        return subMapHolder;
-	} // subMap
+        return subMap (fromKey, true, toKey, true);
+    } // subMap
 
     /********************************************************************************
-     * Return the size (number of keys) in the B+Tree.
+     * Return a live view of the portion of the B+Tree map whose keys are between
+     * fromKey and toKey, with each bound included or not.
+     * @param fromKey        the lower bound
+     * @param fromInclusive  whether fromKey itself is in the range
+     * @param toKey          the upper bound
+     * @param toInclusive    whether toKey itself is in the range
+     * @return  the submap with keys between fromKey and toKey
+     */
+    public SortedMap <K,V> subMap (K fromKey, boolean fromInclusive, K toKey, boolean toInclusive)
+    {
+        return new RangeView (fromKey, fromInclusive, toKey, toInclusive);
+    } // subMap
+
+    /********************************************************************************
+     * Return the size (number of keys) in the B+Tree, which is kept as entries are
+     * added rather than counted.
      * @return  the size of the B+Tree
      */
     public int size ()
     {
-    	 int sum = 0;
-    	
-    	 // Moves down to leftmost leaf node
-         Node node = root;
-
-      	 // Moves down to leftmost leaf node
-         while (node.isLeaf == false) 
-         { 
-         	node = (Node) node.ref[0]; 
-         }
-         
-         while (node != null) 
-         { 
-        	 sum = sum + node.nKeys;
-        	 node = (Node) node.ref[node.nKeys];
-         }
-         
-         return sum;
+        return size;
     } // size
 
+    /********************************************************************************
+     * Return the statistics for the B+Tree map: entry count, height, node count, leaf
+     * count and average leaf fill.  They are kept up to date as the tree changes, so
+     * this is constant time.
+     * @return  the current statistics
+     */
+    public Stats stats ()
+    {
+        return new Stats (size, height, nodes, leaves, order);
+    } // stats
+
+    /********************************************************************************
+     * Return keys that divide the map into about the given number of key ranges, for
+     * scanning the ranges in parallel.  They are the divider keys of the top levels
+     * of the tree, down to the first level with enough subtrees (or the leaves'
+     * parents), evenly spaced, so each range spans about the same number of leaves.
+     * A divider need not still be in the map; every key falls in exactly one range.
+     * @param parts  the number of ranges wanted
+     * @return  up to parts - 1 keys in ascending order
+     */
+    public List <K> splitKeys (int parts)
+    {
+        List <K> keys = new ArrayList <> ();
+        for (int depth = 1; keys.size () + 1 < parts; depth++) {
+            int found = keys.size ();
+            keys.clear ();
+            dividers (root, depth, keys);
+            if (keys.size () == found) break;                     // no deeper internal level
+        } // for
+        if (keys.size () < parts) return keys;
+
+        List <K> split = new ArrayList <> (parts - 1);
+        for (int i = 1; i < parts; i++) split.add (keys.get ((int) ((long) i * keys.size () / parts)));
+        return split;
+    } // splitKeys
+
+    /********************************************************************************
+     * Replace the contents of this B+Tree map by building it bottom-up from entries
+     * given in strictly ascending key order.  Leaves are packed left to right to the
+     * given fill factor, then each internal level is built over the level below it.
+     * No node is ever less than half full, so the tree is left in the same shape an
+     * insert would expect.  The map is unchanged if the input is rejected.
+     * @param sorted      the entries in strictly ascending key order
+     * @param fillFactor  the fraction of each node to fill, in (0, 1]
+     * @throws IllegalArgumentException if the keys are not strictly ascending or the
+     *         fill factor is out of range
+     */
+    public void bulkLoad (Iterator <? extends Map.Entry <K, V>> sorted, double fillFactor)
+    {
+        if (! (fillFactor > 0.0 && fillFactor <= 1.0)) {
+            throw new IllegalArgumentException ("bulkLoad: fill factor must be in (0, 1]");
+        } // if
+        checkWritable ();
+        int minKeys = (order - 1) / 2;
+        int perLeaf = Math.max (Math.max (minKeys, 1), (int) Math.round (fillFactor * (order - 1)));
+        int perNode = Math.max (minKeys + 1, (int) Math.round (fillFactor * order));
+
+        // Pack the leaves left to right, keeping the first key of each
+        List <Node> level = new ArrayList <> ();
+        List <K>    low   = new ArrayList <> ();
+        Node leaf = new Node (true);
+        K    prev = null;
+        int  total = 0;
+        while (sorted.hasNext ()) {
+            Map.Entry <K, V> e = sorted.next ();
+            K key = e.getKey ();
+            if (prev != null && prev.compareTo (key) >= 0) {
+                throw new IllegalArgumentException ("bulkLoad: keys not in ascending order at " + key);
+            } // if
+            if (leaf.nKeys == perLeaf) {
+                Node next = new Node (true);
+                if (! copyOnWrite) leaf.ref [leaf.nKeys] = next;
+                leaf = next;
+            } // if
+            if (leaf.nKeys == 0) {
+                level.add (leaf);
+                low.add (key);
+            } // if
+            leaf.key [leaf.nKeys] = key;
+            leaf.ref [leaf.nKeys] = e.getValue ();
+            leaf.nKeys++;
+            total++;
+            prev = key;
+        } // while
+        if (level.isEmpty ()) level.add (leaf);
+
+        // An underfull last leaf takes keys from, or is merged into, its left neighbor
+        int last = level.size () - 1;
+        if (last > 0 && level.get (last).nKeys < minKeys) {
+            Node left  = level.get (last - 1);
+            Node right = level.get (last);
+            int  both  = left.nKeys + right.nKeys;
+            if (both <= order - 1) {
+                for (int i = 0; i < right.nKeys; i++) {
+                    left.key [left.nKeys + i] = right.key [i];
+                    left.ref [left.nKeys + i] = right.ref [i];
+                } // for
+                left.nKeys = both;
+                left.ref [both] = null;
+                level.remove (last);
+                low.remove (last);
+            } else {
+                int keep  = both - both / 2;
+                int moved = left.nKeys - keep;
+                for (int i = right.nKeys - 1; i >= 0; i--) {
+                    right.key [i + moved] = right.key [i];
+                    right.ref [i + moved] = right.ref [i];
+                } // for
+                for (int i = 0; i < moved; i++) {
+                    right.key [i] = left.key [keep + i];
+                    right.ref [i] = left.ref [keep + i];
+                    left.key [keep + i] = null;
+                    left.ref [keep + i] = null;
+                } // for
+                right.nKeys += moved;
+                right.ref [right.nKeys] = null;
+                left.ref [left.nKeys] = null;
+                left.nKeys = keep;
+                if (! copyOnWrite) left.ref [keep] = right;
+                low.set (last, right.key [0]);
+            } // if
+        } // if
+
+        // Build each internal level over the one below until a single root remains
+        int nLeaves = level.size ();
+        int nNodes  = nLeaves;
+        int levels  = 1;
+        while (level.size () > 1) {
+            List <Node> upper    = new ArrayList <> ();
+            List <K>    upperLow = new ArrayList <> ();
+            int [] sizes = groupSizes (level.size (), perNode, minKeys + 1, order);
+            int c = 0;
+            for (int size : sizes) {
+                Node n = new Node (false);
+                n.ref [0] = level.get (c);
+                for (int i = 1; i < size; i++) {
+                    n.key [i - 1] = low.get (c + i);
+                    n.ref [i]     = level.get (c + i);
+                } // for
+                n.nKeys = size - 1;
+                upper.add (n);
+                upperLow.add (low.get (c));
+                c += size;
+            } // for
+            level   = upper;
+            low     = upperLow;
+            nNodes += upper.size ();
+            levels++;
+        } // while
+        root = level.get (0);
+        size   = total;
+        height = levels;
+        nodes  = nNodes;
+        leaves = nLeaves;
+        modCount++;
+        publish ();
+    } // bulkLoad
+
+    /********************************************************************************
+     * Divide a level of nodes into groups of children for the level above, each of
+     * the given size except the last.  An undersized last group is balanced with, or
+     * merged into, the group before it.
+     * @param total  the number of nodes to group
+     * @param per    the preferred group size
+     * @param min    the smallest allowed group size
+     * @param max    the largest allowed group size
+     * @return  the size of each group from left to right
+     */
+    static int [] groupSizes (int total, int per, int min, int max)
+    {
+        int    groups = (total + per - 1) / per;
+        int [] sizes  = new int [groups];
+        Arrays.fill (sizes, per);
+        sizes [groups - 1] = total - per * (groups - 1);
+        if (groups > 1 && sizes [groups - 1] < min) {
+            int both = sizes [groups - 2] + sizes [groups - 1];
+            if (both <= max) {
+                sizes = Arrays.copyOf (sizes, groups - 1);
+                sizes [groups - 2] = both;
+            } else {
+                sizes [groups - 2] = both - both / 2;
+                sizes [groups - 1] = both / 2;
+            } // if
+        } // if
+        return sizes;
+    } // groupSizes
+
     /********************************************************************************
      * Print the B+Tree using a pre-order traveral and indenting each level.
      * @param n      the current node to print
@@ -415,625 +1044,518 @@ public class BpTreeMap <K extends Comparable <K>, V>
     } // print
 
     /********************************************************************************
-     * Recursive helper function for finding a key in B+trees.
-     * @param key  the key to find
-     * @param ney  the current node
+     * Binary search the keys of node n for the given key.  Each probe makes a single
+     * comparison.
+     * @param key  the key to search for
+     * @param n    the node to search
+     * @return  the position of the key if found, otherwise (-(insertion point) - 1)
+     */
+    private int search (K key, Node n)
+    {
+        int lo = 0;
+        int hi = n.nKeys - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = n.key [mid].compareTo (key);
+            if (cmp < 0)      lo = mid + 1;
+            else if (cmp > 0) hi = mid - 1;
+            else return mid;
+        } // while
+        return -(lo + 1);
+    } // search
+
+    /********************************************************************************
+     * Return the position of the child of internal node n that covers the given key.
+     * Keys equal to a divider key are found in its right subtree.
+     * @param key  the key to locate
+     * @param n    the internal node
+     */
+    private int child (K key, Node n)
+    {
+        int i = search (key, n);
+        return (i >= 0) ? i + 1 : -i - 1;
+    } // child
+
+    /********************************************************************************
+     * Descend from node n to the leaf that covers the given key, counting each node
+     * accessed.
+     * @param key  the key to locate
+     * @param n    the node to start from
+     */
+    private Node findLeaf (K key, Node n)
+    {
+        count++;
+        while (! n.isLeaf) {
+            n = (Node) n.ref [child (key, n)];
+            count++;
+        } // while
+        return n;
+    } // findLeaf
+
+    /********************************************************************************
+     * Add the divider keys of the internal nodes within depth levels of node n to the
+     * list, in ascending order.
+     * @param n      the node to start from
+     * @param depth  the number of levels to take dividers from
+     * @param keys   the list to add to
+     */
+    private void dividers (Node n, int depth, List <K> keys)
+    {
+        if (n.isLeaf) return;
+        for (int i = 0; i <= n.nKeys; i++) {
+            if (depth > 1) dividers ((Node) n.ref [i], depth - 1, keys);
+            if (i < n.nKeys) keys.add (n.key [i]);
+        } // for
+    } // dividers
+
+    /********************************************************************************
+     * Return the leftmost leaf, where the leaf chain starts.
      */
+    private Node firstLeaf ()
+    {
+        Node n = root;
+        while (! n.isLeaf) n = (Node) n.ref [0];
+        return n;
+    } // firstLeaf
+
+    /********************************************************************************
+     * Return the leaf after the given one, for a copy-on-write map, which has no leaf
+     * chain.  Descend towards the leaf's last key, remembering the nearest subtree to
+     * the right, and return that subtree's leftmost leaf.
+     * @param leaf  the current leaf
+     * @return  the next leaf, or null if leaf is the last
+     */
+    private Node nextLeaf (Node leaf)
+    {
+        if (leaf.nKeys == 0) return null;
+        K    last  = leaf.key [leaf.nKeys - 1];
+        Node n     = root;
+        Node right = null;
+        while (! n.isLeaf) {
+            int c = child (last, n);
+            if (c < n.nKeys) right = (Node) n.ref [c + 1];
+            n = (Node) n.ref [c];
+        } // while
+        if (right == null) return null;
+        while (! right.isLeaf) right = (Node) right.ref [0];
+        return right;
+    } // nextLeaf
+
+    /********************************************************************************
+     * Return the largest key below the given bound in one descent.  On the way down,
+     * remember the nearest subtree to the left, whose largest key is the answer when
+     * the leaf reached holds no key below the bound.
+     * @param hi         the upper bound (null for none)
+     * @param inclusive  whether a key equal to hi qualifies
+     * @return  the largest such key, or null if there is none
+     */
+    private K lastKeyBelow (K hi, boolean inclusive)
+    {
+        Node n    = root;
+        Node left = null;
+        while (! n.isLeaf) {
+            int c = (hi == null) ? n.nKeys : child (hi, n);
+            if (c > 0) left = (Node) n.ref [c - 1];
+            n = (Node) n.ref [c];
+        } // while
+
+        int i = n.nKeys - 1;
+        if (hi != null) {
+            i = search (hi, n);
+            i = (i >= 0) ? (inclusive ? i : i - 1) : -i - 2;
+        } // if
+        if (i >= 0) return n.key [i];
+        if (left == null) return null;
+        while (! left.isLeaf) left = (Node) left.ref [left.nKeys];
+        return (left.nKeys > 0) ? left.key [left.nKeys - 1] : null;
+    } // lastKeyBelow
+
     /********************************************************************************
-     * Recursive helper function for finding a key in B+trees.
-     * @param key  the key to find
-     * @param ney  the current node
+     * Helper function for finding a key in B+trees.
+     * @param key   the key to find
+     * @param node  the current node
      */
     @SuppressWarnings("unchecked")
     private V find (K key, Node node)
     {
-		// Increments count
-		count++;
-		// Traverses the tree and searches for the key.
-		for (int i = 0; i < node.nKeys; i++) 
-		{
-			// Looks in leaf node to check if key is present
-			if (node.isLeaf) 
-			{
-				if (key.compareTo(node.key[i]) == -1) 
-				{
-					// No match is present, so it returns null
-					return null;
-				} 
-				else if (key.compareTo(node.key[i]) == 0) 
-				{ 
-					return (V) node.ref[i];				
-				} 
-				else
-				{
-					continue;
-				}
-			}
-			else
-			{
-				//Moves down the tree to find key
-				if (i == 0 && key.compareTo(node.key[i]) < 0 || (i > 0 && key.compareTo(node.key[i-1]) >= 0 && key.compareTo(node.key[i]) < 0)) 
-				{ 				
-					count++;
-					node = (Node) node.ref[i];	
-					i = -1;
-				} 
-				else if (i == node.nKeys - 1) 
-				{ 				
-					count++;
-					node = (Node) node.ref[i+1];	
-					i = -1;
-				}
-				else
-				{
-					continue;
-				}
-			}
-		}
-		
-		return null;
+        Node leaf = findLeaf (key, node);
+        int  i    = search (key, leaf);
+        return (i >= 0) ? (V) leaf.ref [i] : null;
     } // find
     
-    /**
-     * Makes a replica of a node
-     * @param n the node to be replicated
-     * @return replicated node
+    /********************************************************************************
+     * Return a copy of node n, for a copy-on-write map to change in its place.
+     * @param n  the node to copy
      */
-    public Node replicateNode(Node n)
+    private Node copyOf (Node n)
     {
-    	Node replica = new Node(n.isLeaf);
-    	                            
-        for (int i = 0; i < n.nKeys; i++) 
-        {
-        	replica.nKeys++;
-        	replica.ref[i] = n.ref[i]; 
-            replica.key[i] = n.key[i];
+        Node copy  = new Node (n.isLeaf);
+        copy.nKeys = n.nKeys;
+        System.arraycopy (n.key, 0, copy.key, 0, n.nKeys);
+        System.arraycopy (n.ref, 0, copy.ref, 0, n.isLeaf ? n.nKeys : n.nKeys + 1);
+        return copy;
+    } // copyOf
 
-            if (i == n.nKeys -1 && !n.isLeaf) 
-            {
-            	replica.ref[replica.nKeys] = n.ref[n.nKeys];
-            }
-        }
-       
-        
-    	return replica; 	
-    }
+    /********************************************************************************
+     * Replace the nodes on the path from the root down to leaf n (found by descending
+     * towards the key) with copies, each linked into the copy of its parent, and make
+     * the copy of the root the writer's root.  The old path stays intact for the
+     * versions already published.
+     * @param key         the key whose path is copied
+     * @param parentList  the internal nodes on the path, replaced by their copies
+     * @param n           the leaf at the end of the path
+     * @return  the copy of the leaf
+     */
+    private Node copyPath (K key, List <Node> parentList, Node n)
+    {
+        Node parent = null;
+        for (int level = 0; level <= parentList.size (); level++) {
+            Node copy = copyOf ((level < parentList.size ()) ? parentList.get (level) : n);
+            if (parent == null) root = copy;
+            else                parent.ref [child (key, parent)] = copy;
+            if (level < parentList.size ()) parentList.set (level, copy);
+            parent = copy;
+        } // for
+        return parent;
+    } // copyPath
 
     /********************************************************************************
-     * Recursive helper function for inserting a key in B+trees.
-     * @param key  the key to insert
-     * @param ref  the value/node to insert
-     * @param n    the current node
-     * @param p    the parent node
+     * Publish the writer's root and statistics as the current version of a
+     * copy-on-write map, for snapshots to pick up.
      */
-    private void insert (K key, V ref, Node n, Node p)
+    private void publish ()
+    {
+        if (copyOnWrite) current = new Version (root, size, height, nodes, leaves);
+    } // publish
+
+    /********************************************************************************
+     * Refuse to change a snapshot.
+     * @throws UnsupportedOperationException if this map is a read-only snapshot
+     */
+    private void checkWritable ()
+    {
+        if (readOnly) throw new UnsupportedOperationException ("BpTreeMap: a snapshot is read-only");
+    } // checkWritable
+
+    /********************************************************************************
+     * Helper function for inserting a key in B+trees.  Duplicates are detected in the
+     * same descent that finds the leaf to insert into.
+     * @param key      the key to insert
+     * @param ref      the value to insert
+     * @param n        the current node
+     * @param replace  whether to replace the value of an existing key
+     * @return  the previous value for the key, or null if the key was new
+     */
+    @SuppressWarnings("unchecked")
+    private V insert (K key, V ref, Node n, boolean replace)
     { 
-    	// Checks that duplicate key is not added
-    	if(get(key) != null)
-    	{
-    		//out.println("BpTreeMap:insert: attempt to insert duplicate key = " + key);
-    		//Resets count
-    		count = 0;
-            return;
-    	}
-    	//Resets count
-    	count = 0;
     	// Keeps track of all the parent nodes
         List<Node> parentList = new ArrayList<Node>();
         
-        
         // Finds the correct node to make insert
         while (!n.isLeaf) 
         {                                                  
             parentList.add(n);
-            // Goes through a branch of the tree
-            for (int i = 0; i < n.nKeys; i++) 
-            {   
-                if (key.compareTo(n.key[i]) == -1) 
-                { 
-                    n = (Node) n.ref[i]; 
-                    break;
-                }                
-                else if (key.equals(n.key[i])) 
-                {
-                    out.println("BpTreeMap:insert: attempt to insert duplicate key = " + key);
-                    return;
-                }
-                else if(i == n.nKeys -1)
-                {
-                	n = (Node) n.ref[n.nKeys];
-                	break;
-                }         
-            }                   
+            n = (Node) n.ref[child (key, n)];
         }
         
-        // make insertion  into node, if possible
-        if (n.nKeys < (ORDER - 1)) 
+        // Checks whether the key is already present in the leaf
+        int i = search (key, n);
+        if (i >= 0)
         {
-            for (int i = 0; i < n.nKeys; i++)
-            {
-                K k_i = n.key [i];
-                if (key.compareTo (k_i) < 0) 
-                {
-                	Node temp = n;
-                	temp = (Node) n.ref[n.nKeys];
-                	// Determines which wedge to do, based on whether the node to the right of n is null or not
-                	if(temp == null)
-                	{
-                		wedge (key, ref, n, i);
-                	}
-                	else
-                	{
-                		wedge2 (key, ref, n, i);
-                	}
-                    return;
-                }                        
-            }             
-            Node temp = n;
-        	temp = (Node) n.ref[n.nKeys];
-        	// Determines which wedge to do, based on whether the node to the right of n is null or not
-        	if(temp == null)
-        	{
-        		wedge (key, ref, n, n.nKeys);
-        	}
-        	else
-        	{
-        		wedge2 (key, ref, n, n.nKeys);
-        	}
-            
-            return;
+            V old = (V) n.ref[i];
+            if (replace || old == null) {
+                if (copyOnWrite) n = copyPath (key, parentList, n);
+                n.ref[i] = ref;
+                publish ();
+            }
+            return old;
         }
+        i = -i - 1;
+        size++;
+        modCount++;
+        if (copyOnWrite) n = copyPath (key, parentList, n);
         
-        insert2(key, ref, n, parentList, parentList.size()-1);
-        
-        	
-    } // insert
-    
-    /**
-     * Recursive insert function that is called by insert
-     * @param key key to be inserted
-     * @param ref the key reference
-     * @param n Current node
-     * @param p parent of the node
-     * @param parentList list of parents
-     * @param level what level of the parent list we are in
-     */
-    public void insert2(K key, V ref, Node n,  List<Node> parentList, int level)
-    {           
-    	
-    	
-        // Split node into 2/3 split
-        Node sib = split (key, ref, n);
-        // reassigns sibling values
-        Node temp;
-        Node temp2;
-    	
-    	for(int refVal = 0; refVal <= sib.nKeys; refVal++)
-    	{
-    		try
-    		{
-    			
-    			temp = (Node)sib.ref[refVal];
-    			
-    			//out.println(refVal + " is refVal");
-    		}
-    		
-    		catch(Exception e)
-    		{
-    			temp = null;
-    		}
-    		try
-    		{    			
-    			temp2 = (Node)n.ref[refVal];
-    		}
-    		
-    		catch(Exception e)
-    		{
-    			temp2 = null;
-    		}
-    		
-    		boolean check = true;
-    		if(temp != null)
-    		{
-    			if(temp.key[0] == key && !temp.isLeaf)
-    			{
-    				check = false;
-    				//out.println("Were in final block with key " + key);
-    				for (int i = 0; i < sib.nKeys-1; i++) 
-                    {
-                		//out.println(sib.key[i]);
-                		temp.ref[i] = temp.ref[i+1];
-                		temp.key[i] = temp.key[i+1];  
-                        if(i == temp.nKeys - 2)
-                        {
-                        	temp.nKeys--;
-                        	temp.ref[temp.nKeys] =  temp.ref[temp.nKeys + 1];
-                        	temp.key[temp.nKeys] = null;
-                        	temp.ref[temp.nKeys + 1] = null;                                
-                        }
-                    }     	  
-    			}
-    				
-    		}
-    		if(temp2 != null && check)
-    		{
-    			if(temp2.key[0] == key && !temp2.isLeaf)
-    			{
-    				//out.println("Were in final block with key " + key);
-    				for (int i = 0; i < temp2.nKeys-1; i++) 
-                    {
-                		//out.println(sib.key[i]);
-                		temp2.ref[i] = temp2.ref[i+1];
-                		temp2.key[i] = temp2.key[i+1];  
-                        if(i == temp2.nKeys - 2)
-                        {
-                        	temp2.nKeys--;
-                        	temp2.ref[temp2.nKeys] =  temp2.ref[temp2.nKeys + 1];
-                        	temp2.key[temp2.nKeys] = null;
-                        	temp2.ref[temp2.nKeys + 1] = null;                                
-                        }
-                    }     	  
-    			}
-    				
-    		}
-    	}
-       
-        // enters this if there are no more parents left
-        if (level < 0) 
+        // make insertion  into node, if possible, otherwise split it
+        if (n.nKeys < (order - 1)) 
         {
-        	
-        	
-        	
-        	
-        	
-        	
-        	
-            // sets value to node n
-        	Node nodeSetter = replicateNode(n);  
-            // reassigns n keys and vals
-            for (int i = 0; i < n.nKeys; i++) 
-            {
-            	n.ref[i] = null;
-                n.key[i] = null;
-                if(i == n.nKeys -1)
-                {
-                    // connects nodes correctly
-                	n.ref[n.nKeys] = null;
-                    n.ref[0] = (Node) nodeSetter;
-                    n.ref[1] = (Node) sib;
-                    n.nKeys = 1;
-                    n.key[0] = sib.key[0];    
-                    n.isLeaf = false;
-                    // Sets sib as sibling to n
-                    
-                    if (sib.isLeaf) 
-                    {
-                        nodeSetter.ref[nodeSetter.nKeys] = (Node) sib;
-                    } 
-                    else 
-                    {   
-                    	
-                        // reassigns sibling values
-                        for (int j = 0; j < sib.nKeys-1; j++) 
-                        {
-                        	//out.println(sib.key[j]);
-                        	//out.println(sib.key[j+1]);
-                            sib.ref[j] = sib.ref[j+1];
-                            sib.key[j] = sib.key[j+1];                        
-                        }
-                        sib.nKeys--;
-                        sib.key[sib.nKeys] = null;
-                        sib.ref[sib.nKeys] =  sib.ref[sib.nKeys + 1];
-                        sib.ref[sib.nKeys + 1] = null;
-                        
-                        
-                    }
-                }
-            }
-            
-        } 
-        // Moves key up if there is no room in parent
-        else if (parentList.get(level).nKeys >= ORDER - 1) 
+            wedge (key, ref, n, i);
+        }
+        else
         {
-        	
-        	
-        	 key = sib.key[0];
-             n = parentList.get(level);
-             ref = (V) sib;
-             
-             
-             insert2(key, ref, n,  parentList, level - 1);        
-        } 
-        
-        else 
-        {   
-        	
-        	
-        	
-        	// sets wedge position           
-            int wedgePosition = 0;
-            while ((wedgePosition < parentList.get(level).nKeys) && (sib.key[0].compareTo(parentList.get(level).key[wedgePosition]) > 0)) 
-            { 
-            	wedgePosition++; 
-            }     
-
-            wedge (sib.key[0], (V)sib, parentList.get(level), wedgePosition); 
-            
-            // Sets the sibs keys and ref values
-            if(!sib.isLeaf)
-            {
-            	
-            	for (int i = 0; i < sib.nKeys; i++) 
-                {
-            		//out.println(sib.key[i]);
-            		sib.ref[i] = sib.ref[i+1];
-            		sib.key[i] = sib.key[i+1];  
-                    if(i == sib.nKeys - 2)
-                    {
-                    	sib.nKeys--;
-                    	sib.ref[sib.nKeys] =  sib.ref[sib.nKeys + 1];
-                    	sib.key[sib.nKeys] = null;
-                    	sib.ref[sib.nKeys + 1] = null;                                
-                    }
-                }     	                 
-            }                                                                           
+            insert2 (key, ref, n, parentList, parentList.size () - 1);
         }
+        publish ();
+        return null;
+    } // insert
     
-    }
-    
     /********************************************************************************
-     * Wedge the key-ref pair into node n.
+     * Recursive helper function that splits full node n to make room for the key-ref
+     * pair and posts the divider key to n's parent, splitting it in turn if it is full.
+     * Only the nodes on the insertion path are touched.
+     * @param key         the key to insert
+     * @param ref         the value/node to insert
+     * @param n           the full node
+     * @param parentList  the internal nodes on the path from the root down to n
+     * @param level       the position of n's parent in parentList (-1 if n is the root)
+     */
+    private void insert2 (K key, Object ref, Node n, List <Node> parentList, int level)
+    {
+        Node sib     = split (key, ref, n);
+        K    divider = sib.key [0];
+
+        if (! sib.isLeaf) {
+            // The divider moves up, so remove it and the empty reference to its left
+            for (int j = 0; j < sib.nKeys - 1; j++) {
+                sib.key [j] = sib.key [j + 1];
+                sib.ref [j] = sib.ref [j + 1];
+            } // for
+            sib.ref [sib.nKeys - 1] = sib.ref [sib.nKeys];
+            sib.ref [sib.nKeys]     = null;
+            sib.nKeys--;
+            sib.key [sib.nKeys]     = null;
+        } // if
+
+        if (level < 0) {
+            // n was the root, so grow the tree by one level
+            Node newRoot    = new Node (false);
+            newRoot.key [0] = divider;
+            newRoot.ref [0] = n;
+            newRoot.ref [1] = sib;
+            newRoot.nKeys   = 1;
+            root            = newRoot;
+            nodes++;
+            height++;
+        } else {
+            Node parent = parentList.get (level);
+            if (parent.nKeys < order - 1) {
+                wedge (divider, sib, parent, -search (divider, parent) - 1);
+            } else {
+                insert2 (divider, sib, parent, parentList, level - 1);
+            } // if
+        } // if
+    } // insert2
+
+    /********************************************************************************
+     * Wedge the key-ref pair into node n.  In a leaf the reference to the next leaf
+     * is kept just after the last value, so it is shifted along with the values.
      * @param key  the key to insert
      * @param ref  the value/node to insert
      * @param n    the current node
      * @param i    the insertion position within node n
      */
-    private void wedge (K key, V ref, Node n, int i)
-    {                       
-        for (int j = n.nKeys; j > i; j--) 
-        {            
+    private void wedge (K key, Object ref, Node n, int i)
+    {
+        if (n.isLeaf) n.ref [n.nKeys + 1] = n.ref [n.nKeys];
+        for (int j = n.nKeys; j > i; j--) {
             n.key [j] = n.key [j - 1];
-            if (!n.isLeaf) 
-            { 
-            	n.ref [j + 1] = n.ref [j]; 
-            }
-            else 
-            { 
-            	n.ref [j] = n.ref [j - 1]; 
-            }
+            if (n.isLeaf) n.ref [j]     = n.ref [j - 1];
+            else          n.ref [j + 1] = n.ref [j];
         } // for
         n.key [i] = key;
-        
-        // Sets reference based on if child is leaf or not
-        if (n.isLeaf) 
-        { 
-        	n.ref [i] = ref; 
-        	n.nKeys++;
-        }
-        else 
-        { 
-        	n.ref [i + 1] = ref; 
-        	n.nKeys++;
-        }
-        
+        if (n.isLeaf) n.ref [i]     = ref;
+        else          n.ref [i + 1] = ref;
+        n.nKeys++;
     } // wedge
 
     /********************************************************************************
-     * Wedge the key-ref pair into node n. Used in a different situation than wedge
+     * Split full node n and return the newly created right sibling, with the key-ref
+     * pair wedged into whichever half it belongs.  For leaves, the leaf chain becomes
+     * n -> sibling -> n's old next leaf.  For internal nodes, the sibling's first key
+     * is the divider to post to the parent and its reference 0 is left empty.
      * @param key  the key to insert
      * @param ref  the value/node to insert
      * @param n    the current node
-     * @param i    the insertion position within node n
      */
-    private void wedge2 (K key, V ref, Node n, int i)
-    {    
-    	 //out.println("Key = " + key);
-    	 //out.println("Before");
-    	 List<Node> nodesList = reconnectChildren();
-    	 //out.println("After");
-		 Node node = root;
-		 try
-		 {
-			 while (node.isLeaf == false) 
-		        { 
-		        	node = (Node) node.ref[0]; 
-		        }
-			 boolean continueLoop = true;
-			 while(continueLoop)
-			 {
-				 if(node.equals(n))
-				 {
-				 	continueLoop = false;
-				 } 
-				 node = (Node) node.ref[node.nKeys];
-			 }
-			  
-			 	
-			 	
-			 	//out.println(node.key[0]);
-		 }
-		 catch(Exception e)
-		 {
-			 //out.println("catch 1");
-		 }
-    	
-    	 for (int j = n.nKeys; j > i; j--) 
-    	 {   
-    		
-             n.key [j] = n.key [j - 1];
-             if (!n.isLeaf) 
-             { 
-            	 n.ref [j + 1] = n.ref [j]; 
-             }
-             else 
-             { 
-            	 n.ref [j] = n.ref [j - 1]; 
-             }
-         } // for
-         n.key [i] = key;
-         if (!n.isLeaf) 
-         { 
-        	 n.ref [i + 1] = ref; 
-        	 n.nKeys++;
-         }
-         else 
-         { 
-        	 n.ref [i] = ref; 
-        	 n.nKeys++;
-         }
-         
-    	 if(node == null)
-    	 {
-    		 //out.println("It's null");
-    	 }
-    	 else
-    	 {
-    		 //out.println("Hi");
-    		 for(int a = 0 ; a < nodesList.size() - 1; a++)
-    		 {
-    			 node = nodesList.get(a+1);
-    			 n = nodesList.get(a);
-    			 node.ref[node.nKeys] = (Node) n.ref[n.nKeys];
-                 
-                 n.ref[n.nKeys] = (Node) node;  
-    			 
-    			 //out.println(nodesList.get(a).key[0]);
-    		 }
-    		 node.ref[node.nKeys] = null;
-    	 }
-    } // wedge2
+    private Node split (K key, Object ref, Node n)
+    {
+        Node sib  = new Node (n.isLeaf);
+        nodes++;
+        if (sib.isLeaf) leaves++;
+        Node next = n.isLeaf ? (Node) n.ref [n.nKeys] : null;
+
+        // Locate where the key will go and move the upper keys to the sibling
+        int pos = search (key, n);
+        if (pos < 0) pos = -pos - 1;
+        int mid  = (order - 1) / 2;
+        int from = (pos >= mid) ? mid : mid - 1;
+
+        for (int i = from; i < order - 1; i++) {
+            sib.key [i - from] = n.key [i];
+            n.key [i] = null;
+            if (n.isLeaf) {
+                sib.ref [i - from] = n.ref [i];
+                n.ref [i] = null;
+            } else {
+                sib.ref [i - from + 1] = n.ref [i + 1];
+                n.ref [i + 1] = null;
+            } // if
+        } // for
+        sib.nKeys = order - 1 - from;
+        n.nKeys   = from;
+
+        // Relink the leaf chain before wedging so that wedge carries the links along
+        if (n.isLeaf) {
+            n.ref [order - 1] = null;
+            if (! copyOnWrite) {
+                n.ref [n.nKeys]     = sib;
+                sib.ref [sib.nKeys] = next;
+            } // if
+        } // if
+
+        if (pos >= mid) wedge (key, ref, sib, pos - mid);
+        else            wedge (key, ref, n, pos);
+        return sib;
+    } // split
 
     /********************************************************************************
-     * Split node n and return the newly created node.
-     * @param key  the key to insert
-     * @param ref  the value/node to insert
-     * @param n    the current node
+     * Remove the key-value pair at position i from leaf n.  The reference to the next
+     * leaf moves down along with the values.
+     * @param n  the leaf
+     * @param i  the position of the pair to remove
      */
-    private Node split (K key, V ref, Node n)
-    {                        
-        // Sets half way point in a full node     
-        int nodeCenter = (ORDER - 1) / 2; 
-       
-        int nodePosition = 0;
-        // locate at what where the key will be located in the node
-        while ((nodePosition < (ORDER - 1)) && key.compareTo(n.key[nodePosition]) == 1)
-        { 
-        	nodePosition++; 
-        }        
-         
-        // create splitNode
-        Node splitNode = new Node(n.isLeaf);
-
-        // Splits n based on what position the key should be placed
-        if(nodePosition >= nodeCenter)
-        {
-        	// Determine each of the vals in the split nodes
-        	for (int i = nodeCenter; i < (ORDER - 1); i++) 
-        	{   
-            	splitNode.key[i - nodeCenter] = n.key[i];            
-            	n.key[i] = null;
-            
-            	// Places vals in nodes based on whether node is leaf or not
-            	if (n.isLeaf) 
-            	{ 
-            		splitNode.ref[i - nodeCenter] = n.ref[i]; 
-                	n.ref[i] = null;
-                	splitNode.nKeys++;
-                	n.nKeys--;
-            	} 
-            	else 
-            	{ 
-            		splitNode.ref[i - nodeCenter+1] = n.ref[i + 1]; 
-                	n.ref[i + 1] = null;	
-                	splitNode.nKeys++;
-                	n.nKeys--;
-            	}        	
-        	} 
-        	
-            nodePosition -= nodeCenter;
-            Node temp = n;
-            temp = (Node) n.ref[n.nKeys]; 
-            // wedge into correct position
-            wedge (key, ref, splitNode, nodePosition);
-                   
-            if (splitNode.isLeaf) 
-            {        
-            	// Connects the two pointers
-                splitNode.ref[splitNode.nKeys] = (Node) n.ref[(ORDER - 1)];
-                n.ref[n.nKeys] = (Node) splitNode;                                    
-            } 
-            
-        }
-        else
-        {
-        	nodeCenter = nodeCenter - 1;
-        	for (int i = nodeCenter; i < (ORDER - 1); i++) 
-        	{   
-            	splitNode.key[i-nodeCenter] = n.key[i];            
-            	n.key[i] = null;
-            	// Determine each of the vals in the split nodes
-            	if (n.isLeaf) 
-            	{ 
-            		splitNode.ref[i-nodeCenter] = n.ref[i]; 
-                	n.ref[i] = null;
-                	n.nKeys--;
-                	splitNode.nKeys++;	
-            	} 
-            	else 
-            	{ 
-            		splitNode.ref[i + 1 - nodeCenter] = n.ref[i+1]; 
-                	n.ref[i+1] = null;
-                	n.nKeys--;
-                	splitNode.nKeys++;               	
-            	}    	
-        	} 
-        	// Resets val to original contents
-        	nodeCenter = nodeCenter + 1;
-        	Node temp = n;
-        	temp = (Node) n.ref[n.nKeys];  
-        	// Wedge into correct position
-        	wedge (key, ref, n, nodePosition);
-        	
-            if (splitNode.isLeaf) 
-            {   
-            	// Connects the two pointers
-                splitNode.ref[splitNode.nKeys] = (Node) n.ref[(ORDER - 1)];
-                n.ref[n.nKeys] = (Node) splitNode;                                    
-            }
-        }           
-                
-        return splitNode;
-    } // split
-    
-    /**
-     * Creates a list of all child nodes, that will be used to "connect" them
-     * in wedge2
-     * @return a list of childrenNodes
+    private void removeAt (Node n, int i)
+    {
+        for (int j = i; j < n.nKeys - 1; j++) n.key [j] = n.key [j + 1];
+        for (int j = i; j < n.nKeys; j++)     n.ref [j] = n.ref [j + 1];
+        n.ref [n.nKeys] = null;
+        n.nKeys--;
+        n.key [n.nKeys] = null;
+    } // removeAt
+
+    /********************************************************************************
+     * Remove the divider key at position i, and the child to its right, from
+     * internal node n.
+     * @param n  the internal node
+     * @param i  the position of the divider to remove
      */
-    public List<Node> reconnectChildren()
+    private void removeDivider (Node n, int i)
     {
-    	Node node = root;
-    	
-    	 while (node.isLeaf == false) 
-         { 
-         	node = (Node) node.ref[0]; 
-         }
-    	 List<Node> nodesList = new ArrayList<Node>();
-    	 
-    	 Node prev = node;
-    	 
-    	do
-    	{
-    		 nodesList.add(node);
-    		 
-    		 prev = node;
-    		 node = (Node) node.ref[node.nKeys];
-    	 } while(node != null && node.equals(prev) == false);
-    	 
-    	 
-    	 return nodesList;
-    	
-    }
+        for (int j = i; j < n.nKeys - 1; j++) n.key [j]     = n.key [j + 1];
+        for (int j = i; j < n.nKeys - 1; j++) n.ref [j + 1] = n.ref [j + 2];
+        n.ref [n.nKeys] = null;
+        n.nKeys--;
+        n.key [n.nKeys] = null;
+    } // removeDivider
+
+    /********************************************************************************
+     * Recursive helper function that restores the minimum fill of node n after a
+     * removal, by borrowing from a sibling or merging with one, and then fixes its
+     * parent in turn.  Only the nodes on the removal path and their siblings are
+     * touched.
+     * @param n           the node that lost a key
+     * @param parentList  the internal nodes on the path from the root down to n
+     * @param childPos    the child position taken at each node in parentList
+     * @param level       the position of n's parent in parentList (-1 if n is the root)
+     */
+    private void rebalance (Node n, List <Node> parentList, int [] childPos, int level)
+    {
+        int minKeys = (order - 1) / 2;
+
+        if (level < 0) {
+            // An internal root left with a single child is replaced by that child
+            if (! n.isLeaf && n.nKeys == 0) {
+                root = (Node) n.ref [0];
+                nodes--;
+                height--;
+            } // if
+            return;
+        } // if
+        if (n.nKeys >= minKeys) return;
+
+        Node p     = parentList.get (level);
+        int  c     = childPos [level];
+        Node left  = (c > 0)        ? (Node) p.ref [c - 1] : null;
+        Node right = (c < p.nKeys)  ? (Node) p.ref [c + 1] : null;
+
+        if (copyOnWrite) {
+            // Only a sibling that is changed needs copying, and the parent already is
+            if (left != null && (left.nKeys > minKeys || right == null || right.nKeys <= minKeys)) {
+                left = copyOf (left);
+                p.ref [c - 1] = left;
+            } else if (right != null && right.nKeys > minKeys) {
+                right = copyOf (right);
+                p.ref [c + 1] = right;
+            } // if
+        } // if
+
+        if (left != null && left.nKeys > minKeys) {
+            // Borrow the last key of the left sibling
+            if (n.isLeaf) {
+                wedge (left.key [left.nKeys - 1], left.ref [left.nKeys - 1], n, 0);
+                removeAt (left, left.nKeys - 1);
+                p.key [c - 1] = n.key [0];
+            } else {
+                n.ref [n.nKeys + 1] = n.ref [n.nKeys];
+                for (int j = n.nKeys; j > 0; j--) {
+                    n.key [j] = n.key [j - 1];
+                    n.ref [j] = n.ref [j - 1];
+                } // for
+                n.key [0] = p.key [c - 1];
+                n.ref [0] = left.ref [left.nKeys];
+                n.nKeys++;
+                p.key [c - 1] = left.key [left.nKeys - 1];
+                left.ref [left.nKeys] = null;
+                left.nKeys--;
+                left.key [left.nKeys] = null;
+            } // if
+
+        } else if (right != null && right.nKeys > minKeys) {
+            // Borrow the first key of the right sibling
+            if (n.isLeaf) {
+                wedge (right.key [0], right.ref [0], n, n.nKeys);
+                removeAt (right, 0);
+                p.key [c] = right.key [0];
+            } else {
+                n.key [n.nKeys]     = p.key [c];
+                n.ref [n.nKeys + 1] = right.ref [0];
+                n.nKeys++;
+                p.key [c] = right.key [0];
+                for (int j = 0; j < right.nKeys - 1; j++) right.key [j] = right.key [j + 1];
+                for (int j = 0; j < right.nKeys; j++)     right.ref [j] = right.ref [j + 1];
+                right.ref [right.nKeys] = null;
+                right.nKeys--;
+                right.key [right.nKeys] = null;
+            } // if
+
+        } else {
+            // Merge with a sibling, the right node of the pair being absorbed by the left
+            if (left != null) {
+                merge (left, n, p, c - 1);
+            } else {
+                merge (n, right, p, c);
+            } // if
+            rebalance (p, parentList, childPos, level - 1);
+        } // if
+    } // rebalance
+
+    /********************************************************************************
+     * Merge node r into its left sibling l and remove their divider (at position i)
+     * from the parent p.  Leaves keep the leaf chain linked past r.
+     * @param l  the left node, which absorbs r
+     * @param r  the right node, which is discarded
+     * @param p  the parent of l and r
+     * @param i  the position in p of the divider between l and r
+     */
+    private void merge (Node l, Node r, Node p, int i)
+    {
+        if (l.isLeaf) {
+            for (int j = 0; j < r.nKeys; j++) {
+                l.key [l.nKeys + j] = r.key [j];
+                l.ref [l.nKeys + j] = r.ref [j];
+            } // for
+            l.nKeys += r.nKeys;
+            l.ref [l.nKeys] = r.ref [r.nKeys];
+            leaves--;
+        } else {
+            l.key [l.nKeys] = p.key [i];
+            for (int j = 0; j < r.nKeys; j++) l.key [l.nKeys + 1 + j] = r.key [j];
+            for (int j = 0; j <= r.nKeys; j++) l.ref [l.nKeys + 1 + j] = r.ref [j];
+            l.nKeys += r.nKeys + 1;
+        } // if
+        nodes--;
+        removeDivider (p, i);
+    } // merge
 
     /********************************************************************************
      * The main method used for testing.
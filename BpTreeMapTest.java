@@ -1,7 +1,12 @@
 import static java.lang.System.out;
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.function.Predicate;
 
 import junit.framework.TestCase;
@@ -127,5 +132,620 @@ public class BpTreeMapTest extends TestCase
 		assertEquals("Test lastKey", lastKey, 19);
 	}
 	
+	/**
+	 * Tests that a tree with the smallest fanout still splits into a correctly ordered tree
+	 */
+	public void testSmallOrder()
+	{
+		BpTreeMap <Integer, Integer> smallTree = new BpTreeMap <> (Integer.class, Integer.class, BpTreeMap.MIN_ORDER);
+		for (int i = 50; i > 0; i--) { smallTree.put (i, i * i);} // for
+		assertEquals("Test small order size", smallTree.size(), 50);
+		assertEquals("Test small order get", smallTree.get(37), Integer.valueOf(1369));
+		assertEquals("Test small order firstKey", (int) smallTree.firstKey(), 1);
+		assertEquals("Test small order lastKey", (int) smallTree.lastKey(), 50);
+	}
+	
+	/**
+	 * Tests that a fanout too small to split is rejected
+	 */
+	public void testInvalidOrder()
+	{
+		try
+		{
+			new BpTreeMap <> (Integer.class, Integer.class, 2);
+			fail("Test invalid order");
+		}
+		catch (IllegalArgumentException e)
+		{
+			// expected
+		}
+	}
+	
+	/**
+	 * Tests lookups and range seeks on keys whose compareTo returns values other than -1, 0 and 1
+	 */
+	public void testStringKeys()
+	{
+		BpTreeMap <String, Integer> wordTree = new BpTreeMap <> (String.class, Integer.class, 4);
+		String [] words = {"pear", "apple", "zebra", "kiwi", "mango", "banana", "cherry", "fig", "grape", "lemon"};
+		for (int i = 0; i < words.length; i++) { wordTree.put (words [i], i);} // for
+		assertEquals("Test string get", wordTree.get("kiwi"), Integer.valueOf(3));
+		assertNull("Test string get missing", wordTree.get("melon"));
+		assertEquals("Test string subMap", "{fig=7, grape=8, kiwi=3, lemon=9}", wordTree.subMap("dog", "lemon").toString());
+		assertEquals("Test string tailMap", "{pear=0, zebra=2}", wordTree.tailMap("orange").toString());
+	}
+	
+	/**
+	 * Tests that put replaces an existing value and returns the previous one
+	 */
+	public void testPutPrevious()
+	{
+		assertNull("Test put new key", upTree.put(4, 16));
+		assertEquals("Test put existing key", upTree.put(5, 50), Integer.valueOf(25));
+		assertEquals("Test put replaced value", upTree.get(5), Integer.valueOf(50));
+		assertEquals("Test putIfAbsent existing key", upTree.putIfAbsent(7, 70), Integer.valueOf(49));
+		assertEquals("Test putIfAbsent kept value", upTree.get(7), Integer.valueOf(49));
+		assertEquals("Test put size", upTree.size(), 11);
+	}
+	
+	/**
+	 * Tests that the leaf chain stays linked in key order when splits happen in the middle of the tree
+	 */
+	public void testLeafChain()
+	{
+		BpTreeMap <Integer, Integer> zigzagTree = new BpTreeMap <> (Integer.class, Integer.class, 4);
+		for (int i = 0; i < 100; i++) { zigzagTree.put ((i % 2 == 0) ? i : 200 - i, i);} // for
+		int previous = -1;
+		int entries = 0;
+		for (Integer key : zigzagTree.keySet())
+		{
+			assertTrue("Test leaf chain order", key > previous);
+			previous = key;
+			entries++;
+		}
+		assertEquals("Test leaf chain size", entries, 100);
+	}
+	
+	/**
+	 * Tests that a bulk loaded tree holds every entry and still accepts inserts
+	 */
+	public void testBulkLoad()
+	{
+		TreeMap <Integer, Integer> sorted = new TreeMap <> ();
+		for (int i = 0; i < 100; i++) { sorted.put (i * 2, i);} // for
+		BpTreeMap <Integer, Integer> loadedTree = new BpTreeMap <> (Integer.class, Integer.class, 5);
+		loadedTree.bulkLoad(sorted.entrySet().iterator(), 0.75);
+		assertEquals("Test bulk load size", loadedTree.size(), 100);
+		assertEquals("Test bulk load get", loadedTree.get(42), Integer.valueOf(21));
+		assertEquals("Test bulk load lastKey", (int) loadedTree.lastKey(), 198);
+		loadedTree.put(43, -1);
+		assertEquals("Test bulk load then put", "{42=21, 43=-1, 44=22}", loadedTree.subMap(41, 44).toString());
+	}
+	
+	/**
+	 * Tests that bulk loading rejects keys that are not in ascending order
+	 */
+	public void testBulkLoadUnsorted()
+	{
+		TreeMap <Integer, Integer> reversed = new TreeMap <> (java.util.Collections.reverseOrder ());
+		reversed.put(1, 1); reversed.put(2, 2);
+		try
+		{
+			upTree.bulkLoad(reversed.entrySet().iterator(), 1.0);
+			fail("Test bulk load unsorted");
+		}
+		catch (IllegalArgumentException e)
+		{
+			assertEquals("Test bulk load unsorted leaves map unchanged", upTree.size(), 10);
+		}
+	}
+	
+	/**
+	 * Tests that range views are live and respect exclusive bounds
+	 */
+	public void testLiveView()
+	{
+		SortedMap<Integer, Integer> view = upTree.subMap(5, false, 13, false);
+		assertEquals("Test exclusive subMap", "{7=49, 9=81, 11=121}", view.toString());
+		upTree.put(8, 64);
+		upTree.put(40, 1600);
+		assertEquals("Test live subMap", "{7=49, 8=64, 9=81, 11=121}", view.toString());
+		assertEquals("Test view size", view.size(), 4);
+		assertEquals("Test view lastKey", (int) view.lastKey(), 11);
+		assertNull("Test view get out of range", view.get(40));
+	}
+	
+	/**
+	 * Tests that the entry set is a live view whose entries write through to the tree
+	 */
+	public void testEntrySetLive()
+	{
+		java.util.Set<java.util.Map.Entry<Integer, Integer>> entries = upTree.entrySet();
+		upTree.put(2, 4);
+		assertEquals("Test live entry set size", entries.size(), 11);
+		for (java.util.Map.Entry<Integer, Integer> e : entries)
+		{
+			e.setValue(-e.getKey());
+		}
+		assertEquals("Test entry setValue", upTree.get(19), Integer.valueOf(-19));
+	}
+	
+	/**
+	 * Tests the statistics kept by the tree as keys are inserted
+	 */
+	public void testStats()
+	{
+		BpTreeMap <Integer, Integer> statTree = new BpTreeMap <> (Integer.class, Integer.class, 4);
+		assertEquals("Test empty height", statTree.stats().height, 1);
+		for (int i = 1; i <= 3; i++) { statTree.put (i, i);} // for
+		assertEquals("Test full root leaves", statTree.stats().leaves, 1);
+		assertEquals("Test full root fill", statTree.stats().avgLeafFill, 1.0, 1E-9);
+		statTree.put(4, 4);
+		BpTreeMap.Stats stats = statTree.stats();
+		assertEquals("Test split size", stats.size, 4);
+		assertEquals("Test split height", stats.height, 2);
+		assertEquals("Test split nodes", stats.nodes, 3);
+		assertEquals("Test split leaves", stats.leaves, 2);
+	}
+	
+	/**
+	 * Tests removing keys, including enough to merge nodes and shrink the root
+	 */
+	public void testRemove()
+	{
+		BpTreeMap <Integer, Integer> smallTree = new BpTreeMap <> (Integer.class, Integer.class, 4);
+		for (int i = 1; i <= 30; i++) { smallTree.put (i, i * i);} // for
+		int height = smallTree.stats().height;
+		assertEquals("Test remove returns value", smallTree.remove(7), Integer.valueOf(49));
+		assertNull("Test remove missing key", smallTree.remove(7));
+		assertNull("Test removed key gone", smallTree.get(7));
+		for (int i = 1; i <= 27; i++) { smallTree.remove (i);} // for
+		assertEquals("Test remove size", smallTree.size(), 3);
+		assertEquals("Test remove entries", "[28=784, 29=841, 30=900]", smallTree.entrySet().toString());
+		assertTrue("Test remove shrinks root", smallTree.stats().height < height);
+	}
+	
+	/**
+	 * Tests puts, removes and range scans on an IntBpTreeMap, and the bounds of its key index views
+	 */
+	public void testIntBpTreeMap()
+	{
+		IntBpTreeMap <String> intTree = new IntBpTreeMap <> (4);
+		TreeMap <Integer, String> expected = new TreeMap <> ();
+		for (int i = 0; i < 200; i++) { int k = (i * 37) % 101 - 50; intTree.put (k, "v" + i); expected.put (k, "v" + i);} // for
+		for (int k = -50; k < 50; k += 3) { assertEquals("Test int remove", expected.remove (k), intTree.remove (k));} // for
+		assertEquals("Test int size", expected.size(), intTree.size());
+		assertEquals("Test int get", expected.get(10), intTree.get(10));
+		StringBuilder scanned = new StringBuilder ();
+		for (PrimitiveBpTreeMap <String>.Cursor c = intTree.scan (-10, false, 10, true); c.next (); ) { scanned.append (c.key ()).append (' ');} // for
+		StringBuilder wanted = new StringBuilder ();
+		for (int k : expected.subMap (-10, false, 10, true).keySet ()) { wanted.append (k).append (' ');} // for
+		assertEquals("Test int range scan", wanted.toString(), scanned.toString());
+		PrimitiveKeyIndex <String> index = new PrimitiveKeyIndex <> (intTree);
+		assertFalse("Test exclusive bound kept", index.subMap(new KeyType (11), false, new KeyType (40), true).tailMap(new KeyType (11)).containsKey(new KeyType (11)));
+		assertFalse("Test exclusive upper bound kept", index.subMap(new KeyType (-40), true, new KeyType (11), false).headMap(new KeyType (11)).containsKey(new KeyType (11)));
+	}
+	
+	/**
+	 * Tests bulk loading a LongBpTreeMap, and that an IntBpTreeMap refuses long keys
+	 */
+	public void testLongBulkLoad()
+	{
+		LongBpTreeMap <Long> longTree = new LongBpTreeMap <> (5);
+		long [] keys = new long [100];
+		List <Long> values = new ArrayList <> ();
+		for (int i = 0; i < keys.length; i++) { keys [i] = 3L * i + Integer.MAX_VALUE; values.add ((long) i);} // for
+		longTree.bulkLoad (keys, values, 1.0);
+		assertEquals("Test long bulk load size", longTree.size(), 100);
+		assertEquals("Test long bulk load get", longTree.get(3L * 42 + Integer.MAX_VALUE), Long.valueOf(42));
+		assertEquals("Test long last key", longTree.lastKey(), keys [99]);
+		try {
+			new IntBpTreeMap <Long> ().bulkLoad (keys, values, 1.0);
+			fail("Test int bulk load rejects long keys");
+		} catch (IllegalArgumentException e) { }
+	}
+	
+	/**
+	 * Tests puts, removes and range views on an OffHeapBpTreeMap against a TreeMap
+	 */
+	public void testOffHeap()
+	{
+		OffHeapBpTreeMap <KeyType> offHeap = new OffHeapBpTreeMap <> (OffHeapBpTreeMap.keyTypeKeys (OffHeapBpTreeMap.stringKeys (8), OffHeapBpTreeMap.INT_KEYS), 4);
+		TreeMap <KeyType, Integer> expected = new TreeMap <> ();
+		String [] titles = { "Rocky", "Star_War", "Alien", "" };
+		for (int i = 0; i < 100; i++) { KeyType k = new KeyType (titles [i % 4], i % 7 - 3); offHeap.put (k, i); expected.put (k, i);} // for
+		for (int i = 0; i < 28; i += 3) { KeyType k = new KeyType (titles [i % 4], i % 7 - 3); assertEquals("Test off-heap remove", expected.remove (k), offHeap.remove (k));} // for
+		assertEquals("Test off-heap entries", expected.toString(), offHeap.toString());
+		assertEquals("Test off-heap get", expected.get(new KeyType ("Alien", -1)), offHeap.get(new KeyType ("Alien", -1)));
+		assertEquals("Test off-heap range", expected.subMap(new KeyType ("Alien", 0), true, new KeyType ("Rocky", 0), true).toString(),
+				offHeap.subMap(new KeyType ("Alien", 0), new KeyType ("Rocky", 0)).toString());
+		KeyType first = expected.firstKey ();
+		assertFalse("Test off-heap exclusive bound kept", offHeap.subMap(first, false, expected.lastKey(), true).tailMap(first).containsKey(first));
+		assertTrue("Test off-heap storage", offHeap.offHeapBytes() > 0);
+	}
+	
+	/**
+	 * Tests that a PagedBpTreeMap evicts pages and can be reopened from its file, and the buffer pool's counters
+	 */
+	public void testPagedReopen() throws Exception
+	{
+		java.io.File file = java.io.File.createTempFile ("paged", ".idx");
+		file.delete ();
+		PagedBpTreeMap <Integer> paged = new PagedBpTreeMap <> (file.getPath (), OffHeapBpTreeMap.INT_KEYS, 2, 256);
+		for (int i = 0; i < 500; i++) { paged.put (i * 2, i);} // for
+		for (int i = 0; i < 500; i += 5) { paged.remove (i * 2);} // for
+		assertTrue("Test paged pool evicts", paged.pool().evictions() > 0);
+		assertTrue("Test paged hit rate", paged.hitRate() > 0.0 && paged.hitRate() < 1.0);
+		paged.close ();
+		paged = new PagedBpTreeMap <> (file.getPath (), OffHeapBpTreeMap.INT_KEYS, 2, 256);
+		assertEquals("Test paged reopen size", paged.size(), 400);
+		assertEquals("Test paged reopen get", paged.get(14), Integer.valueOf(7));
+		assertNull("Test paged reopen removed", paged.get(10));
+		assertEquals("Test paged reopen last key", paged.lastKey(), Integer.valueOf(998));
+		paged.close ();
+		BufferPool pool = new BufferPool (file.getPath (), 256, 2);
+		pool.buffer (0);
+		pool.buffer (0);
+		assertEquals("Test repeated page hit", pool.hits(), 1L);
+		pool.clear ();
+		pool.buffer (0);
+		assertEquals("Test page miss after clear", pool.misses(), 2L);
+		pool.close ();
+		file.delete ();
+	}
+	
+	/**
+	 * Tests deleting from tables indexed by tuple id, on and off heap, against one with a heap index
+	 */
+	public void testTupleIdDelete() throws Exception
+	{
+		java.io.File file = java.io.File.createTempFile ("ids", ".idx");
+		file.delete ();
+		BPTreeTable [] tables = new BPTreeTable [3];
+		for (int t = 0; t < tables.length; t++) {
+			tables [t] = new BPTreeTable ("Transcript", "studId crsCode grade", "Integer String String", "studId crsCode");
+			for (int i = 0; i < 600; i++) { tables [t].insert (new Comparable [] { i % 50, "CSCI" + (1000 + i), "g" + (i % 4) });} // for
+		} // for
+		tables [1].indexTupleIds (new OffHeapBpTreeMap <> (tables [1].keyCodec (8), 4));
+		PagedBpTreeMap <KeyType> paged = new PagedBpTreeMap <> (file.getPath (), tables [2].keyCodec (8), 4, 256);
+		tables [2].indexTupleIds (paged);
+		for (BPTreeTable table : tables) {
+			for (int i = 0; i < 600; i += 7) { assertTrue("Test delete by key", table.delete (new KeyType (i % 50, "CSCI" + (1000 + i))));} // for
+			assertFalse("Test delete missing key", table.delete (new KeyType (0, "CSCI1000")));
+			assertEquals("Test delete by predicate", table.delete (t -> t[2].equals ("g1")), 129);
+		} // for
+		List <String> expected = new ArrayList <> ();
+		for (int i = 0; i < 600; i++) { expected.add (Arrays.toString (tables [0].select (new KeyType (i % 50, "CSCI" + (1000 + i))).tuples.get(0)));} // for
+		for (int t = 1; t < tables.length; t++) {
+			assertEquals("Test tuple id size " + t, tables [t].tuples.size(), tables [0].tuples.size());
+			List <String> found = new ArrayList <> ();
+			for (int i = 0; i < 600; i++) { found.add (Arrays.toString (tables [t].select (new KeyType (i % 50, "CSCI" + (1000 + i))).tuples.get(0)));} // for
+			assertEquals("Test tuple ids renumbered " + t, found, expected);
+		} // for
+		paged.close ();
+		file.delete ();
+	}
+	
+	/**
+	 * Tests puts and removes on a ConcurrentBpTreeMap from several threads
+	 */
+	public void testConcurrent() throws Exception
+	{
+		ConcurrentBpTreeMap <Integer, Integer> shared = new ConcurrentBpTreeMap <> (4);
+		Thread [] writers = new Thread [4];
+		for (int w = 0; w < writers.length; w++) {
+			int first = w;
+			writers [w] = new Thread (() -> { for (int k = first; k < 4000; k += 4) { shared.put (k, -k); if (k % 3 == 0) shared.remove (k);} });
+			writers [w].start ();
+		} // for
+		for (Thread writer : writers) { writer.join ();} // for
+		int expected = 0;
+		for (int k = 0; k < 4000; k++) { if (k % 3 != 0) { expected++; assertEquals("Test concurrent get", shared.get(k), Integer.valueOf(-k));} } // for
+		assertEquals("Test concurrent size", shared.size(), expected);
+		Integer previous = null;
+		for (Integer k : shared.keySet ()) { assertTrue("Test concurrent order", previous == null || previous < k); previous = k;} // for
+	}
+	
+	/**
+	 * Tests that a snapshot of a copy-on-write BpTreeMap is unchanged by later updates and cannot be changed
+	 */
+	public void testCopyOnWrite()
+	{
+		BpTreeMap <Integer, Integer> cow = new BpTreeMap <> (Integer.class, Integer.class, 4, true);
+		for (int i = 0; i < 1000; i++) { cow.put (i, i);} // for
+		SortedMap <Integer, Integer> before = cow.snapshot ();
+		for (int i = 0; i < 1000; i += 2) { cow.remove (i);} // for
+		for (int i = 1; i < 1000; i += 2) { cow.put (i, -i);} // for
+		cow.put (5000, 5000);
+		assertEquals("Test snapshot size", before.size(), 1000);
+		int expected = 0;
+		for (Map.Entry <Integer, Integer> e : before.entrySet ()) { assertEquals("Test snapshot entry", e.getValue(), Integer.valueOf(expected++));} // for
+		assertEquals("Test snapshot range", before.subMap(10, 19).size(), 10);
+		assertEquals("Test map after snapshot", cow.size(), 501);
+		assertEquals("Test map value", cow.get(7), Integer.valueOf(-7));
+		try {
+			before.put (1, 1);
+			fail("Snapshot accepted a put");
+		} catch (UnsupportedOperationException ex) {}
+	}
+	
+	/**
+	 * Tests adding, finding and removing duplicate keys in a MultiBpTreeMap
+	 */
+	public void testMultiBpTreeMap()
+	{
+		MultiBpTreeMap <String> status = new MultiBpTreeMap <> (String.class, 4);
+		for (int id = 0; id < 300; id++) { status.add ((id % 3 == 0) ? "active" : (id % 3 == 1) ? "graduated" : "suspended", id);} // for
+		assertEquals("Test posting count", status.count("active"), 100);
+		assertEquals("Test posting order", status.getAll("graduated")[1], 4);
+		assertTrue("Test remove posting", status.remove("active", 3));
+		assertEquals("Test size after remove", status.size(), 299);
+		assertEquals("Test range postings", status.getAll("a", true, "graduated", true).length, 199);
+		assertEquals("Test missing key", status.getAll("none").length, 0);
+	}
+	
+	/**
+	 * Tests selects through secondary indexes as tuples are deleted and inserted
+	 */
+	public void testSecondaryIndex()
+	{
+		BPTreeTable students = new BPTreeTable ("Student", "id name status copy", "Integer String String String", "id");
+		for (int i = 0; i < 200; i++) { students.insert (new Comparable [] { i, "name" + i, "s" + (i % 7), "s" + (i % 7) });} // for
+		assertFalse("Test index on unknown attribute", students.createIndex ("nope", false));
+		assertFalse("Test unique index on duplicates", students.createIndex ("status", true));
+		assertTrue("Test create index", students.createIndex ("status", false));
+		assertTrue("Test create unique index", students.createIndex ("name", true));
+		assertFalse("Test unique index rejects insert", students.insert (new Comparable [] { 500, "name3", "s0", "s0" }));
+		assertEquals("Test rejected insert not added", students.tuples.size(), 200);
+		for (int round = 0; round < 3; round++) {
+			assertEquals("Test indexed select " + round, sortedRows (students.select ("status", new KeyType ("s3"))),
+					sortedRows (students.select ("copy", new KeyType ("s3"))));
+			assertEquals("Test indexed range select " + round, sortedRows (students.select ("status", "s2", false, "s5", true)),
+					sortedRows (students.select ("copy", "s2", false, "s5", true)));
+			assertEquals("Test unique select " + round, students.select ("name", new KeyType ("name199")).tuples.size(), 1);
+			if (round == 0) { assertTrue("Test delete by key", students.delete (new KeyType (3)));} // if
+			if (round == 1) { assertEquals("Test delete by predicate", students.delete (t -> (Integer) t[0] % 5 == 0), 40);} // if
+		} // for
+		assertTrue("Test deleted value free", students.insert (new Comparable [] { 500, "name3", "s0", "s0" }));
+		assertEquals("Test indexed select after insert", students.select ("name", new KeyType ("name3")).tuples.get(0)[0], 500);
+		assertTrue("Test drop index", students.dropIndex ("status"));
+		assertFalse("Test drop missing index", students.dropIndex ("status"));
+		assertEquals("Test select after drop", students.select ("status", new KeyType ("s3")).tuples.size(),
+				students.select ("copy", new KeyType ("s3")).tuples.size());
+	}
+	
+	/**
+	 * Tests selecting the keys with a given prefix using the MIN and MAX key parts
+	 */
+	public void testKeyPrefix()
+	{
+		BpTreeMap <KeyType, Integer> transcripts = new BpTreeMap <> (KeyType.class, Integer.class, 4);
+		for (int i = 0; i < 200; i++) { transcripts.put (new KeyType (i % 20, "CSCI" + (1000 + i), "Fall"), i);} // for
+		SortedMap <KeyType, Integer> student7 = transcripts.subMap (new KeyType (7, KeyType.MIN, KeyType.MIN), new KeyType (7, KeyType.MAX, KeyType.MAX));
+		assertEquals("Test prefix range size", student7.size(), 10);
+		assertEquals("Test prefix range first", student7.firstKey().get(1), "CSCI1007");
+		assertTrue("Test MIN below values", new KeyType (7, KeyType.MIN).compareTo (new KeyType (7, "")) < 0);
+		assertTrue("Test shorter key first", new KeyType (7).compareTo (new KeyType (7, "CSCI1007")) < 0);
+	}
+	
+	/**
+	 * Tests that merge joins give the same tuples as hash joins, with and without indexes
+	 */
+	public void testMergeJoin()
+	{
+		List <Comparable []> rows = new ArrayList <> ();
+		for (int i = 0; i < 100; i++) { rows.add (new Comparable [] { i, "name" + i, (i % 17 == 0) ? null : "s" + (i % 5) });} // for
+		BPTreeTable students = new BPTreeTable ("Student", "id name status", "Integer String String", "id", rows);
+		BPTreeTable advisors = new BPTreeTable ("Advisor", "status advisor", "String String", "advisor");
+		BPTreeTable transcripts = new BPTreeTable ("Transcript", "studId crsCode", "Integer String", "studId crsCode");
+		for (int i = 0; i < 20; i++) { advisors.insert (new Comparable [] { "s" + (i % 5), "a" + i });} // for
+		for (int i = 0; i < 300; i++) { transcripts.insert (new Comparable [] { (i * 7) % 120, "CSCI" + (1000 + i) });} // for
+		List <String> hashed = sortedRows (students.hashJoin ("status", "status", advisors));
+		assertEquals("Test duplicate runs", hashed.size(), (100 - 6) * 4);
+		assertEquals("Test sort fallback", sortedRows (students.mergeJoin ("status", "status", advisors)), hashed);
+		advisors.createIndex ("status", false);
+		assertEquals("Test secondary index order", sortedRows (students.mergeJoin ("status", "status", advisors)), hashed);
+		assertEquals("Test key prefix order", sortedRows (transcripts.mergeJoin ("studId", "id", students)),
+				sortedRows (transcripts.hashJoin ("studId", "id", students)));
+	}
+	
+	/**
+	 * Returns the tuples of a table as strings in sorted order, to compare joins
+	 * that produce the same tuples in different orders
+	 */
+	private static List <String> sortedRows(BPTreeTable table)
+	{
+		List <String> rows = new ArrayList <> ();
+		for (Comparable [] tup : table.tuples) { rows.add (Arrays.toString (tup));} // for
+		rows.sort (null);
+		return rows;
+	}
+	
+	/**
+	 * Tests range selects through the primary key index against ones by scanning
+	 */
+	public void testRangeSelect()
+	{
+		BPTreeTable students = new BPTreeTable ("Student", "id copy name", "Integer Integer String", "id");
+		for (int i = 0; i < 100; i++) { int id = 2 * ((i * 37) % 100); students.insert (new Comparable [] { id, id, "name" + id });} // for
+		Integer [] los = { 10, 10, 10, 10, null, 190, null, 20, 10, 10, 11 };
+		Integer [] his = { 20, 20, 20, 20, 20, null, null, 10, 10, 10, 19 };
+		boolean [] loInc = { true, false, true, false, true, false, true, true, true, false, true };
+		boolean [] hiInc = { true, false, false, true, true, true, true, true, true, true, false };
+		int [] sizes = { 6, 4, 5, 5, 11, 4, 100, 0, 1, 0, 4 };
+		for (int j = 0; j < sizes.length; j++) {
+			BPTreeTable keyed = students.select ("id", los [j], loInc [j], his [j], hiInc [j]);
+			BPTreeTable scanned = students.select ("copy", los [j], loInc [j], his [j], hiInc [j]);
+			assertEquals("Test range size " + j, keyed.tuples.size(), sizes [j]);
+			assertEquals("Test key index against scan " + j, sortedRows (keyed), sortedRows (scanned));
+		} // for
+		assertEquals("Test key order", students.select("id", 10, true, 20, true).tuples.get(1)[0], 12);
+	}
+	
+	/**
+	 * Tests finding tuples in a TupleHashTable by their key attributes
+	 */
+	public void testTupleHashTable()
+	{
+		TupleHashTable table = new TupleHashTable (new int [] { 1 }, 2);
+		for (int i = 0; i < 100; i++) { table.add (new Comparable [] { i, 5000 + i % 10 });} // for
+		assertEquals("Test distinct keys", table.keys(), 10);
+		int matches = 0;
+		for (int i = table.find (new Comparable [] { Integer.valueOf (5003) }, new int [] { 0 }); i != TupleHashTable.NONE; i = table.next (i)) matches++;
+		assertEquals("Test matches by equals", matches, 10);
+		assertEquals("Test no match", table.find (new Comparable [] { 42 }, new int [] { 0 }), TupleHashTable.NONE);
+	}
+	
+	/**
+	 * Tests minus and intersect, by key and by position, and semi- and anti-joins
+	 */
+	public void testMinusIntersect()
+	{
+		BPTreeTable students = new BPTreeTable ("Student", "id name", "Integer String", "id");
+		BPTreeTable others = new BPTreeTable ("Other", "id name", "Integer String", "id");
+		BPTreeTable transcripts = new BPTreeTable ("Transcript", "studId crsCode", "Integer String", "studId crsCode");
+		for (int i = 0; i < 100; i++) { students.insert (new Comparable [] { i, "s" + i });} // for
+		for (int i = 50; i < 150; i++) { others.insert (new Comparable [] { i, "o" + i });} // for
+		for (int i = 0; i < 100; i += 10) { transcripts.insert (new Comparable [] { i, "CSCI1301" }); transcripts.insert (new Comparable [] { i, "CSCI1302" });} // for
+		assertEquals("Test minus", students.minus(others).tuples.size(), 50);
+		assertEquals("Test intersect", students.intersect(others).tuples.size(), 50);
+		assertEquals("Test semi-join", students.semiJoin("id", "studId", transcripts).tuples.size(), 10);
+		assertEquals("Test anti-join", students.antiJoin("id", "studId", transcripts).tuples.size(), 90);
+		BPTreeTable courses = new BPTreeTable ("Course", "title crsNo", "String Integer", "crsNo");
+		BPTreeTable renamed = new BPTreeTable ("Renamed", "name num", "String Integer", "num");
+		BPTreeTable byTitle = new BPTreeTable ("ByTitle", "title crsNo", "String Integer", "title");
+		for (int i = 0; i < 100; i++) { courses.insert (new Comparable [] { "c" + i, i });} // for
+		for (int i = 50; i < 150; i++) { renamed.insert (new Comparable [] { "r" + i, i }); byTitle.insert (new Comparable [] { "b" + i, i });} // for
+		assertEquals("Test minus by position", courses.minus(renamed).tuples.size(), 50);
+		assertEquals("Test intersect by position", courses.intersect(renamed).tuples.size(), 50);
+		assertEquals("Test minus on other key", courses.minus(byTitle).tuples.size(), 50);
+		assertEquals("Test intersect on other key", courses.intersect(byTitle).tuples.size(), 50);
+	}
+	
+	/**
+	 * Tests removing duplicate tuples in a DistinctTuples that spills, and in project and union
+	 */
+	public void testDistinctTuples()
+	{
+		DistinctTuples distinct = new DistinctTuples (2, 50);
+		for (int i = 0; i < 3000; i++) { distinct.add (new Comparable [] { i % 700, "s" + (i % 7) });} // for
+		List <Comparable []> rows = distinct.rows ();
+		assertEquals("Test distinct count", rows.size(), 700);
+		assertTrue("Test spilled", distinct.spilled() > 0);
+		BPTreeTable students = new BPTreeTable ("Student", "id status", "Integer String", "id");
+		for (int i = 0; i < 100; i++) { students.insert (new Comparable [] { i, "status" + (i % 3) });} // for
+		assertEquals("Test project removes duplicates", students.project("status").tuples.size(), 3);
+		assertEquals("Test union with itself", students.union(students).tuples.size(), 100);
+	}
+	
+	/**
+	 * Tests that a parallel select returns the same tuples in the same order as a sequential one
+	 */
+	public void testParallelSelect()
+	{
+		BPTreeTable students = new BPTreeTable ("Student", "id status", "Integer String", "id");
+		for (int i = 0; i < 20000; i++) { students.insert (new Comparable [] { i, "status" + (i % 3) });} // for
+		BPTreeTable sequential = students.select (t -> t[1].equals ("status1"), false);
+		students.setParallelSelect (1000);
+		BPTreeTable parallel = students.select (t -> t[1].equals ("status1"));
+		assertEquals("Test parallel size", parallel.tuples.size(), sequential.tuples.size());
+		for (int i = 0; i < sequential.tuples.size(); i++) { assertSame("Test parallel order", parallel.tuples.get(i), sequential.tuples.get(i));} // for
+	}
+	
+	/**
+	 * Tests splitting B+Trees into key ranges of about equal size
+	 */
+	public void testSplitKeys()
+	{
+		BpTreeMap <Integer, Integer> map = new BpTreeMap <> (Integer.class, Integer.class, 8);
+		IntBpTreeMap <Integer> ints = new IntBpTreeMap <> (8);
+		for (int i = 0; i < 10000; i++) { map.put (i, i); ints.put (i, i);} // for
+		List <Integer> keys = map.splitKeys (8);
+		assertEquals("Test split count", keys.size(), 7);
+		for (int i = 1; i < keys.size(); i++) { assertTrue("Test split order", keys.get(i - 1) < keys.get(i));} // for
+		assertTrue("Test split balance", map.headMap (keys.get (0), false).size() > 10000 / 16);
+		assertEquals("Test primitive split count", ints.splitKeys (8).length, 7);
+		assertEquals("Test single leaf", new BpTreeMap <> (Integer.class, Integer.class).splitKeys (8).size(), 0);
+	}
+	
+	/**
+	 * Tests that an indexed join on several threads equals one on one thread, with a heap and a paged index
+	 */
+	public void testParallelJoin() throws Exception
+	{
+		java.io.File file = java.io.File.createTempFile ("join", ".idx");
+		file.delete ();
+		BPTreeTable transcripts = new BPTreeTable ("Transcript", "studId crsCode", "Integer String", "studId crsCode");
+		BPTreeTable heap = new BPTreeTable ("Student", "id name", "Integer String", "id");
+		BPTreeTable paged = new BPTreeTable ("Student", "id name", "Integer String", "id");
+		for (int i = 0; i < 3000; i++) { transcripts.insert (new Comparable [] { (i * 7) % 1000, "CSCI" + i });} // for
+		for (int i = 0; i < 1000; i += 2) { heap.insert (new Comparable [] { i, "name" + i }); paged.insert (new Comparable [] { i, "name" + i });} // for
+		PagedBpTreeMap <KeyType> ids = new PagedBpTreeMap <> (file.getPath (), paged.keyCodec (8), 2, 256);
+		paged.indexTupleIds (ids);
+		for (BPTreeTable students : new BPTreeTable [] { heap, paged }) {
+			List <String> expected = new ArrayList <> ();
+			List <String> found = new ArrayList <> ();
+			for (Comparable [] t : transcripts.indexedJoin ("studId", "id", students).tuples) { expected.add (Arrays.toString (t));} // for
+			for (Comparable [] t : transcripts.indexedJoin ("studId", "id", students, 4).tuples) { found.add (Arrays.toString (t));} // for
+			assertEquals("Test parallel join size", expected.size(), 1500);
+			assertEquals("Test parallel join", found, expected);
+		} // for
+		ids.close ();
+		file.delete ();
+	}
+	
+	/**
+	 * Tests a ColumnStore and the selects, joins and deletes on a table stored by column
+	 */
+	public void testColumnStore()
+	{
+		ColumnStore store = new ColumnStore (new Class [] { Integer.class, String.class, Double.class });
+		for (int i = 0; i < 3000; i++) { store.add (new Comparable [] { i, (i < 100) ? "s" + (i % 5) : "name" + i, (i % 10 == 0) ? null : i / 2.0 });} // for
+		assertEquals("Test column size", store.size(), 3000);
+		assertEquals("Test dictionary string", store.get(3)[1], "s3");
+		assertEquals("Test packed string", store.get(2999)[1], "name2999");
+		assertNull("Test null cell", store.get(20)[2]);
+		assertEquals("Test double cell", store.get(21)[2], 10.5);
+		assertEquals("Test int range", store.range(0, 10, true, 20, false).length, 10);
+		assertEquals("Test string range", store.range(1, "name2990", true, "name2999", true).length, 10);
+		assertNull("Test mismatched bounds", store.range(0, "a", true, "b", true));
+		assertEquals("Test remove row", store.remove(20)[0], 20);
+		assertEquals("Test rows shift up", store.get(20)[0], 21);
+		assertNull("Test nulls shift up", store.get(29)[2]);
+		assertEquals("Test packed row after remove", store.get(2998)[1], "name2999");
+		assertEquals("Test size after remove", store.size(), 2999);
+		ColumnStore codes = new ColumnStore (new Class [] { String.class });
+		for (int i = 0; i < 10; i++) { codes.add (new Comparable [] { "v" + (i % 3) });} // for
+		codes.removeIf (r -> r[0].equals ("v1"));
+		codes.remove (0);
+		codes.add (new Comparable [] { "w" });
+		assertEquals("Test freed dictionary value", codes.range(0, "v1", true, "v1", true).length, 0);
+		assertEquals("Test reused dictionary code", codes.range(0, "w", true, "w", true).length, 1);
+		assertEquals("Test kept dictionary value", codes.range(0, "v0", true, "v0", true).length, 3);
+		assertEquals("Test reused code value", codes.get(codes.size() - 1)[0], "w");
+		BPTreeTable students = new BPTreeTable ("Student", "id name status", "Integer String String", "id");
+		BPTreeTable transcripts = new BPTreeTable ("Transcript", "studId crsCode", "Integer String", "studId crsCode");
+		for (int i = 0; i < 2000; i++) { students.insert (new Comparable [] { i, "name" + i, "status" + (i % 3) });} // for
+		for (int i = 0; i < 2000; i += 4) { transcripts.insert (new Comparable [] { i, "CSCI1301" });} // for
+		BPTreeTable columns = new BPTreeTable ("Student", "id name status", "Integer String String", "id");
+		for (int i = 0; i < 2000; i++) { columns.insert (new Comparable [] { i, "name" + i, "status" + (i % 3) });} // for
+		columns.storeColumns ();
+		assertTrue("Test columnar tuples", columns.tuples instanceof ColumnStore);
+		assertEquals("Test key select", columns.select(new KeyType (42)).tuples.get(0)[1], "name42");
+		assertEquals("Test attribute select", columns.select("status", new KeyType ("status1")).tuples.size(), students.select("status", new KeyType ("status1")).tuples.size());
+		assertEquals("Test range select", columns.select("name", "name1", true, "name2", false).tuples.size(), students.select("name", "name1", true, "name2", false).tuples.size());
+		assertEquals("Test project", columns.project("status").tuples.size(), 3);
+		assertEquals("Test hash join", columns.hashJoin("id", "studId", transcripts).tuples.size(), students.hashJoin("id", "studId", transcripts).tuples.size());
+		assertEquals("Test indexed join", transcripts.indexedJoin("studId", "id", columns).tuples.size(), 500);
+		columns.delete (new KeyType (42));
+		assertEquals("Test columnar delete", columns.tuples.size(), 1999);
+		assertEquals("Test key after delete", columns.select(new KeyType (43)).tuples.get(0)[1], "name43");
+		try {
+			columns.copyOnWriteIndex ();
+			fail("Test columnar copy-on-write index refused");
+		} catch (IllegalStateException e) { }
+		assertTrue("Test delete after refusal", columns.delete (new KeyType (44)));
+		assertEquals("Test rows after refusal", columns.tuples.size(), 1998);
+	}
 	
 }
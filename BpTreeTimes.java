@@ -2,6 +2,11 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.io.FileOutputStream;
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntConsumer;
 
 /**
  * Tests the time it takes to perform joins, range selects, and point
@@ -29,6 +34,12 @@ public class BPTreeTimes
 	// Used to store times for a particular query
 	private double[] timesArray = new double[12];
 	
+	// Fanouts compared by fanoutTimes
+	private static final int[] FANOUTS = {4, 8, 16, 32, 64, 128, 256};
+	
+	// Thread counts compared by concurrentTimes
+	private static final int[] THREADS = {1, 2, 4, 8};
+	
 	/**
 	 * Prints the average time for 12 runs of a particular query
 	 * and returns the standard deviation which will be printed
@@ -83,10 +94,28 @@ public class BPTreeTimes
 		timePrinter.joinIndexedTimes();
 		// Prints the join times
 		timePrinter.joinIndexedTimes();
+		// Prints the hash join times
+		timePrinter.joinHashTimes();
+		// Prints the merge join times
+		timePrinter.joinMergeTimes();
+		// Prints the minus times
+		timePrinter.minusTimes();
 		// Prints the point select times
 		timePrinter.pointSelectIndexedTimes();
 		// Prints the range select times
 		timePrinter.rangeSelectIndexedTimes();
+		// Prints the sequential and parallel full scan select times
+		timePrinter.selectParallelTimes();
+		// Prints the range select times on a non-key attribute, for rows and for columns
+		timePrinter.columnarTimes();
+		// Prints the insert and lookup times for varying fanouts
+		timePrinter.fanoutTimes(10000);
+		// Prints the cost per insert as a B+ Tree grows to a million keys
+		timePrinter.insertScalingTimes(1000000);
+		// Prints the mixed insert and delete times
+		timePrinter.churnTimes(100000);
+		// Prints the multi-threaded insert and lookup times
+		timePrinter.concurrentTimes(200000);
 		// Creates files that store the index of StudentTable5000 and TranscriptTable5000
 		
 		timePrinter.printTableIndex();
@@ -121,6 +150,73 @@ public class BPTreeTimes
 		this.joinIndexed(50000);
 		this.standardDeviation(50000);
 		System.out.println();
+
+		// Scaling curves: the same joins split by key range over 1, 2, 4, ... threads, up to every core
+		int cores = Runtime.getRuntime().availableProcessors();
+		for (int threads = 1; threads <= cores; threads = (threads * 2 > cores && threads < cores) ? cores : threads * 2)
+		{
+			System.out.println("B+ Tree: Parallel Index Join Times (" + threads + " threads)");
+			for (int num : new int[]{1000, 2000, 5000, 10000, 50000})
+			{
+				this.joinIndexedParallel(num, threads);
+				this.standardDeviation(num);
+				System.out.println();
+			}
+		}
+	}
+	
+	/**
+	 * For each of the table sizes
+	 * 		Prints the run time of 12 joins
+	 * 		Prints the average run time of 12 joins
+	 * 		Prints the standard deviation 
+	 * For Hash Joins, which need no index on the join attributes
+	 */
+	public void joinHashTimes() {
+		System.out.println("Hash Join Times");
+
+		for (int num : new int[]{1000, 2000, 5000, 10000, 50000})
+		{
+			this.joinHash(num);
+			this.standardDeviation(num);
+			System.out.println();
+		}
+	}
+	
+	/**
+	 * For each of the table sizes
+	 * 		Prints the run time of 12 joins
+	 * 		Prints the average run time of 12 joins
+	 * 		Prints the standard deviation 
+	 * For Merge Joins, reading both tables in key order from their B+ Trees
+	 */
+	public void joinMergeTimes() {
+		System.out.println("B+ Tree: Merge Join Times");
+
+		for (int num : new int[]{1000, 2000, 5000, 10000, 50000})
+		{
+			this.joinMerge(num);
+			this.standardDeviation(num);
+			System.out.println();
+		}
+	}
+	
+	/**
+	 * For each of the table sizes
+	 * 		Prints the run time of 12 minus operations
+	 * 		Prints the average run time of 12 minus operations
+	 * 		Prints the standard deviation 
+	 * For Minus as an anti-join probing the other table's B+ Tree index
+	 */
+	public void minusTimes() {
+		System.out.println("B+ Tree: Minus Times");
+
+		for (int num : new int[]{1000, 2000, 5000, 10000, 50000})
+		{
+			this.minus(num);
+			this.standardDeviation(num);
+			System.out.println();
+		}
 	}
 	
 	/**
@@ -161,34 +257,314 @@ public class BPTreeTimes
 	 * 		Prints the run time of 12 joins
 	 * 		Prints the average run time of 12 joins
 	 * 		Prints the standard deviation 
-	 * For B+ Tree Range Selects
+	 * For B+ Tree Range Selects, first through the index and then by a
+	 * scan of all the tuples
 	 */
 	public void rangeSelectIndexedTimes() {
 		
-		System.out.println("B+ Tree: Range select times");
-		this.rangeSelectIndexed(1000);
-		this.standardDeviation(1000);
+		System.out.println("B+ Tree: Range select times (index seek)");
+		for (int num : new int[]{1000, 2000, 5000, 10000, 50000})
+		{
+			this.rangeSelectIndexed(num);
+			this.standardDeviation(num);
+			System.out.println();
+		}
 		System.out.println();
+
+		System.out.println("B+ Tree: Range select times (full scan)");
+		for (int num : new int[]{1000, 2000, 5000, 10000, 50000})
+		{
+			this.rangeSelectScan(num);
+			this.standardDeviation(num);
+			System.out.println();
+		}
+		System.out.println();
+	}
+
+	/**
+	 * For each of the table sizes
+	 * 		Prints the run time of 12 full scan selects
+	 * 		Prints the average run time of 12 full scan selects
+	 * 		Prints the standard deviation 
+	 * For selects scanning the tuples on one thread and on the ForkJoinPool
+	 */
+	public void selectParallelTimes() {
 		
-		this.rangeSelectIndexed(2000);
-		this.standardDeviation(2000);
+		System.out.println("Select times (sequential scan)");
+		for (int num : new int[]{1000, 2000, 5000, 10000, 50000})
+		{
+			this.selectScan(num, false);
+			this.standardDeviation(num);
+			System.out.println();
+		}
 		System.out.println();
 
-		this.rangeSelectIndexed(5000);
-		this.standardDeviation(5000);
+		System.out.println("Select times (parallel scan, " + java.util.concurrent.ForkJoinPool.getCommonPoolParallelism() + " threads)");
+		for (int num : new int[]{1000, 2000, 5000, 10000, 50000})
+		{
+			this.selectScan(num, true);
+			this.standardDeviation(num);
+			System.out.println();
+		}
 		System.out.println();
+	}
 
-		this.rangeSelectIndexed(10000);
-		this.standardDeviation(10000);
+	/**
+	 * For each of the table sizes
+	 * 		Prints the run time of 12 range selects on the status attribute
+	 * 		Prints the average run time of 12 range selects
+	 * 		Prints the standard deviation 
+	 * For tables stored as rows and as columns (storeColumns)
+	 */
+	public void columnarTimes() {
+		
+		System.out.println("Range select times on a non-key attribute (rows)");
+		for (int num : new int[]{1000, 2000, 5000, 10000, 50000})
+		{
+			this.columnarSelect(num, false);
+			this.standardDeviation(num);
+			System.out.println();
+		}
 		System.out.println();
 
-		this.rangeSelectIndexed(50000);
-		this.standardDeviation(50000);
+		System.out.println("Range select times on a non-key attribute (columns)");
+		for (int num : new int[]{1000, 2000, 5000, 10000, 50000})
+		{
+			this.columnarSelect(num, true);
+			this.standardDeviation(num);
+			System.out.println();
+		}
 		System.out.println();
+	}
+
+	/**
+	 * For each of the fanouts
+	 * 		Prints the run time of 12 loads of num random keys
+	 * 		Prints the run time of 12 rounds of num point lookups
+	 * For B+ Tree maps of varying order
+	 * @param num: how many keys are inserted and looked up
+	 */
+	public void fanoutTimes(int num)
+	{
+		System.out.println("B+ Tree: Insert and lookup times by fanout (" + num + " keys)");
+		
+		// Uses the same random keys for every fanout
+		Random rand = new Random(0);
+		KeyType[] keys = new KeyType[num];
+		for(int i = 0; i < num; i++)
+		{
+			keys[i] = new KeyType(rand.nextInt(num * 10));
+		}
+		Comparable[] row = new Comparable[] {0};
+		
+		for(int order : FANOUTS)
+		{
+			double startTime;
+			double endTime;
+			BpTreeMap<KeyType, Comparable[]> map = null;
+			
+			System.out.println("Insert, order " + order);
+			for(int i = 0; i < 12; i++)
+			{
+				startTime = System.nanoTime();
+				map = new BpTreeMap<>(KeyType.class, Comparable[].class, order);
+				for(KeyType key : keys)
+				{
+					map.put(key, row);
+				}
+				endTime = System.nanoTime();
+				timesArray[i] = endTime - startTime;
+			}
+			this.standardDeviation(num);
+			
+			System.out.println("Lookup, order " + order);
+			for(int i = 0; i < 12; i++)
+			{
+				startTime = System.nanoTime();
+				for(KeyType key : keys)
+				{
+					map.get(key);
+				}
+				endTime = System.nanoTime();
+				timesArray[i] = endTime - startTime;
+			}
+			this.standardDeviation(num);
+			System.out.println();
+		}
+	}
 
+	/**
+	 * Prints the average time per insert for each tenth of num ascending keys
+	 * and then for each tenth of num random keys, so that any growth in the
+	 * cost of an insert as the B+ Tree fills up can be seen
+	 * @param num: how many keys are inserted
+	 */
+	public void insertScalingTimes(int num)
+	{
+		System.out.println("B+ Tree: Insert time per key (" + num + " keys)");
+		
+		Random rand = new Random(0);
+		int[] ascending = new int[num];
+		int[] random = new int[num];
+		for(int i = 0; i < num; i++)
+		{
+			ascending[i] = i;
+			random[i] = rand.nextInt();
+		}
+		
+		this.insertScaling("Ascending", ascending);
+		this.insertScaling("Random", random);
+	}
+	
+	/**
+	 * Inserts the keys into an empty B+ Tree, printing the average time
+	 * per insert for each tenth of the keys
+	 * @param label: the name of the key order
+	 * @param keys: the keys to insert
+	 */
+	private void insertScaling(String label, int[] keys)
+	{
+		BpTreeMap<KeyType, Comparable[]> map = new BpTreeMap<>(KeyType.class, Comparable[].class);
+		Comparable[] row = new Comparable[] {0};
+		int block = Math.max(1, keys.length / 10);
+		
+		for(int from = 0; from < keys.length; from += block)
+		{
+			int to = Math.min(keys.length, from + block);
+			double startTime = System.nanoTime();
+			for(int i = from; i < to; i++)
+			{
+				map.put(new KeyType(keys[i]), row);
+			}
+			double endTime = System.nanoTime();
+			System.out.println(label + ": keys " + from + " to " + to + ": "
+				+ (endTime - startTime) / (to - from) + " ns per insert");
+		}
 		System.out.println();
 	}
 
+	/**
+	 * Prints the run time of 12 rounds of num mixed operations on a B+ Tree
+	 * holding num keys, where each operation deletes a random key and inserts
+	 * a new one, and then the tree's statistics to show its height and leaf
+	 * fill stay bounded
+	 * @param num: how many keys the tree holds
+	 */
+	public void churnTimes(int num)
+	{
+		System.out.println("B+ Tree: Mixed insert and delete times (" + num + " keys)");
+		
+		Random rand = new Random(0);
+		BpTreeMap<KeyType, Comparable[]> map = new BpTreeMap<>(KeyType.class, Comparable[].class);
+		Comparable[] row = new Comparable[] {0};
+		int[] live = new int[num];
+		for(int i = 0; i < num; i++)
+		{
+			live[i] = rand.nextInt();
+			map.put(new KeyType(live[i]), row);
+		}
+		System.out.println("Before: " + map.stats());
+		
+		double startTime;
+		double endTime;
+		for(int i = 0; i < 12; i++)
+		{
+			startTime = System.nanoTime();
+			for(int j = 0; j < num; j++)
+			{
+				int victim = rand.nextInt(num);
+				map.remove(new KeyType(live[victim]));
+				live[victim] = rand.nextInt();
+				map.put(new KeyType(live[victim]), row);
+			}
+			endTime = System.nanoTime();
+			timesArray[i] = endTime - startTime;
+		}
+		this.standardDeviation(num);
+		System.out.println("After: " + map.stats());
+		System.out.println();
+	}
+
+	/**
+	 * Prints the time for 1, 2, 4 and 8 threads to insert and then look up num keys
+	 * in a shared ConcurrentBpTreeMap, next to a BpTreeMap behind a single lock
+	 * @param num: how many keys are inserted and looked up
+	 */
+	public void concurrentTimes(int num)
+	{
+		System.out.println("B+ Tree: Concurrent insert and lookup times (" + num + " keys, "
+			+ Runtime.getRuntime().availableProcessors() + " processors)");
+		
+		Random rand = new Random(0);
+		int[] keys = new int[num];
+		for(int i = 0; i < num; i++)
+		{
+			keys[i] = rand.nextInt();
+		}
+		Comparable[] row = new Comparable[] {0};
+		
+		for(int threads : THREADS)
+		{
+			ConcurrentBpTreeMap<KeyType, Comparable[]> concurrent = new ConcurrentBpTreeMap<>();
+			BpTreeMap<KeyType, Comparable[]> locked = new BpTreeMap<>(KeyType.class, Comparable[].class);
+			
+			double insertConcurrent = runThreads(threads, num, i -> concurrent.put(new KeyType(keys[i]), row));
+			double insertLocked = runThreads(threads, num, i -> {
+				synchronized(locked) { locked.put(new KeyType(keys[i]), row); }
+			});
+			double lookupConcurrent = runThreads(threads, num, i -> concurrent.get(new KeyType(keys[i])));
+			double lookupLocked = runThreads(threads, num, i -> {
+				synchronized(locked) { locked.get(new KeyType(keys[i])); }
+			});
+			
+			System.out.println(threads + " threads: insert " + insertConcurrent / 1000000 + " ms (single lock "
+				+ insertLocked / 1000000 + " ms), lookup " + lookupConcurrent / 1000000 + " ms (single lock "
+				+ lookupLocked / 1000000 + " ms)");
+		}
+		System.out.println();
+	}
+	
+	/**
+	 * Runs op on the positions 0 to num - 1, split evenly across the threads
+	 * @param threads: how many threads to use
+	 * @param num: how many positions there are
+	 * @param op: the operation to run on each position
+	 * @return The elapsed time in nanoseconds
+	 */
+	private double runThreads(int threads, int num, IntConsumer op)
+	{
+		Thread[] workers = new Thread[threads];
+		for(int t = 0; t < threads; t++)
+		{
+			int from = (int) ((long) num * t / threads);
+			int to = (int) ((long) num * (t + 1) / threads);
+			workers[t] = new Thread(() -> {
+				for(int i = from; i < to; i++)
+				{
+					op.accept(i);
+				}
+			});
+		}
+		
+		double startTime = System.nanoTime();
+		for(Thread worker : workers)
+		{
+			worker.start();
+		}
+		try
+		{
+			for(Thread worker : workers)
+			{
+				worker.join();
+			}
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		return System.nanoTime() - startTime;
+	}
+
 	private void joinIndexed(int num)
 	{
 		double startTime;
@@ -245,6 +621,169 @@ public class BPTreeTimes
 		}
 	}
 	
+	/**
+	 * Times 12 indexed joins of the Transcript and Student tables with num tuples on the given number of threads
+	 * @param num: how many tuples are in the tables
+	 * @param threads: how many threads join the key ranges of the Transcript table
+	 */
+	private void joinIndexedParallel(int num, int threads)
+	{
+		BPTreeTable transcripts;
+		BPTreeTable students;
+		switch(num)
+		{
+			case 1000:
+				transcripts = TranscriptTable1000;
+				students = StudentTable1000;
+				break;
+			case 2000:
+				transcripts = TranscriptTable2000;
+				students = StudentTable2000;
+				break;
+			case 5000:
+				transcripts = TranscriptTable5000;
+				students = StudentTable5000;
+				break;
+			case 10000:
+				transcripts = TranscriptTable10000;
+				students = StudentTable10000;
+				break;
+			case 50000:
+				transcripts = TranscriptTable50000;
+				students = StudentTable50000;
+				break;
+			default:
+				return;
+		}
+		for(int i = 0; i < 12; i++)
+		{
+			double startTime = System.nanoTime();
+			tempTable = transcripts.indexedJoin("studId", "id", students, threads);
+			double endTime = System.nanoTime();
+			timesArray[i] = endTime - startTime;
+		}
+	}
+	
+	/**
+	 * Times 12 hash joins of the Transcript and Student tables with num tuples
+	 * @param num: how many tuples are in the tables
+	 */
+	private void joinHash(int num)
+	{
+		BPTreeTable transcripts;
+		BPTreeTable students;
+		switch(num)
+		{
+			case 1000:
+				transcripts = TranscriptTable1000;
+				students = StudentTable1000;
+				break;
+			case 2000:
+				transcripts = TranscriptTable2000;
+				students = StudentTable2000;
+				break;
+			case 5000:
+				transcripts = TranscriptTable5000;
+				students = StudentTable5000;
+				break;
+			case 10000:
+				transcripts = TranscriptTable10000;
+				students = StudentTable10000;
+				break;
+			case 50000:
+				transcripts = TranscriptTable50000;
+				students = StudentTable50000;
+				break;
+			default:
+				return;
+		}
+		for(int i = 0; i < 12; i++)
+		{
+			double startTime = System.nanoTime();
+			tempTable = transcripts.hashJoin("studId", "id", students);
+			double endTime = System.nanoTime();
+			timesArray[i] = endTime - startTime;
+		}
+	}
+	
+	/**
+	 * Times 12 merge joins of the Transcript and Student tables with num tuples
+	 * @param num: how many tuples are in the tables
+	 */
+	private void joinMerge(int num)
+	{
+		BPTreeTable transcripts;
+		BPTreeTable students;
+		switch(num)
+		{
+			case 1000:
+				transcripts = TranscriptTable1000;
+				students = StudentTable1000;
+				break;
+			case 2000:
+				transcripts = TranscriptTable2000;
+				students = StudentTable2000;
+				break;
+			case 5000:
+				transcripts = TranscriptTable5000;
+				students = StudentTable5000;
+				break;
+			case 10000:
+				transcripts = TranscriptTable10000;
+				students = StudentTable10000;
+				break;
+			case 50000:
+				transcripts = TranscriptTable50000;
+				students = StudentTable50000;
+				break;
+			default:
+				return;
+		}
+		for(int i = 0; i < 12; i++)
+		{
+			double startTime = System.nanoTime();
+			tempTable = transcripts.mergeJoin("studId", "id", students);
+			double endTime = System.nanoTime();
+			timesArray[i] = endTime - startTime;
+		}
+	}
+	
+	/**
+	 * Times 12 minus operations of the Student table with num tuples and the Student table with 10000 tuples
+	 * @param num: how many tuples are in the table
+	 */
+	private void minus(int num)
+	{
+		BPTreeTable students;
+		switch(num)
+		{
+			case 1000:
+				students = StudentTable1000;
+				break;
+			case 2000:
+				students = StudentTable2000;
+				break;
+			case 5000:
+				students = StudentTable5000;
+				break;
+			case 10000:
+				students = StudentTable10000;
+				break;
+			case 50000:
+				students = StudentTable50000;
+				break;
+			default:
+				return;
+		}
+		for(int i = 0; i < 12; i++)
+		{
+			double startTime = System.nanoTime();
+			tempTable = students.minus(StudentTable10000);
+			double endTime = System.nanoTime();
+			timesArray[i] = endTime - startTime;
+		}
+	}
+	
 	private void pointSelectIndexed(int num)
 	{
 		double startTime;
@@ -301,7 +840,152 @@ public class BPTreeTimes
 		}
 	}
 	
+	/**
+	 * Times 12 range selects of the ids in [40000, 42000) on the Student table
+	 * with num tuples, seeking in the primary key index and walking its leaves
+	 * @param num: how many tuples are in the table
+	 */
 	private void rangeSelectIndexed(int num)
+	{
+		double startTime;
+		double endTime;
+		switch(num)
+		{
+			case 1000:
+				for(int i = 0; i < 12; i++)
+				{
+					startTime= System.nanoTime();
+					tempTable = StudentTable1000.select("id", 40000, true, 42000, false);
+					endTime = System.nanoTime();
+					timesArray[i] = endTime - startTime;
+				}
+				break;
+			case 2000:
+				for(int i = 0; i < 12; i++)
+				{
+					startTime= System.nanoTime();
+					tempTable = StudentTable2000.select("id", 40000, true, 42000, false);
+					endTime = System.nanoTime();
+					timesArray[i] = endTime - startTime;
+				}
+				break;
+			case 5000:
+				for(int i = 0; i < 12; i++)
+				{
+					startTime= System.nanoTime();
+					tempTable = StudentTable5000.select("id", 40000, true, 42000, false);
+					endTime = System.nanoTime();
+					timesArray[i] = endTime - startTime;
+				}
+				break;
+			case 10000:
+				for(int i = 0; i < 12; i++)
+				{
+					startTime= System.nanoTime();
+					tempTable = StudentTable10000.select("id", 40000, true, 42000, false);
+					endTime = System.nanoTime();
+					timesArray[i] = endTime - startTime;
+				}
+				break;
+			case 50000:
+				for(int i = 0; i < 12; i++)
+				{
+					startTime= System.nanoTime();
+					tempTable = StudentTable50000.select("id", 40000, true, 42000, false);
+					endTime = System.nanoTime();
+					timesArray[i] = endTime - startTime;
+				}
+				break;
+			default:
+				break;
+		}
+	}
+	
+	/**
+	 * Times 12 range selects of the ids in [40000, 42000) on the Student table
+	 * with num tuples, testing a predicate against every tuple
+	 * @param num: how many tuples are in the table
+	 */
+	/**
+	 * Times 12 selects of the Student tuples whose name ends in 7, scanning every tuple
+	 * @param num: how many tuples are in the table
+	 * @param parallel: whether to scan in parallel
+	 */
+	private void selectScan(int num, boolean parallel)
+	{
+		BPTreeTable students;
+		switch(num)
+		{
+			case 1000:
+				students = StudentTable1000;
+				break;
+			case 2000:
+				students = StudentTable2000;
+				break;
+			case 5000:
+				students = StudentTable5000;
+				break;
+			case 10000:
+				students = StudentTable10000;
+				break;
+			case 50000:
+				students = StudentTable50000;
+				break;
+			default:
+				return;
+		}
+		// Parallel scans every table, however small, to show where it stops paying off
+		students.setParallelSelect(parallel ? 1 : 0);
+		int name = students.col("name");
+		for(int i = 0; i < 12; i++)
+		{
+			double startTime = System.nanoTime();
+			tempTable = students.select(t -> ((String) t[name]).endsWith("7"));
+			double endTime = System.nanoTime();
+			timesArray[i] = endTime - startTime;
+		}
+		students.setParallelSelect(0);
+	}
+	
+	private void columnarSelect(int num, boolean columnar)
+	{
+		BPTreeTable students;
+		switch(num)
+		{
+			case 1000:
+				students = StudentTable1000;
+				break;
+			case 2000:
+				students = StudentTable2000;
+				break;
+			case 5000:
+				students = StudentTable5000;
+				break;
+			case 10000:
+				students = StudentTable10000;
+				break;
+			case 50000:
+				students = StudentTable50000;
+				break;
+			default:
+				return;
+		}
+		// Copies the table into columns, leaving the row table as it was
+		if(columnar)
+		{
+			students = this.loadTable("Student", "id name address status", "Integer String String String", "id", students.tuples, num);
+			students.storeColumns();
+		}
+		for(int i = 0; i < 12; i++)
+		{
+			double startTime = System.nanoTime();
+			tempTable = students.select("status", "A", true, "M", false);
+			double endTime = System.nanoTime();
+			timesArray[i] = endTime - startTime;
+		}
+	}
+	
+	private void rangeSelectScan(int num)
 	{
 		double startTime;
 		double endTime;
@@ -374,76 +1058,39 @@ public class BPTreeTimes
 		test.addRelSchema("Student", "id name address status", "Integer String String String", "id", null);
 		test.addRelSchema("Transcript", "studId crsCode semester grade", "Integer String String String", "studId crsCode semester", null);
 		Comparable[][][] resultTest = test.generate(new int[]{50000, 50000});
+		List<Comparable[]> students = Arrays.asList(resultTest[0]);
+		List<Comparable[]> transcripts = Arrays.asList(resultTest[1]);
 
-		// Insert values into Student tables
-		for (int i = 0; i < resultTest[0].length; i++) 
-		{
-			if(i >= 10000)
-			{
-				StudentTable50000.insert(resultTest[0][i]);
-			}
-			else if(i >= 5000)
-			{
-				StudentTable50000.insert(resultTest[0][i]);
-				StudentTable10000.insert(resultTest[0][i]);
-			}
-			else if(i >= 2000)
-			{
-				StudentTable50000.insert(resultTest[0][i]);
-				StudentTable10000.insert(resultTest[0][i]);
-				StudentTable5000.insert(resultTest[0][i]);
-			}
-			else if(i >= 1000)
-			{
-				StudentTable50000.insert(resultTest[0][i]);
-				StudentTable10000.insert(resultTest[0][i]);
-				StudentTable5000.insert(resultTest[0][i]);
-				StudentTable2000.insert(resultTest[0][i]);
-			}
-			else
-			{
-				StudentTable50000.insert(resultTest[0][i]);
-				StudentTable10000.insert(resultTest[0][i]);
-				StudentTable5000.insert(resultTest[0][i]);
-				StudentTable2000.insert(resultTest[0][i]);
-				StudentTable1000.insert(resultTest[0][i]);
-			}
-		}
+		// Bulk loads each Student table from the first tuples generated
+		StudentTable1000 = this.loadTable("Student", "id name address status", "Integer String String String", "id", students, 1000);
+		StudentTable2000 = this.loadTable("Student", "id name address status", "Integer String String String", "id", students, 2000);
+		StudentTable5000 = this.loadTable("Student", "id name address status", "Integer String String String", "id", students, 5000);
+		StudentTable10000 = this.loadTable("Student", "id name address status", "Integer String String String", "id", students, 10000);
+		StudentTable50000 = this.loadTable("Student", "id name address status", "Integer String String String", "id", students, 50000);
 		
-		// Insert data into Transcript tables
-		for (int i = 0; i < resultTest[1].length; i++) 
-		{
-			if(i >= 10000)
-			{
-				TranscriptTable50000.insert(resultTest[1][i]);
-			}
-			else if(i >= 5000)
-			{
-				TranscriptTable50000.insert(resultTest[1][i]);
-				TranscriptTable10000.insert(resultTest[1][i]);
-			}
-			else if(i >= 2000)
-			{
-				TranscriptTable50000.insert(resultTest[1][i]);
-				TranscriptTable10000.insert(resultTest[1][i]);
-				TranscriptTable5000.insert(resultTest[1][i]);
-			}
-			else if(i >= 1000)
-			{
-				TranscriptTable50000.insert(resultTest[1][i]);
-				TranscriptTable10000.insert(resultTest[1][i]);
-				TranscriptTable5000.insert(resultTest[1][i]);
-				TranscriptTable2000.insert(resultTest[1][i]);
-			}
-			else
-			{
-				TranscriptTable50000.insert(resultTest[1][i]);
-				TranscriptTable10000.insert(resultTest[1][i]);
-				TranscriptTable5000.insert(resultTest[1][i]);
-				TranscriptTable2000.insert(resultTest[1][i]);
-				TranscriptTable1000.insert(resultTest[1][i]);
-			}
-		}
+		// Bulk loads each Transcript table from the first tuples generated
+		TranscriptTable1000 = this.loadTable("Transcript", "studId crsCode semester grade", "Integer String String String", "studId crsCode semester", transcripts, 1000);
+		TranscriptTable2000 = this.loadTable("Transcript", "studId crsCode semester grade", "Integer String String String", "studId crsCode semester", transcripts, 2000);
+		TranscriptTable5000 = this.loadTable("Transcript", "studId crsCode semester grade", "Integer String String String", "studId crsCode semester", transcripts, 5000);
+		TranscriptTable10000 = this.loadTable("Transcript", "studId crsCode semester grade", "Integer String String String", "studId crsCode semester", transcripts, 10000);
+		TranscriptTable50000 = this.loadTable("Transcript", "studId crsCode semester grade", "Integer String String String", "studId crsCode semester", transcripts, 50000);
+	}
+	
+	/**
+	 * Creates a table holding the first num tuples, whose index is bulk loaded
+	 * rather than built by inserting one tuple at a time
+	 * @param name: the name of the table
+	 * @param attributes: the attribute names
+	 * @param domains: the attribute domains
+	 * @param key: the primary key attributes
+	 * @param tuples: the generated tuples
+	 * @param num: how many tuples to load
+	 * @return The loaded table
+	 */
+	private BPTreeTable loadTable(String name, String attributes, String domains, String key, List<Comparable[]> tuples, int num)
+	{
+		List<Comparable[]> rows = new ArrayList<Comparable[]>(tuples.subList(0, Math.min(num, tuples.size())));
+		return new BPTreeTable(name, attributes, domains, key, rows);
 	}
 	
 	public void printTableIndex() 
@@ -0,0 +1,369 @@
+
+/************************************************************************************
+ * @file BufferPool.java
+ */
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/************************************************************************************
+ * This class caches the fixed-size pages of a file in a bounded number of frames,
+ * serving the node slots of a PagedBpTreeMap (slot i is kept in page i + 1).  A page
+ * is read through the FileChannel the first time it is needed, and when all frames
+ * are taken the CLOCK policy picks the frame to reuse: the hand sweeps the frames,
+ * giving each recently used one a second chance.  A dirty page is written back when
+ * its frame is reused and at each checkpoint, which also saves a small header of
+ * int words in page 0 for the owner of the file.  A pool is for one thread at a time:
+ * even reads move pages and the clock hand, so a call that overlaps another one
+ * fails with a ConcurrentModificationException.
+ */
+public class BufferPool
+       implements OffHeapBpTreeMap.SlotStore
+{
+    /** Marks page 0 of a file written by a buffer pool.
+     */
+    private static final int MAGIC = 0x42505452;
+
+    /** The file the pages are kept in.
+     */
+    private final FileChannel channel;
+
+    /** The number of bytes in a page.
+     */
+    private final int pageSize;
+
+    /** The frames, the page held in each (-1 if none), and their dirty and second
+     *  chance bits.
+     */
+    private final ByteBuffer [] frame;
+    private final int []        pageOf;
+    private final boolean []    dirty, referenced;
+
+    /** Maps each resident page to its frame.
+     */
+    private final Map <Integer, Integer> frameOf = new HashMap <> ();
+
+    /** The position of the clock hand.
+     */
+    private int hand = 0;
+
+    /** The slot and frame of the last request, which repeated accesses to one node
+     *  go straight to.
+     */
+    private int lastSlot = -1, lastFrame = -1;
+
+    /** Whether a call is under way, to reject one from another thread meanwhile.
+     */
+    private final AtomicBoolean busy = new AtomicBoolean ();
+
+    /** The header words saved at the last checkpoint (null for a new file).
+     */
+    private int [] header;
+
+    /** Counters for page requests found in (hits) or read into (misses) the pool,
+     *  pages written back on eviction, and pages written in all.
+     */
+    private long hits = 0, misses = 0, evictions = 0, writes = 0;
+
+    /********************************************************************************
+     * Open (or create) a file of pages and a pool of frames to cache them in.
+     * @param file      the name of the file
+     * @param pageSize  the number of bytes in a page
+     * @param frames    the number of pages the pool may hold at once
+     */
+    public BufferPool (String file, int pageSize, int frames)
+    {
+        if (frames < 1) throw new IllegalArgumentException ("BufferPool: need at least one frame");
+        this.pageSize = pageSize;
+        frame      = new ByteBuffer [frames];
+        pageOf     = new int [frames];
+        dirty      = new boolean [frames];
+        referenced = new boolean [frames];
+        for (int f = 0; f < frames; f++) frame [f] = ByteBuffer.allocateDirect (pageSize);
+        Arrays.fill (pageOf, -1);
+        try {
+            channel = FileChannel.open (Paths.get (file), CREATE, READ, WRITE);
+            if (channel.size () >= pageSize) {
+                ByteBuffer b = ByteBuffer.allocate (pageSize);
+                readPage (0, b);
+                if (b.getInt (0) != MAGIC || b.getInt (4) != pageSize) {
+                    throw new IllegalArgumentException ("BufferPool: " + file + " is not a file of " + pageSize + " byte pages");
+                } // if
+                header = new int [b.getInt (8)];
+                for (int i = 0; i < header.length; i++) header [i] = b.getInt (12 + 4 * i);
+            } // if
+        } catch (IOException ex) {
+            throw new UncheckedIOException (ex);
+        } // try
+    } // constructor
+
+    //--------------------------------------------------------------------------------
+    // Slot access
+    //--------------------------------------------------------------------------------
+
+    public ByteBuffer buffer (int id)
+    {
+        enter ();
+        try {
+            return frame [slotFrame (id)];
+        } finally {
+            busy.set (false);
+        } // try
+    } // buffer
+
+    public int offset (int id)
+    {
+        return 0;
+    } // offset
+
+    public void written (int id)
+    {
+        enter ();
+        try {
+            dirty [(id == lastSlot) ? lastFrame : slotFrame (id)] = true;
+        } finally {
+            busy.set (false);
+        } // try
+    } // written
+
+    public void clear ()
+    {
+        enter ();
+        try {
+            frameOf.clear ();
+            Arrays.fill (pageOf, -1);
+            Arrays.fill (dirty, false);
+            Arrays.fill (referenced, false);
+            hand     = 0;
+            lastSlot = lastFrame = -1;
+            channel.truncate (0);
+        } catch (IOException ex) {
+            throw new UncheckedIOException (ex);
+        } finally {
+            busy.set (false);
+        } // try
+    } // clear
+
+    public long bytes ()
+    {
+        return (long) frame.length * pageSize;
+    } // bytes
+
+    //--------------------------------------------------------------------------------
+    // Public Methods
+    //--------------------------------------------------------------------------------
+
+    /********************************************************************************
+     * Return the header words saved at the last checkpoint, or null for a new file.
+     */
+    public int [] header ()
+    {
+        return header;
+    } // header
+
+    /********************************************************************************
+     * Write all dirty pages back and save the header words in page 0, then force the
+     * file to the storage device.
+     * @param words  the header words to save (at most pageSize / 4 - 3 of them)
+     */
+    public void checkpoint (int [] words)
+    {
+        enter ();
+        try {
+            for (int f = 0; f < frame.length; f++) {
+                if (dirty [f]) writeBack (f);
+            } // for
+            ByteBuffer b = ByteBuffer.allocate (pageSize);
+            b.putInt (MAGIC).putInt (pageSize).putInt (words.length);
+            for (int w : words) b.putInt (w);
+            header = words.clone ();
+            writePage (0, b);
+            channel.force (true);
+        } catch (IOException ex) {
+            throw new UncheckedIOException (ex);
+        } finally {
+            busy.set (false);
+        } // try
+    } // checkpoint
+
+    /********************************************************************************
+     * Close the file, dropping any pages not written back by a checkpoint.
+     */
+    public void close ()
+    {
+        try {
+            channel.close ();
+        } catch (IOException ex) {
+            throw new UncheckedIOException (ex);
+        } // try
+    } // close
+
+    /********************************************************************************
+     * Return the number of page requests served from the pool.
+     */
+    public long hits ()
+    {
+        return hits;
+    } // hits
+
+    /********************************************************************************
+     * Return the number of page requests that had to read the page in.
+     */
+    public long misses ()
+    {
+        return misses;
+    } // misses
+
+    /********************************************************************************
+     * Return the number of dirty pages written back to make room for others.
+     */
+    public long evictions ()
+    {
+        return evictions;
+    } // evictions
+
+    /********************************************************************************
+     * Return the number of pages written to the file.
+     */
+    public long writes ()
+    {
+        return writes;
+    } // writes
+
+    /********************************************************************************
+     * Return the fraction of page requests served from the pool.
+     */
+    public double hitRate ()
+    {
+        long requests = hits + misses;
+        return (requests == 0) ? 0.0 : (double) hits / requests;
+    } // hitRate
+
+    /********************************************************************************
+     * Reset the hit, miss, eviction and write counters.
+     */
+    public void resetCounters ()
+    {
+        hits = misses = evictions = writes = 0;
+    } // resetCounters
+
+    //--------------------------------------------------------------------------------
+    // Private Methods
+    //--------------------------------------------------------------------------------
+
+    /********************************************************************************
+     * Mark a call as under way.
+     * @throws ConcurrentModificationException if another call is under way
+     */
+    private void enter ()
+    {
+        if (! busy.compareAndSet (false, true)) {
+            throw new ConcurrentModificationException ("BufferPool: used by two threads at once");
+        } // if
+    } // enter
+
+    /********************************************************************************
+     * Return the frame holding slot id, going straight to the last one for a repeated
+     * access to the same slot (which counts as a hit).
+     */
+    private int slotFrame (int id)
+    {
+        if (id == lastSlot) {
+            hits++;
+        } else {
+            lastFrame = fetch (id + 1);
+            lastSlot  = id;
+        } // if
+        return lastFrame;
+    } // slotFrame
+
+    /********************************************************************************
+     * Return the frame holding the page, reading it into the frame the clock hand
+     * picks if it is not in the pool.
+     */
+    private int fetch (int page)
+    {
+        Integer f = frameOf.get (page);
+        if (f != null) {
+            hits++;
+            referenced [f] = true;
+            return f;
+        } // if
+        misses++;
+
+        // Sweep past frames used since the hand last passed, clearing their bits
+        while (pageOf [hand] >= 0 && referenced [hand]) {
+            referenced [hand] = false;
+            hand = (hand + 1) % frame.length;
+        } // while
+        int victim = hand;
+        hand = (hand + 1) % frame.length;
+
+        if (pageOf [victim] >= 0) {
+            if (dirty [victim]) {
+                writeBack (victim);
+                evictions++;
+            } // if
+            frameOf.remove (pageOf [victim]);
+        } // if
+        try {
+            readPage (page, frame [victim]);
+        } catch (IOException ex) {
+            throw new UncheckedIOException (ex);
+        } // try
+        pageOf [victim]     = page;
+        dirty [victim]      = false;
+        referenced [victim] = true;
+        frameOf.put (page, victim);
+        return victim;
+    } // fetch
+
+    /********************************************************************************
+     * Write the page in frame f back to the file.
+     */
+    private void writeBack (int f)
+    {
+        try {
+            writePage (pageOf [f], frame [f].duplicate ());
+        } catch (IOException ex) {
+            throw new UncheckedIOException (ex);
+        } // try
+        dirty [f] = false;
+    } // writeBack
+
+    /********************************************************************************
+     * Read the page into the buffer, zero filling past the end of the file.
+     */
+    private void readPage (int page, ByteBuffer b)
+            throws IOException
+    {
+        b.clear ();
+        long pos = (long) page * pageSize;
+        while (b.hasRemaining ()) {
+            int n = channel.read (b, pos + b.position ());
+            if (n < 0) break;
+        } // while
+        while (b.hasRemaining ()) b.put ((byte) 0);
+        b.clear ();
+    } // readPage
+
+    /********************************************************************************
+     * Write the whole buffer out as the page.
+     */
+    private void writePage (int page, ByteBuffer b)
+            throws IOException
+    {
+        b.clear ();
+        long pos = (long) page * pageSize;
+        while (b.hasRemaining ()) channel.write (b, pos + b.position ());
+        writes++;
+    } // writePage
+
+} // BufferPool class
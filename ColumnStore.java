@@ -0,0 +1,573 @@
+
+/************************************************************************************
+ * @file ColumnStore.java
+ */
+
+import java.io.Serializable;
+import java.util.*;
+import java.util.function.Predicate;
+
+/************************************************************************************
+ * This class stores a table's tuples by column rather than by row, for a columnar
+ * BPTreeTable.  Integer, Long and Double columns are primitive arrays, so a cell
+ * costs four or eight bytes rather than a reference and a boxed object.  A String
+ * column is dictionary-encoded (an int code per row into a list of the distinct
+ * values) while its values repeat, and once most of them are distinct it is packed
+ * instead: the characters of all its values in one char array, with the offset at
+ * which each row's value starts.  Other domains are kept as arrays of objects.
+ * Nulls in primitive and packed columns are marked in a bitset.
+ *
+ * It presents the rows as a List of Comparable arrays, so the table's operators run
+ * on it unchanged, but each row is built afresh when it is read (rows have no
+ * identity).  Scans that need only some columns read just those, by cells, range and
+ * project, building rows only for the tuples they output.
+ */
+class ColumnStore
+      extends AbstractList <Comparable []>
+      implements RandomAccess, Serializable
+{
+    /** The kinds of column storage.
+     */
+    private static final int INT = 0, LONG = 1, DOUBLE = 2, DICT = 3, PACKED = 4, OBJECT = 5;
+
+    /** A dictionary-encoded column is packed once it has at least this many rows and
+     *  more than half of them hold distinct values.
+     */
+    private static final int PACK_AFTER = 1024;
+
+    /********************************************************************************
+     * This nested class holds the distinct values of a dictionary-encoded column, the
+     * code of each and the number of rows using it.  A code that no row uses any more
+     * is freed (its value becomes null) and handed out again, so codes has just the
+     * values in use.
+     */
+    private static class StringDictionary
+            implements Serializable
+    {
+        final List <String>          values = new ArrayList <> ();
+        final Map <String, Integer>  codes  = new HashMap <> ();
+        final Deque <Integer>        free   = new ArrayDeque <> ();
+        int []                       uses   = new int [16];
+
+        /** Return the code for the value, adding it if it is new, and count one more
+         *  row using it.
+         */
+        int code (String value)
+        {
+            Integer code = codes.get (value);
+            if (code == null) {
+                if (free.isEmpty ()) {
+                    code = values.size ();
+                    values.add (value);
+                    if (code == uses.length) uses = Arrays.copyOf (uses, 2 * code);
+                } else {
+                    code = free.pop ();
+                    values.set (code, value);
+                } // if
+                codes.put (value, code);
+            } // if
+            uses [code]++;
+            return code;
+        } // code
+
+        /** Count one less row using the code (-1 for null), freeing it if none is left.
+         */
+        void drop (int code)
+        {
+            if (code < 0 || --uses [code] > 0) return;
+            codes.remove (values.get (code));
+            values.set (code, null);
+            free.push (code);
+        } // drop
+    } // StringDictionary class
+
+    /** The domain of each column.
+     */
+    private final Class [] domain;
+
+    /** The kind of storage for each column.
+     */
+    private final int [] kind;
+
+    /** The values of each column: an int [] (INT, and codes for DICT), long [],
+     *  double [], char [] (PACKED) or Comparable [] (OBJECT).
+     */
+    private final Object [] data;
+
+    /** For each packed column, the offset in its chars at which each row's value
+     *  starts, with one more entry for the end of the last.
+     */
+    private final int [][] offsets;
+
+    /** For each dictionary-encoded column, its dictionary.
+     */
+    private final StringDictionary [] dicts;
+
+    /** For each primitive or packed column, the rows holding null (null if none do).
+     */
+    private final BitSet [] nulls;
+
+    /** The number of rows, and the number there is room for.
+     */
+    private int size = 0, capacity = 0;
+
+    /********************************************************************************
+     * Construct an empty column store for the given domains.
+     * @param _domain  the domain of each column
+     */
+    ColumnStore (Class [] _domain)
+    {
+        domain  = _domain;
+        kind    = new int [domain.length];
+        data    = new Object [domain.length];
+        offsets = new int [domain.length][];
+        dicts   = new StringDictionary [domain.length];
+        nulls   = new BitSet [domain.length];
+        for (int c = 0; c < domain.length; c++) {
+            kind [c] = (domain [c] == Integer.class) ? INT
+                     : (domain [c] == Long.class)    ? LONG
+                     : (domain [c] == Double.class)  ? DOUBLE
+                     : (domain [c] == String.class)  ? DICT : OBJECT;
+            if (kind [c] == DICT) dicts [c] = new StringDictionary ();
+        } // for
+        grow (16);
+    } // constructor
+
+    /********************************************************************************
+     * Construct a column store holding the given rows (null rows are skipped).
+     * @param _domain  the domain of each column
+     * @param rows     the rows to store
+     */
+    ColumnStore (Class [] _domain, Collection <Comparable []> rows)
+    {
+        this (_domain);
+        grow (rows.size ());
+        for (Comparable [] row : rows) {
+            if (row != null) add (row);
+        } // for
+    } // constructor
+
+    //--------------------------------------------------------------------------------
+    // List Methods
+    //--------------------------------------------------------------------------------
+
+    /********************************************************************************
+     * Return the number of rows.
+     */
+    public int size ()
+    {
+        return size;
+    } // size
+
+    /********************************************************************************
+     * Build row i from its cells.
+     * @param i  the row number
+     */
+    public Comparable [] get (int i)
+    {
+        checkRow (i);
+        Comparable [] row = new Comparable [domain.length];
+        for (int c = 0; c < row.length; c++) row [c] = cell (i, c);
+        return row;
+    } // get
+
+    /********************************************************************************
+     * Append the row, one cell to each column.
+     * @param row  the row to append
+     * @return  true
+     */
+    public boolean add (Comparable [] row)
+    {
+        if (row.length != domain.length) {
+            throw new IllegalArgumentException ("ColumnStore: row has " + row.length + " cells, not " + domain.length);
+        } // if
+        if (size == capacity) grow (2 * capacity);
+        for (int c = 0; c < row.length; c++) set (c, size, row [c]);
+        size++;
+        modCount++;
+        for (int c = 0; c < row.length; c++) {
+            if (kind [c] == DICT && size >= PACK_AFTER && 2 * dicts [c].codes.size () > size) pack (c);
+        } // for
+        return true;
+    } // add
+
+    /********************************************************************************
+     * Remove row i, shifting the cells after it up by one in each column.
+     * @param i  the row number
+     * @return  the row removed
+     */
+    public Comparable [] remove (int i)
+    {
+        Comparable [] row  = get (i);
+        int           tail = size - i - 1;
+        for (int c = 0; c < domain.length; c++) {
+            if (kind [c] == DICT) dicts [c].drop (((int []) data [c]) [i]);
+            if (kind [c] == PACKED) {
+                int [] off  = offsets [c];
+                int    len  = off [i + 1] - off [i];
+                System.arraycopy (data [c], off [i + 1], data [c], off [i], off [size] - off [i + 1]);
+                for (int j = i + 1; j <= size; j++) off [j - 1] = off [j] - len;
+            } else {
+                System.arraycopy (data [c], i + 1, data [c], i, tail);
+                if (kind [c] == OBJECT) ((Comparable []) data [c]) [size - 1] = null;
+            } // if
+            if (nulls [c] != null) {
+                BitSet after = nulls [c].get (i + 1, size);
+                nulls [c].clear (i, size);
+                for (int j = after.nextSetBit (0); j >= 0; j = after.nextSetBit (j + 1)) nulls [c].set (i + j);
+            } // if
+        } // for
+        size--;
+        modCount++;
+        return row;
+    } // remove
+
+    /********************************************************************************
+     * Remove the rows satisfying the predicate in one pass, building each row once to
+     * test it.
+     * @param filter  the test for rows to remove
+     * @return  whether any row was removed
+     */
+    public boolean removeIf (Predicate <? super Comparable []> filter)
+    {
+        boolean [] keep    = new boolean [size];
+        boolean    removed = false;
+        for (int i = 0; i < size; i++) {
+            keep [i] = ! filter.test (get (i));
+            removed |= ! keep [i];
+        } // for
+        if (removed) compact (keep);
+        return removed;
+    } // removeIf
+
+    /********************************************************************************
+     * Remove all the rows.
+     */
+    public void clear ()
+    {
+        for (int c = 0; c < domain.length; c++) {
+            if (nulls [c] != null) nulls [c].clear ();
+            if (kind [c] == DICT)   dicts [c] = new StringDictionary ();
+            if (kind [c] == OBJECT) Arrays.fill ((Comparable []) data [c], 0, size, null);
+        } // for
+        size = 0;
+        modCount++;
+    } // clear
+
+    //--------------------------------------------------------------------------------
+    // Column Methods
+    //--------------------------------------------------------------------------------
+
+    /********************************************************************************
+     * Keep only the rows marked in keep, moving them up in order.
+     * @param keep  whether to keep each row
+     */
+    void retain (boolean [] keep)
+    {
+        compact (keep);
+    } // retain
+
+    /********************************************************************************
+     * Return the values in the given columns of row i, reading only those columns.
+     * @param i     the row number
+     * @param cols  the columns to read
+     */
+    Comparable [] cells (int i, int [] cols)
+    {
+        checkRow (i);
+        Comparable [] vals = new Comparable [cols.length];
+        for (int j = 0; j < cols.length; j++) vals [j] = cell (i, cols [j]);
+        return vals;
+    } // cells
+
+    /********************************************************************************
+     * Return the rows whose value in the column lies between lo and hi, comparing the
+     * stored values directly: primitives as primitives, a dictionary's values once
+     * each, and packed strings in place.  Rows holding null are not in any range.
+     * @param col          the column to compare
+     * @param lo           the lower bound (null for none)
+     * @param loInclusive  whether lo itself is in the range
+     * @param hi           the upper bound (null for none)
+     * @param hiInclusive  whether hi itself is in the range
+     * @return  the row numbers in ascending order, or null if the bounds are not of
+     *          the column's domain (or it is not stored as primitives or strings)
+     */
+    int [] range (int col, Comparable lo, boolean loInclusive, Comparable hi, boolean hiInclusive)
+    {
+        if (kind [col] == OBJECT || ! (lo == null || lo.getClass () == domain [col])
+                                 || ! (hi == null || hi.getClass () == domain [col])) return null;
+        int    loCmp = loInclusive ? 0 : 1;                     // least lo-comparison to pass
+        int    hiCmp = hiInclusive ? 0 : -1;                    // greatest hi-comparison to pass
+        int [] ids   = new int [16];
+        int    n     = 0;
+        boolean [] in = null;
+        if (kind [col] == DICT) {
+            List <String> values = dicts [col].values;
+            in = new boolean [values.size ()];
+            for (int d = 0; d < in.length; d++) in [d] = values.get (d) != null && inRange (values.get (d), lo, loCmp, hi, hiCmp);
+        } // if
+
+        for (int i = 0; i < size; i++) {
+            if (nulls [col] != null && nulls [col].get (i)) continue;
+            boolean match;
+            switch (kind [col]) {
+            case INT:
+                int v = ((int []) data [col]) [i];
+                match = (lo == null || Integer.compare (v, (Integer) lo) >= loCmp)
+                     && (hi == null || Integer.compare (v, (Integer) hi) <= hiCmp);
+                break;
+            case LONG:
+                long w = ((long []) data [col]) [i];
+                match = (lo == null || Long.compare (w, (Long) lo) >= loCmp)
+                     && (hi == null || Long.compare (w, (Long) hi) <= hiCmp);
+                break;
+            case DOUBLE:
+                double x = ((double []) data [col]) [i];
+                match = (lo == null || Double.compare (x, (Double) lo) >= loCmp)
+                     && (hi == null || Double.compare (x, (Double) hi) <= hiCmp);
+                break;
+            case DICT:
+                int code = ((int []) data [col]) [i];
+                match = code >= 0 && in [code];
+                break;
+            default:                                            // PACKED
+                char [] chars = (char []) data [col];
+                int     from  = offsets [col][i], to = offsets [col][i + 1];
+                match = (lo == null || compare (chars, from, to, (String) lo) >= loCmp)
+                     && (hi == null || compare (chars, from, to, (String) hi) <= hiCmp);
+            } // switch
+            if (match) {
+                if (n == ids.length) ids = Arrays.copyOf (ids, 2 * n);
+                ids [n++] = i;
+            } // if
+        } // for
+        return Arrays.copyOf (ids, n);
+    } // range
+
+    /********************************************************************************
+     * Return a new column store holding the given columns of the given rows, copied
+     * column by column without building the rows.
+     * @param cols  the columns to keep
+     * @param ids   the rows to keep, in the order wanted
+     */
+    ColumnStore project (int [] cols, int [] ids)
+    {
+        Class [] dom = new Class [cols.length];
+        for (int j = 0; j < cols.length; j++) dom [j] = domain [cols [j]];
+        ColumnStore out = new ColumnStore (dom);
+        out.grow (ids.length);
+
+        for (int j = 0; j < cols.length; j++) {
+            int c = cols [j];
+            switch (kind [c]) {
+            case INT:
+                int [] ints = (int []) out.data [j];
+                for (int k = 0; k < ids.length; k++) ints [k] = ((int []) data [c]) [ids [k]];
+                break;
+            case LONG:
+                long [] longs = (long []) out.data [j];
+                for (int k = 0; k < ids.length; k++) longs [k] = ((long []) data [c]) [ids [k]];
+                break;
+            case DOUBLE:
+                double [] doubles = (double []) out.data [j];
+                for (int k = 0; k < ids.length; k++) doubles [k] = ((double []) data [c]) [ids [k]];
+                break;
+            default:
+                for (int k = 0; k < ids.length; k++) out.set (j, k, cell (ids [k], c));
+            } // switch
+            if (nulls [c] != null && kind [c] <= DOUBLE) {
+                for (int k = 0; k < ids.length; k++) {
+                    if (nulls [c].get (ids [k])) out.nulls (j).set (k);
+                } // for
+            } // if
+        } // for
+        out.size = ids.length;
+        return out;
+    } // project
+
+    //--------------------------------------------------------------------------------
+    // Private Methods
+    //--------------------------------------------------------------------------------
+
+    /********************************************************************************
+     * Return the value in column c of row i.
+     */
+    private Comparable cell (int i, int c)
+    {
+        if (nulls [c] != null && nulls [c].get (i)) return null;
+        switch (kind [c]) {
+        case INT:    return ((int []) data [c]) [i];
+        case LONG:   return ((long []) data [c]) [i];
+        case DOUBLE: return ((double []) data [c]) [i];
+        case DICT:
+            int code = ((int []) data [c]) [i];
+            return (code < 0) ? null : dicts [c].values.get (code);
+        case PACKED:
+            int from = offsets [c][i];
+            return new String ((char []) data [c], from, offsets [c][i + 1] - from);
+        default:     return ((Comparable []) data [c]) [i];
+        } // switch
+    } // cell
+
+    /********************************************************************************
+     * Store the value in column c of row i, which must be the next row (size) for a
+     * packed column.
+     */
+    private void set (int c, int i, Comparable value)
+    {
+        if (kind [c] != DICT && kind [c] != OBJECT) {
+            if (value == null) nulls (c).set (i);
+            else if (nulls [c] != null) nulls [c].clear (i);
+        } // if
+        switch (kind [c]) {
+        case INT:    ((int []) data [c]) [i]    = (value == null) ? 0 : (Integer) value;  break;
+        case LONG:   ((long []) data [c]) [i]   = (value == null) ? 0 : (Long) value;     break;
+        case DOUBLE: ((double []) data [c]) [i] = (value == null) ? 0 : (Double) value;   break;
+        case DICT:   ((int []) data [c]) [i]    = (value == null) ? -1 : dicts [c].code ((String) value); break;
+        case PACKED:
+            String  s     = (value == null) ? "" : (String) value;
+            char [] chars = (char []) data [c];
+            int     from  = offsets [c][i];
+            if (from + s.length () > chars.length) {
+                data [c] = chars = Arrays.copyOf (chars, Math.max (2 * chars.length, from + s.length ()));
+            } // if
+            s.getChars (0, s.length (), chars, from);
+            offsets [c][i + 1] = from + s.length ();
+            break;
+        default:     ((Comparable []) data [c]) [i] = value;
+        } // switch
+    } // set
+
+    /********************************************************************************
+     * Return the bitset of null rows for column c, creating it if need be.
+     */
+    private BitSet nulls (int c)
+    {
+        if (nulls [c] == null) nulls [c] = new BitSet ();
+        return nulls [c];
+    } // nulls
+
+    /********************************************************************************
+     * Make room for at least the given number of rows in every column.
+     */
+    private void grow (int rows)
+    {
+        if (rows <= capacity) return;
+        for (int c = 0; c < domain.length; c++) {
+            switch (kind [c]) {
+            case INT: case DICT:
+                data [c] = (data [c] == null) ? new int [rows] : Arrays.copyOf ((int []) data [c], rows);
+                break;
+            case LONG:
+                data [c] = (data [c] == null) ? new long [rows] : Arrays.copyOf ((long []) data [c], rows);
+                break;
+            case DOUBLE:
+                data [c] = (data [c] == null) ? new double [rows] : Arrays.copyOf ((double []) data [c], rows);
+                break;
+            case PACKED:
+                offsets [c] = Arrays.copyOf (offsets [c], rows + 1);
+                break;
+            default:
+                data [c] = (data [c] == null) ? new Comparable [rows] : Arrays.copyOf ((Comparable []) data [c], rows);
+            } // switch
+        } // for
+        capacity = rows;
+    } // grow
+
+    /********************************************************************************
+     * Switch dictionary-encoded column c to packed storage.
+     */
+    private void pack (int c)
+    {
+        int []        codes  = (int []) data [c];
+        List <String> values = dicts [c].values;
+        int []        off    = new int [capacity + 1];
+        int           total  = 0;
+        for (int i = 0; i < size; i++) total += (codes [i] < 0) ? 0 : values.get (codes [i]).length ();
+        char [] chars = new char [Math.max (total, 16)];
+        for (int i = 0; i < size; i++) {
+            String s = (codes [i] < 0) ? "" : values.get (codes [i]);
+            s.getChars (0, s.length (), chars, off [i]);
+            off [i + 1] = off [i] + s.length ();
+            if (codes [i] < 0) nulls (c).set (i);
+        } // for
+        kind [c]    = PACKED;
+        data [c]    = chars;
+        offsets [c] = off;
+        dicts [c]   = null;
+    } // pack
+
+    /********************************************************************************
+     * Keep only the rows marked in keep, moving them up in order.
+     */
+    private void compact (boolean [] keep)
+    {
+        int kept = 0;
+        for (boolean k : keep) kept += k ? 1 : 0;
+        int n;
+        for (int c = 0; c < domain.length; c++) {
+            BitSet wasNull = nulls [c];
+            if (wasNull != null) nulls [c] = new BitSet ();
+            if (kind [c] == PACKED) {
+                char [] chars = (char []) data [c];
+                int []  off   = new int [capacity + 1];
+                n = 0;
+                for (int i = 0; i < size; i++) {
+                    if (! keep [i]) continue;
+                    int from = offsets [c][i], len = offsets [c][i + 1] - from;
+                    System.arraycopy (chars, from, chars, off [n], len);
+                    off [n + 1] = off [n] + len;
+                    if (wasNull != null && wasNull.get (i)) nulls [c].set (n);
+                    n++;
+                } // for
+                offsets [c] = off;
+                continue;
+            } // if
+            Object column = data [c];
+            n = 0;
+            for (int i = 0; i < size; i++) {
+                if (! keep [i]) {
+                    if (kind [c] == DICT) dicts [c].drop (((int []) column) [i]);
+                    continue;
+                } // if
+                if (i != n) System.arraycopy (column, i, column, n, 1);
+                if (wasNull != null && wasNull.get (i)) nulls [c].set (n);
+                n++;
+            } // for
+            if (kind [c] == OBJECT) Arrays.fill ((Comparable []) column, kept, size, null);
+        } // for
+        size = kept;
+        modCount++;
+    } // compact
+
+    /********************************************************************************
+     * Check that row i exists.
+     */
+    private void checkRow (int i)
+    {
+        if (i < 0 || i >= size) throw new IndexOutOfBoundsException ("ColumnStore: row " + i + " of " + size);
+    } // checkRow
+
+    /********************************************************************************
+     * Determine whether s lies between lo and hi, given the least comparison with lo
+     * and the greatest with hi that pass.
+     */
+    private static boolean inRange (String s, Comparable lo, int loCmp, Comparable hi, int hiCmp)
+    {
+        return (lo == null || s.compareTo ((String) lo) >= loCmp) && (hi == null || s.compareTo ((String) hi) <= hiCmp);
+    } // inRange
+
+    /********************************************************************************
+     * Compare the string held in chars [from, to) with s, as String.compareTo does.
+     */
+    private static int compare (char [] chars, int from, int to, String s)
+    {
+        int len = to - from, n = Math.min (len, s.length ());
+        for (int k = 0; k < n; k++) {
+            int d = chars [from + k] - s.charAt (k);
+            if (d != 0) return d;
+        } // for
+        return len - s.length ();
+    } // compare
+
+} // ColumnStore class
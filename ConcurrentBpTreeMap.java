@@ -0,0 +1,480 @@
+
+/************************************************************************************
+ * @file ConcurrentBpTreeMap.java
+ */
+
+import java.lang.invoke.VarHandle;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+
+/************************************************************************************
+ * This class provides a B+Tree map that many threads may use at once, using optimistic
+ * lock coupling.  Every node carries a version that is odd while a writer holds the
+ * node.  Readers take no locks: they note each node's version, read it, and restart
+ * from the root if the version has changed by the time they move on.  Writers descend
+ * the same way and latch only the nodes they change: the leaf they insert into or
+ * remove from, or a full node and its parent while splitting it.  Full nodes are
+ * split on the way down, so a split never has to climb back up.
+ *
+ * Removal does not merge underfull nodes (as in many concurrent B+Trees), and null
+ * values are not allowed.  Iteration is weakly consistent: it reflects each leaf as
+ * of some moment while the iteration is under way.
+ */
+public class ConcurrentBpTreeMap <K extends Comparable <K>, V>
+       extends AbstractMap <K, V>
+{
+    /********************************************************************************
+     * This inner class defines nodes that are stored in the B+tree map.
+     */
+    private static final class Node
+    {
+        volatile long  version;        // odd while a writer holds the node
+        final boolean  isLeaf;
+        int            nKeys;
+        final Object[] key;
+        final Object[] ref;
+        Node           next;           // next leaf to the right (leaves only)
+
+        Node (boolean _isLeaf, int order)
+        {
+            isLeaf = _isLeaf;
+            key    = new Object [order - 1];
+            ref    = new Object [order];
+        } // constructor
+    } // Node inner class
+
+    /** Updates a node's version atomically when a writer takes the node.
+     */
+    private static final AtomicLongFieldUpdater <Node> VERSION =
+            AtomicLongFieldUpdater.newUpdater (Node.class, "version");
+
+    /** Returned by search when a reader saw a node in the middle of a change.
+     */
+    private static final int TORN = Integer.MIN_VALUE;
+
+    /** The maximum fanout for a B+Tree node.
+     */
+    private final int order;
+
+    /** The root of the B+Tree
+     */
+    private volatile Node root;
+
+    /** The number of entries in the B+Tree.
+     */
+    private final LongAdder size = new LongAdder ();
+
+    /********************************************************************************
+     * Construct an empty concurrent B+Tree map with the default fanout.
+     */
+    public ConcurrentBpTreeMap ()
+    {
+        this (BpTreeMap.DEFAULT_ORDER);
+    } // constructor
+
+    /********************************************************************************
+     * Construct an empty concurrent B+Tree map with the given maximum fanout.
+     * @param _order  the maximum fanout for a node (at least BpTreeMap.MIN_ORDER)
+     */
+    public ConcurrentBpTreeMap (int _order)
+    {
+        if (_order < BpTreeMap.MIN_ORDER) {
+            throw new IllegalArgumentException ("ConcurrentBpTreeMap: order must be at least " + BpTreeMap.MIN_ORDER);
+        } // if
+        order = _order;
+        root  = new Node (true, order);
+    } // constructor
+
+    //--------------------------------------------------------------------------------
+    // Public Methods
+    //--------------------------------------------------------------------------------
+
+    /********************************************************************************
+     * Return a weakly consistent set view of the entries in ascending key order.
+     */
+    public Set <Map.Entry <K, V>> entrySet ()
+    {
+        return new AbstractSet <Map.Entry <K, V>> () {
+            public Iterator <Map.Entry <K, V>> iterator ()
+            {
+                return new LeafIterator ();
+            } // iterator
+
+            public int size ()
+            {
+                return ConcurrentBpTreeMap.this.size ();
+            } // size
+        };
+    } // entrySet
+
+    /********************************************************************************
+     * Given the key, look up the value without taking any locks.
+     * @param key  the key used for look up
+     * @return  the value associated with the key, or null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    public V get (Object key)
+    {
+        K k = (K) key;
+        restart:
+        while (true) {
+            Node n = root;
+            long v = n.version;
+            if ((v & 1) != 0 || n != root) { Thread.onSpinWait (); continue; }
+
+            while (! n.isLeaf) {
+                Node c = child (n, k);
+                if (c == null) continue restart;
+                long cv = c.version;
+                if ((cv & 1) != 0 || ! valid (n, v)) continue restart;
+                n = c;
+                v = cv;
+            } // while
+
+            int    i   = search (n, n.nKeys, k);
+            Object val = (i >= 0) ? n.ref [i] : null;
+            if (i == TORN || ! valid (n, v)) continue restart;
+            return (V) val;
+        } // while
+    } // get
+
+    /********************************************************************************
+     * Determine whether the key is present.
+     * @param key  the key to look for
+     */
+    public boolean containsKey (Object key)
+    {
+        return get (key) != null;
+    } // containsKey
+
+    /********************************************************************************
+     * Put the key-value pair in the map, replacing the value of an existing key.
+     * @param key    the key to insert
+     * @param value  the value to insert (not null)
+     * @return  the previous value for the key, or null if there was none
+     */
+    public V put (K key, V value)
+    {
+        return insert (key, value, true);
+    } // put
+
+    /********************************************************************************
+     * Put the key-value pair in the map unless the key already has a value.
+     * @return  the current value for the key, or null if the pair was inserted
+     */
+    public V putIfAbsent (K key, V value)
+    {
+        return insert (key, value, false);
+    } // putIfAbsent
+
+    /********************************************************************************
+     * Remove the key and its value from the map, latching only its leaf.
+     * @param key  the key to remove
+     * @return  the value that was removed, or null if the key was not present
+     */
+    @SuppressWarnings("unchecked")
+    public V remove (Object key)
+    {
+        K k = (K) key;
+        restart:
+        while (true) {
+            Node n = root;
+            long v = n.version;
+            if ((v & 1) != 0 || n != root) { Thread.onSpinWait (); continue; }
+
+            while (! n.isLeaf) {
+                Node c = child (n, k);
+                if (c == null) continue restart;
+                long cv = c.version;
+                if ((cv & 1) != 0 || ! valid (n, v)) continue restart;
+                n = c;
+                v = cv;
+            } // while
+
+            if (! lock (n, v)) continue restart;
+            int i = search (n, n.nKeys, k);
+            if (i < 0) {
+                unlock (n);
+                return null;
+            } // if
+            V old = (V) n.ref [i];
+            System.arraycopy (n.key, i + 1, n.key, i, n.nKeys - i - 1);
+            System.arraycopy (n.ref, i + 1, n.ref, i, n.nKeys - i - 1);
+            n.nKeys--;
+            n.key [n.nKeys] = null;
+            n.ref [n.nKeys] = null;
+            unlock (n);
+            size.decrement ();
+            return old;
+        } // while
+    } // remove
+
+    /********************************************************************************
+     * Return the number of entries (exact when no updates are in progress).
+     */
+    public int size ()
+    {
+        return (int) size.sum ();
+    } // size
+
+    /********************************************************************************
+     * Remove all the entries.  Updates running at the same time may be lost.
+     */
+    public void clear ()
+    {
+        root = new Node (true, order);
+        size.reset ();
+    } // clear
+
+    //--------------------------------------------------------------------------------
+    // Private Methods
+    //--------------------------------------------------------------------------------
+
+    /********************************************************************************
+     * Return whether node n still has version v, i.e., whether what was read from it
+     * since v was taken is consistent.
+     */
+    private static boolean valid (Node n, long v)
+    {
+        VarHandle.acquireFence ();
+        return n.version == v;
+    } // valid
+
+    /********************************************************************************
+     * Take the write latch on node n, provided it still has version v.
+     */
+    private static boolean lock (Node n, long v)
+    {
+        return VERSION.compareAndSet (n, v, v + 1);
+    } // lock
+
+    /********************************************************************************
+     * Release the write latch on node n, moving it on to a new even version.
+     */
+    private static void unlock (Node n)
+    {
+        n.version = n.version + 1;
+    } // unlock
+
+    /********************************************************************************
+     * Binary search the first nKeys keys of node n for key k.
+     * @return  the position of k if found, (-(insertion point) - 1) if not, or TORN if
+     *          the node was caught part way through a change
+     */
+    @SuppressWarnings("unchecked")
+    private int search (Node n, int nKeys, K k)
+    {
+        if (nKeys < 0 || nKeys > n.key.length) return TORN;
+        int lo = 0, hi = nKeys - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            K   m   = (K) n.key [mid];
+            if (m == null) return TORN;
+            int c = m.compareTo (k);
+            if      (c < 0) lo = mid + 1;
+            else if (c > 0) hi = mid - 1;
+            else            return mid;
+        } // while
+        return -lo - 1;
+    } // search
+
+    /********************************************************************************
+     * Return the child of internal node n that covers key k, or null if the node was
+     * caught part way through a change.
+     */
+    private Node child (Node n, K k)
+    {
+        int i = search (n, n.nKeys, k);
+        if (i == TORN) return null;
+        return (Node) n.ref [(i >= 0) ? i + 1 : -i - 1];
+    } // child
+
+    /********************************************************************************
+     * Insert the key-value pair, splitting any full node met on the way down while
+     * holding the latches of just that node and its parent.
+     * @param replace  whether to replace the value of an existing key
+     * @return  the previous value for the key, or null if the key was new
+     */
+    @SuppressWarnings("unchecked")
+    private V insert (K k, V value, boolean replace)
+    {
+        if (value == null) throw new NullPointerException ("ConcurrentBpTreeMap: null values are not allowed");
+        restart:
+        while (true) {
+            Node n = root;
+            long v = n.version;
+            if ((v & 1) != 0 || n != root) { Thread.onSpinWait (); continue; }
+            Node p  = null;
+            long pv = 0;
+
+            while (true) {
+                if (n.nKeys == order - 1) {
+                    // Split the full node now, so its parent always has room for a divider
+                    if (p != null && ! lock (p, pv)) continue restart;
+                    if (! lock (n, v)) {
+                        if (p != null) unlock (p);
+                        continue restart;
+                    } // if
+                    split (n, p);
+                    unlock (n);
+                    if (p != null) unlock (p);
+                    continue restart;
+                } // if
+                if (n.isLeaf) break;
+
+                Node c = child (n, k);
+                if (c == null) continue restart;
+                long cv = c.version;
+                if ((cv & 1) != 0 || ! valid (n, v)) continue restart;
+                p  = n;
+                pv = v;
+                n  = c;
+                v  = cv;
+            } // while
+
+            if (! lock (n, v)) continue restart;
+            int i = search (n, n.nKeys, k);
+            if (i >= 0) {
+                V old = (V) n.ref [i];
+                if (replace) n.ref [i] = value;
+                unlock (n);
+                return old;
+            } // if
+            i = -i - 1;
+            System.arraycopy (n.key, i, n.key, i + 1, n.nKeys - i);
+            System.arraycopy (n.ref, i, n.ref, i + 1, n.nKeys - i);
+            n.key [i] = k;
+            n.ref [i] = value;
+            n.nKeys++;
+            unlock (n);
+            size.increment ();
+            return null;
+        } // while
+    } // insert
+
+    /********************************************************************************
+     * Split full node n, whose parent p (null if n is the root) has room for one more
+     * divider.  Both are held by the caller.
+     */
+    @SuppressWarnings("unchecked")
+    private void split (Node n, Node p)
+    {
+        Node   sib = new Node (n.isLeaf, order);
+        Object divider;
+        if (n.isLeaf) {
+            int left  = order / 2;
+            int right = n.nKeys - left;
+            System.arraycopy (n.key, left, sib.key, 0, right);
+            System.arraycopy (n.ref, left, sib.ref, 0, right);
+            sib.nKeys = right;
+            sib.next  = n.next;
+            n.next    = sib;
+            divider   = sib.key [0];
+            n.nKeys   = left;
+            Arrays.fill (n.key, left, n.key.length, null);
+            Arrays.fill (n.ref, left, n.ref.length, null);
+        } else {
+            int left  = (order - 1) / 2;
+            int right = n.nKeys - left - 1;
+            divider   = n.key [left];
+            System.arraycopy (n.key, left + 1, sib.key, 0, right);
+            System.arraycopy (n.ref, left + 1, sib.ref, 0, right + 1);
+            sib.nKeys = right;
+            n.nKeys   = left;
+            Arrays.fill (n.key, left, n.key.length, null);
+            Arrays.fill (n.ref, left + 1, n.ref.length, null);
+        } // if
+
+        if (p == null) {
+            Node newRoot = new Node (false, order);
+            newRoot.key [0] = divider;
+            newRoot.ref [0] = n;
+            newRoot.ref [1] = sib;
+            newRoot.nKeys   = 1;
+            root = newRoot;
+        } else {
+            int i = search (p, p.nKeys, (K) divider);
+            i = -i - 1;
+            System.arraycopy (p.key, i, p.key, i + 1, p.nKeys - i);
+            System.arraycopy (p.ref, i + 1, p.ref, i + 2, p.nKeys - i);
+            p.key [i]     = divider;
+            p.ref [i + 1] = sib;
+            p.nKeys++;
+        } // if
+    } // split
+
+    /********************************************************************************
+     * This inner class iterates over the entries by walking the leaf chain, taking a
+     * consistent copy of one leaf at a time.
+     */
+    private class LeafIterator
+            implements Iterator <Map.Entry <K, V>>
+    {
+        private Node     leaf;
+        private Object[] keys = new Object [0], vals = new Object [0];
+        private int      n = 0, pos = 0;
+
+        @SuppressWarnings("unchecked")
+        LeafIterator ()
+        {
+            restart:
+            while (true) {
+                Node l = root;
+                long v = l.version;
+                if ((v & 1) != 0 || l != root) { Thread.onSpinWait (); continue; }
+                while (! l.isLeaf) {
+                    Node c = (Node) l.ref [0];
+                    if (c == null) continue restart;
+                    long cv = c.version;
+                    if ((cv & 1) != 0 || ! valid (l, v)) continue restart;
+                    l = c;
+                    v = cv;
+                } // while
+                leaf = l;
+                break;
+            } // while
+            advance ();
+        } // constructor
+
+        /** Copy leaves until one with entries is found or the chain ends.
+         */
+        private void advance ()
+        {
+            while (pos >= n && leaf != null) {
+                while (true) {
+                    long v = leaf.version;
+                    if ((v & 1) != 0) { Thread.onSpinWait (); continue; }
+                    int nk = leaf.nKeys;
+                    if (nk < 0 || nk > leaf.key.length) continue;
+                    Object[] ks = Arrays.copyOf (leaf.key, nk);
+                    Object[] vs = Arrays.copyOf (leaf.ref, nk);
+                    Node     nx = leaf.next;
+                    if (! valid (leaf, v)) continue;
+                    keys = ks;
+                    vals = vs;
+                    n    = nk;
+                    pos  = 0;
+                    leaf = nx;
+                    break;
+                } // while
+            } // while
+        } // advance
+
+        public boolean hasNext ()
+        {
+            return pos < n;
+        } // hasNext
+
+        @SuppressWarnings("unchecked")
+        public Map.Entry <K, V> next ()
+        {
+            if (pos >= n) throw new NoSuchElementException ();
+            Map.Entry <K, V> e = new SimpleImmutableEntry <> ((K) keys [pos], (V) vals [pos]);
+            pos++;
+            advance ();
+            return e;
+        } // next
+    } // LeafIterator inner class
+
+} // ConcurrentBpTreeMap class
@@ -0,0 +1,185 @@
+
+/************************************************************************************
+ * @file DistinctTuples.java
+ */
+
+import java.io.*;
+import java.util.*;
+
+/************************************************************************************
+ * This class removes duplicate tuples in one pass, for the set-semantics union and
+ * project of tables.  Tuples are looked up in a TupleHashTable on all their columns
+ * and the new ones kept, until the table holds the limit of distinct tuples.  From
+ * then on (as in a hybrid hash join) a tuple not found in the table is written to
+ * one of several partition files on disk, chosen by its hash.  Once all the tuples
+ * are in, the table is dropped and each partition is read back and deduplicated in
+ * turn, partitioning again on other bits of the hash if it is still too large.  Two
+ * equal tuples always land in the same partition, so at most the limit's worth of
+ * tuples is hashed at any time.
+ */
+class DistinctTuples
+{
+    /** The default number of distinct tuples to hold in the hash table.
+     */
+    static final int DEFAULT_LIMIT = 1 << 20;
+
+    /** The number of partitions a spill is divided into (a power of two).
+     */
+    private static final int FANOUT = 16;
+
+    /** The deepest level of partitioning; a partition this deep is not spilled again.
+     */
+    private static final int MAX_LEVEL = 4;
+
+    /** The number of tuples written between resets of a spill stream, so it does not
+     *  hold on to every tuple it has written.
+     */
+    private static final int RESET = 1024;
+
+    /** The columns making up a tuple, all of which are compared.
+     */
+    private final int [] cols;
+
+    /** The number of distinct tuples the hash table may hold, and the level of
+     *  partitioning (0 for the original input).
+     */
+    private final int limit, level;
+
+    /** The distinct tuples found so far, shared with the partitions.
+     */
+    private final List <Comparable []> rows;
+
+    /** The distinct tuples held in memory.
+     */
+    private TupleHashTable seen;
+
+    /** The partition files and their streams, and the number of tuples written to
+     *  each (all null until the first spill).
+     */
+    private File []               files;
+    private ObjectOutputStream [] spill;
+    private int []                written;
+
+    /** The number of tuples written to partition files, at this level and below.
+     */
+    private long spilled = 0;
+
+    /********************************************************************************
+     * Construct an empty deduplicator for tuples of the given width.
+     * @param width   the number of columns in a tuple
+     * @param _limit  the number of distinct tuples to hold in memory before spilling
+     */
+    DistinctTuples (int width, int _limit)
+    {
+        this (allCols (width), _limit, 0, new ArrayList <> ());
+    } // constructor
+
+    /********************************************************************************
+     * Construct a deduplicator for one partition, adding to the given rows.
+     */
+    private DistinctTuples (int [] _cols, int _limit, int _level, List <Comparable []> _rows)
+    {
+        if (_limit < 1) throw new IllegalArgumentException ("DistinctTuples: limit must be positive");
+        cols  = _cols;
+        limit = _limit;
+        level = _level;
+        rows  = _rows;
+        seen  = new TupleHashTable (cols, Math.min (limit, 1024));
+    } // constructor
+
+    /********************************************************************************
+     * Add the tuple, keeping it if no equal tuple has been added before.
+     * @param tup  the tuple to add
+     */
+    void add (Comparable [] tup)
+    {
+        if (seen.find (tup, cols) != TupleHashTable.NONE) return;
+        if (seen.keys () < limit || level >= MAX_LEVEL) {
+            seen.add (tup);
+            rows.add (tup);
+        } else {
+            write (tup);
+        } // if
+    } // add
+
+    /********************************************************************************
+     * Finish adding tuples and return the distinct ones, deduplicating any partitions
+     * that were spilled.  Tuples added before the first spill come first, in order.
+     * @return  the distinct tuples
+     */
+    List <Comparable []> rows ()
+    {
+        if (spill == null) return rows;
+        seen = null;
+        try {
+            for (ObjectOutputStream oos : spill) oos.close ();
+            for (int p = 0; p < FANOUT; p++) {
+                if (written [p] > 0) {
+                    DistinctTuples part = new DistinctTuples (cols, limit, level + 1, rows);
+                    try (ObjectInputStream ois = new ObjectInputStream (new BufferedInputStream (new FileInputStream (files [p])))) {
+                        for (int i = 0; i < written [p]; i++) part.add ((Comparable []) ois.readObject ());
+                    } // try
+                    part.rows ();
+                    spilled += part.spilled;
+                } // if
+                files [p].delete ();
+            } // for
+        } catch (IOException ex) {
+            throw new UncheckedIOException (ex);
+        } catch (ClassNotFoundException ex) {
+            throw new IllegalStateException ("DistinctTuples: unreadable spill file", ex);
+        } // try
+        spill = null;
+        return rows;
+    } // rows
+
+    /********************************************************************************
+     * Return the number of tuples that were written to partition files.
+     */
+    long spilled ()
+    {
+        return spilled;
+    } // spilled
+
+    //--------------------------------------------------------------------------------
+    // Private Methods
+    //--------------------------------------------------------------------------------
+
+    /********************************************************************************
+     * Write the tuple to its partition, creating the partition files on first use.
+     * Each level takes the partition from a different group of high bits of the hash,
+     * leaving the low bits to pick slots in the partition's hash table.
+     */
+    private void write (Comparable [] tup)
+    {
+        int p = (TupleHashTable.hash (tup, cols) >>> (28 - 4 * level)) & (FANOUT - 1);
+        try {
+            if (spill == null) {
+                files   = new File [FANOUT];
+                spill   = new ObjectOutputStream [FANOUT];
+                written = new int [FANOUT];
+                for (int q = 0; q < FANOUT; q++) {
+                    files [q] = File.createTempFile ("distinct", ".spill");
+                    files [q].deleteOnExit ();
+                    spill [q] = new ObjectOutputStream (new BufferedOutputStream (new FileOutputStream (files [q])));
+                } // for
+            } // if
+            spill [p].writeUnshared (tup);
+            if (++written [p] % RESET == 0) spill [p].reset ();
+        } catch (IOException ex) {
+            throw new UncheckedIOException (ex);
+        } // try
+        spilled++;
+    } // write
+
+    /********************************************************************************
+     * Return the columns 0 through width - 1.
+     */
+    private static int [] allCols (int width)
+    {
+        int [] cols = new int [width];
+        for (int j = 0; j < width; j++) cols [j] = j;
+        return cols;
+    } // allCols
+
+} // DistinctTuples class
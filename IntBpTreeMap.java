@@ -0,0 +1,68 @@
+
+/************************************************************************************
+ * @file IntBpTreeMap.java
+ */
+
+/************************************************************************************
+ * This class provides a B+Tree map with int keys, stored in int [] node arrays.
+ */
+public class IntBpTreeMap <V>
+       extends PrimitiveBpTreeMap <V>
+{
+    /********************************************************************************
+     * Construct an empty B+Tree map with the default fanout.
+     */
+    public IntBpTreeMap ()
+    {
+        this (BpTreeMap.DEFAULT_ORDER);
+    } // constructor
+
+    /********************************************************************************
+     * Construct an empty B+Tree map with the given maximum fanout.
+     * @param _order  the maximum fanout for a node
+     */
+    public IntBpTreeMap (int _order)
+    {
+        super (_order);
+    } // constructor
+
+    protected Object newKeys (int n)
+    {
+        return new int [n];
+    } // newKeys
+
+    protected long keyAt (Object keys, int i)
+    {
+        return ((int []) keys) [i];
+    } // keyAt
+
+    protected void setKey (Object keys, int i, long k)
+    {
+        ((int []) keys) [i] = (int) k;
+    } // setKey
+
+    protected int search (Object keys, int nKeys, long k)
+    {
+        if (k < Integer.MIN_VALUE) return -1;
+        if (k > Integer.MAX_VALUE) return -nKeys - 1;
+        int [] a   = (int []) keys;
+        int    key = (int) k;
+        int    lo  = 0, hi = nKeys - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int m   = a [mid];
+            if      (m < key) lo = mid + 1;
+            else if (m > key) hi = mid - 1;
+            else              return mid;
+        } // while
+        return -lo - 1;
+    } // search
+
+    protected void checkKey (long k)
+    {
+        if (k < Integer.MIN_VALUE || k > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException ("IntBpTreeMap: key " + k + " is out of int range");
+        } // if
+    } // checkKey
+
+} // IntBpTreeMap class
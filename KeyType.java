@@ -14,10 +14,49 @@ import static java.lang.System.out;
 /*****************************************************************************************
  * The KeyType class provides a key type for handling both non-composite and composite keys.
  * A key is a minimal set of attributes that can be used to uniquely identify a tuple.
+ * The MIN and MAX components sort below and above every value, so the keys (v, MIN) and
+ * (v, MAX) bound all the composite keys starting with v.
  */
 public class KeyType
        implements Comparable <KeyType>, Serializable
 {
+    /** A key component that sorts below every attribute value.
+     */
+    public static final Comparable MIN = new Bound (-1);
+
+    /** A key component that sorts above every attribute value.
+     */
+    public static final Comparable MAX = new Bound (1);
+
+    /*************************************************************************************
+     * This nested class provides the MIN and MAX components.
+     */
+    private static final class Bound
+            implements Comparable <Object>, Serializable
+    {
+        private final int sign;
+
+        Bound (int _sign)
+        {
+            sign = _sign;
+        } // constructor
+
+        public int compareTo (Object o)
+        {
+            return (o == this) ? 0 : sign;
+        } // compareTo
+
+        public String toString ()
+        {
+            return (sign < 0) ? "MIN" : "MAX";
+        } // toString
+
+        private Object readResolve ()
+        {
+            return (sign < 0) ? MIN : MAX;
+        } // readResolve
+    } // Bound class
+
     /** Array holding the attribute values for a particular key
      */
     private final Comparable [] key;
@@ -42,19 +81,41 @@ public class KeyType
          for (int i = 1; i < key.length; i++) key [i] = keys [i-1];
     } // constructor
 
+    /*************************************************************************************
+     * Return the number of attribute values in the key.
+     */
+    public int length ()
+    {
+        return key.length;
+    } // length
+
+    /*************************************************************************************
+     * Return the i-th attribute value of the key.
+     * @param i  the position of the attribute value
+     */
+    public Comparable get (int i)
+    {
+        return key [i];
+    } // get
+
     /*************************************************************************************
      * Compare two keys (negative => less than, zero => equals, positive => greater than).
+     * Keys are compared attribute by attribute, a MIN or MAX component against a value
+     * without calling the value's compareTo; a key that is a prefix of the other is less.
      * @param k  the other key (to compare with this)
      * @return  resultant integer that's negative, zero or positive
      */
     @SuppressWarnings("unchecked")
     public int compareTo (KeyType k)
     {
-        for (int i = 0; i < key.length; i++) {
-            if (key [i].compareTo (k.key [i]) < 0) return -1;
-            if (key [i].compareTo (k.key [i]) > 0) return 1;
+        int n = Math.min (key.length, k.key.length);
+        for (int i = 0; i < n; i++) {
+            Comparable other = k.key [i];
+            int cmp = (other instanceof Bound && key [i] != other) ? -((Bound) other).sign
+                                                                    : key [i].compareTo (other);
+            if (cmp != 0) return (cmp < 0) ? -1 : 1;
         } // for
-        return 0;
+        return Integer.compare (key.length, k.key.length);
     } // compareTo
 
     /*************************************************************************************
@@ -0,0 +1,63 @@
+
+/************************************************************************************
+ * @file LongBpTreeMap.java
+ */
+
+/************************************************************************************
+ * This class provides a B+Tree map with long keys, stored in long [] node arrays.
+ */
+public class LongBpTreeMap <V>
+       extends PrimitiveBpTreeMap <V>
+{
+    /********************************************************************************
+     * Construct an empty B+Tree map with the default fanout.
+     */
+    public LongBpTreeMap ()
+    {
+        this (BpTreeMap.DEFAULT_ORDER);
+    } // constructor
+
+    /********************************************************************************
+     * Construct an empty B+Tree map with the given maximum fanout.
+     * @param _order  the maximum fanout for a node
+     */
+    public LongBpTreeMap (int _order)
+    {
+        super (_order);
+    } // constructor
+
+    protected Object newKeys (int n)
+    {
+        return new long [n];
+    } // newKeys
+
+    protected long keyAt (Object keys, int i)
+    {
+        return ((long []) keys) [i];
+    } // keyAt
+
+    protected void setKey (Object keys, int i, long k)
+    {
+        ((long []) keys) [i] = k;
+    } // setKey
+
+    protected int search (Object keys, int nKeys, long k)
+    {
+        long [] a  = (long []) keys;
+        int     lo = 0, hi = nKeys - 1;
+        while (lo <= hi) {
+            int  mid = (lo + hi) >>> 1;
+            long m   = a [mid];
+            if      (m < k) lo = mid + 1;
+            else if (m > k) hi = mid - 1;
+            else            return mid;
+        } // while
+        return -lo - 1;
+    } // search
+
+    protected void checkKey (long k)
+    {
+        // every long fits
+    } // checkKey
+
+} // LongBpTreeMap class
@@ -0,0 +1,291 @@
+
+/************************************************************************************
+ * @file MultiBpTreeMap.java
+ */
+
+import java.util.*;
+import java.util.function.IntUnaryOperator;
+
+/************************************************************************************
+ * This class provides a B+Tree map in which a key may have many values, for indexing
+ * attributes that are not keys.  The values are int ids (positions of tuples in a
+ * table) and each key keeps them in a posting list: a sorted int array grown by
+ * doubling, so an id costs four bytes rather than a reference and a boxed object.
+ * The keys are held in a BpTreeMap from key to posting list.
+ */
+public class MultiBpTreeMap <K extends Comparable <K>>
+{
+    private static final int [] NO_IDS = new int [0];
+
+    /********************************************************************************
+     * This nested class holds the ids for one key in ascending order.  The array may
+     * have spare room at its end.
+     */
+    public static class PostingList
+    {
+        private int [] ids;
+        private int    size;
+
+        PostingList (int [] _ids, int _size)
+        {
+            ids  = _ids;
+            size = _size;
+        } // constructor
+
+        /** Return the number of ids in the list.
+         */
+        public int size ()
+        {
+            return size;
+        } // size
+
+        /** Return the i-th smallest id in the list.
+         */
+        public int get (int i)
+        {
+            if (i >= size) throw new IndexOutOfBoundsException ("PostingList: " + i + " >= " + size);
+            return ids [i];
+        } // get
+
+        /** Return a copy of the ids in ascending order.
+         */
+        public int [] toArray ()
+        {
+            return Arrays.copyOf (ids, size);
+        } // toArray
+
+        /** Add the id, keeping the list sorted.  Ids normally arrive in ascending
+         *  order, so this is usually an append.
+         *  @return  whether the id was not already in the list
+         */
+        boolean add (int id)
+        {
+            int i = (size == 0 || ids [size - 1] < id) ? -size - 1 : Arrays.binarySearch (ids, 0, size, id);
+            if (i >= 0) return false;
+            i = -i - 1;
+            if (size == ids.length) ids = Arrays.copyOf (ids, Math.max (2, 2 * size));
+            System.arraycopy (ids, i, ids, i + 1, size - i);
+            ids [i] = id;
+            size++;
+            return true;
+        } // add
+
+        /** Remove the id from the list.
+         *  @return  whether the id was in the list
+         */
+        boolean remove (int id)
+        {
+            int i = Arrays.binarySearch (ids, 0, size, id);
+            if (i < 0) return false;
+            System.arraycopy (ids, i + 1, ids, i, size - i - 1);
+            size--;
+            return true;
+        } // remove
+
+        public String toString ()
+        {
+            return Arrays.toString (toArray ());
+        } // toString
+    } // PostingList class
+
+    /** The posting list for each key.
+     */
+    private final BpTreeMap <K, PostingList> map;
+
+    /** The number of (key, id) pairs in the map.
+     */
+    private int size = 0;
+
+    /********************************************************************************
+     * Construct an empty multi-valued B+Tree map.
+     * @param classK  the class for keys (K)
+     */
+    public MultiBpTreeMap (Class <K> classK)
+    {
+        this (classK, BpTreeMap.DEFAULT_ORDER);
+    } // constructor
+
+    /********************************************************************************
+     * Construct an empty multi-valued B+Tree map with the given maximum fanout.
+     * @param classK  the class for keys (K)
+     * @param order   the maximum fanout for a node
+     */
+    public MultiBpTreeMap (Class <K> classK, int order)
+    {
+        map = new BpTreeMap <> (classK, PostingList.class, order);
+    } // constructor
+
+    //--------------------------------------------------------------------------------
+    // Public Methods
+    //--------------------------------------------------------------------------------
+
+    /********************************************************************************
+     * Add the id to the posting list for the key.
+     * @param key  the key
+     * @param id   the id to add
+     * @return  whether the pair was not already in the map
+     */
+    public boolean add (K key, int id)
+    {
+        PostingList list = map.get (key);
+        if (list == null) {
+            map.put (key, new PostingList (new int [] { id }, 1));
+        } else if (! list.add (id)) {
+            return false;
+        } // if
+        size++;
+        return true;
+    } // add
+
+    /********************************************************************************
+     * Remove the id from the posting list for the key, and the key once its list is
+     * empty.
+     * @param key  the key
+     * @param id   the id to remove
+     * @return  whether the pair was in the map
+     */
+    public boolean remove (K key, int id)
+    {
+        PostingList list = map.get (key);
+        if (list == null || ! list.remove (id)) return false;
+        if (list.size () == 0) map.remove (key);
+        size--;
+        return true;
+    } // remove
+
+    /********************************************************************************
+     * Return the ids for the key in ascending order.
+     * @param key  the key to look up
+     * @return  the ids (an empty array if the key is absent)
+     */
+    public int [] getAll (K key)
+    {
+        PostingList list = map.get (key);
+        return (list == null) ? NO_IDS : list.toArray ();
+    } // getAll
+
+    /********************************************************************************
+     * Return the number of ids for the key.
+     * @param key  the key to look up
+     */
+    public int count (K key)
+    {
+        PostingList list = map.get (key);
+        return (list == null) ? 0 : list.size ();
+    } // count
+
+    /********************************************************************************
+     * Return the ids for all the keys in a range, by key and then in ascending order.
+     * The B+Tree seeks to the lower bound and walks the leaves up to the upper bound.
+     * @param lo           the lower bound (null for none)
+     * @param loInclusive  whether lo itself is in the range
+     * @param hi           the upper bound (null for none)
+     * @param hiInclusive  whether hi itself is in the range
+     * @return  the ids of the matching keys
+     */
+    public int [] getAll (K lo, boolean loInclusive, K hi, boolean hiInclusive)
+    {
+        int [] ids = NO_IDS;
+        int    n   = 0;
+        for (PostingList list : postings (lo, loInclusive, hi, hiInclusive).values ()) {
+            if (n + list.size > ids.length) ids = Arrays.copyOf (ids, Math.max (n + list.size, 2 * ids.length));
+            System.arraycopy (list.ids, 0, ids, n, list.size);
+            n += list.size;
+        } // for
+        return (n == ids.length) ? ids : Arrays.copyOf (ids, n);
+    } // getAll
+
+    /********************************************************************************
+     * Return a live view of the posting lists for the keys in a range, in key order.
+     * @param lo           the lower bound (null for none)
+     * @param loInclusive  whether lo itself is in the range
+     * @param hi           the upper bound (null for none)
+     * @param hiInclusive  whether hi itself is in the range
+     * @return  the view from keys to posting lists
+     */
+    public SortedMap <K, PostingList> postings (K lo, boolean loInclusive, K hi, boolean hiInclusive)
+    {
+        return map.subMap (lo, loInclusive, hi, hiInclusive);
+    } // postings
+
+    /********************************************************************************
+     * Return the number of (key, id) pairs in the map.
+     */
+    public int size ()
+    {
+        return size;
+    } // size
+
+    /********************************************************************************
+     * Return the number of distinct keys in the map.
+     */
+    public int keys ()
+    {
+        return map.size ();
+    } // keys
+
+    /********************************************************************************
+     * Remove all the pairs from the map.
+     */
+    public void clear ()
+    {
+        map.clear ();
+        size = 0;
+    } // clear
+
+    /********************************************************************************
+     * Replace each id with newId applied to it, dropping the ids it maps to a negative
+     * number and the keys left with none, in one pass over the posting lists.  A
+     * table calls this after removing tuples, which moves the later ones up.
+     * @param newId  the new id for each id, which must keep the order of those kept
+     */
+    public void renumber (IntUnaryOperator newId)
+    {
+        List <K> emptied = new ArrayList <> ();
+        for (Map.Entry <K, PostingList> e : map.entrySet ()) {
+            PostingList list = e.getValue ();
+            int         n    = 0;
+            for (int i = 0; i < list.size; i++) {
+                int id = newId.applyAsInt (list.ids [i]);
+                if (id >= 0) list.ids [n++] = id;
+            } // for
+            size     -= list.size - n;
+            list.size = n;
+            if (n == 0) emptied.add (e.getKey ());
+        } // for
+        for (K key : emptied) map.remove (key);
+    } // renumber
+
+    /********************************************************************************
+     * Replace the contents of the map with (key, id) pairs given in ascending order of
+     * key and then id.  Each posting list is allocated at its exact size and the keys
+     * are bulk loaded into the B+Tree.
+     * @param sorted  the pairs in ascending order
+     * @throws IllegalArgumentException if the pairs are out of order
+     */
+    public void bulkLoad (Iterator <? extends Map.Entry <K, Integer>> sorted)
+    {
+        List <Map.Entry <K, PostingList>> lists = new ArrayList <> ();
+        int [] ids   = new int [16];
+        int    n     = 0, total = 0;
+        K      key   = null;
+        while (true) {
+            Map.Entry <K, Integer> e = sorted.hasNext () ? sorted.next () : null;
+            if (key != null && (e == null || e.getKey ().compareTo (key) != 0)) {
+                lists.add (new AbstractMap.SimpleEntry <> (key, new PostingList (Arrays.copyOf (ids, n), n)));
+                total += n;
+                n = 0;
+            } // if
+            if (e == null) break;
+            if (n > 0 && ids [n - 1] >= e.getValue ()) {
+                throw new IllegalArgumentException ("bulkLoad: ids not in ascending order for " + e.getKey ());
+            } // if
+            if (n == ids.length) ids = Arrays.copyOf (ids, 2 * n);
+            ids [n++] = e.getValue ();
+            key = e.getKey ();
+        } // while
+        map.bulkLoad (lists.iterator (), 1.0);
+        size = total;
+    } // bulkLoad
+
+} // MultiBpTreeMap class
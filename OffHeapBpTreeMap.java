@@ -0,0 +1,1204 @@
+
+/************************************************************************************
+ * @file OffHeapBpTreeMap.java
+ */
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.function.BiFunction;
+
+/************************************************************************************
+ * This class provides a B+Tree map whose nodes live outside the Java heap.  Each node
+ * is a fixed-size slot in a direct ByteBuffer, so a tree of millions of keys is a
+ * handful of buffers rather than millions of small objects for the garbage collector
+ * to trace.  Keys are stored in a fixed-width, order-preserving byte form given by a
+ * KeyCodec, so nodes are searched by comparing bytes without decoding any keys.
+ * Values are tuple ids (non-negative ints).  As in BpTreeMap, the upper bound of
+ * headMap and subMap is inclusive.  Subclasses may keep the slots elsewhere by
+ * supplying their own SlotStore (see PagedBpTreeMap).
+ */
+public class OffHeapBpTreeMap <K extends Comparable <K>>
+       extends AbstractMap <K, Integer>
+       implements SortedMap <K, Integer>
+{
+    /********************************************************************************
+     * This interface converts keys to and from a fixed-width byte form whose unsigned
+     * lexicographic order is the keys' natural order.
+     */
+    public interface KeyCodec <K>
+    {
+        /** Return the number of bytes each key takes.
+         */
+        int width ();
+
+        /** Write the key into dst starting at position off.
+         */
+        void encode (K key, byte [] dst, int off);
+
+        /** Read a key back from src starting at position off.
+         */
+        K decode (byte [] src, int off);
+    } // KeyCodec interface
+
+    /** Codec for Integer keys (sign bit flipped, big-endian).
+     */
+    public static final KeyCodec <Integer> INT_KEYS = new KeyCodec <Integer> () {
+        public int width () { return 4; }
+        public void encode (Integer key, byte [] dst, int off)
+        {
+            ByteBuffer.wrap (dst).putInt (off, key ^ Integer.MIN_VALUE);
+        } // encode
+        public Integer decode (byte [] src, int off)
+        {
+            return ByteBuffer.wrap (src).getInt (off) ^ Integer.MIN_VALUE;
+        } // decode
+    };
+
+    /** Codec for Long keys (sign bit flipped, big-endian).
+     */
+    public static final KeyCodec <Long> LONG_KEYS = new KeyCodec <Long> () {
+        public int width () { return 8; }
+        public void encode (Long key, byte [] dst, int off)
+        {
+            ByteBuffer.wrap (dst).putLong (off, key ^ Long.MIN_VALUE);
+        } // encode
+        public Long decode (byte [] src, int off)
+        {
+            return ByteBuffer.wrap (src).getLong (off) ^ Long.MIN_VALUE;
+        } // decode
+    };
+
+    /** Codec for Double keys (all bits flipped for negatives, sign bit otherwise).
+     */
+    public static final KeyCodec <Double> DOUBLE_KEYS = new KeyCodec <Double> () {
+        public int width () { return 8; }
+        public void encode (Double key, byte [] dst, int off)
+        {
+            long bits = Double.doubleToLongBits (key);
+            ByteBuffer.wrap (dst).putLong (off, bits ^ ((bits < 0) ? -1L : Long.MIN_VALUE));
+        } // encode
+        public Double decode (byte [] src, int off)
+        {
+            long bits = ByteBuffer.wrap (src).getLong (off);
+            return Double.longBitsToDouble (bits ^ ((bits < 0) ? Long.MIN_VALUE : -1L));
+        } // decode
+    };
+
+    /********************************************************************************
+     * Return a codec for String keys of at most maxChars characters, stored as UTF-16
+     * code units padded with zeros (so keys may not contain the character '\0').
+     * @param maxChars  the longest key allowed
+     */
+    public static KeyCodec <String> stringKeys (int maxChars)
+    {
+        return new KeyCodec <String> () {
+            public int width () { return 2 * maxChars; }
+            public void encode (String key, byte [] dst, int off)
+            {
+                if (key.length () > maxChars || key.indexOf ('\0') >= 0) {
+                    throw new IllegalArgumentException ("stringKeys: key does not fit " + maxChars + " chars: " + key);
+                } // if
+                for (int j = 0; j < maxChars; j++) {
+                    char c = (j < key.length ()) ? key.charAt (j) : '\0';
+                    dst [off + 2 * j]     = (byte) (c >>> 8);
+                    dst [off + 2 * j + 1] = (byte) c;
+                } // for
+            } // encode
+            public String decode (byte [] src, int off)
+            {
+                StringBuilder sb = new StringBuilder (maxChars);
+                for (int j = 0; j < maxChars; j++) {
+                    char c = (char) (((src [off + 2 * j] & 0xff) << 8) | (src [off + 2 * j + 1] & 0xff));
+                    if (c == '\0') break;
+                    sb.append (c);
+                } // for
+                return sb.toString ();
+            } // decode
+        };
+    } // stringKeys
+
+    /********************************************************************************
+     * Return a codec for composite KeyTypes, encoding each attribute value in turn
+     * with the codec for its position.
+     * @param parts  the codec for each attribute of the key
+     */
+    @SuppressWarnings("unchecked")
+    public static KeyCodec <KeyType> keyTypeKeys (KeyCodec <?> ... parts)
+    {
+        int total = 0;
+        for (KeyCodec <?> part : parts) total += part.width ();
+        int width = total;
+        return new KeyCodec <KeyType> () {
+            public int width () { return width; }
+            public void encode (KeyType key, byte [] dst, int off)
+            {
+                if (key.length () != parts.length) {
+                    throw new IllegalArgumentException ("keyTypeKeys: expected " + parts.length + " attributes in " + key);
+                } // if
+                for (int j = 0; j < parts.length; j++) {
+                    Comparable v = key.get (j);
+                    if (v == KeyType.MIN || v == KeyType.MAX) {
+                        // The lowest and highest encodings, as unsigned bytes
+                        Arrays.fill (dst, off, off + parts [j].width (), (v == KeyType.MIN) ? (byte) 0 : (byte) -1);
+                    } else {
+                        ((KeyCodec <Comparable>) parts [j]).encode (v, dst, off);
+                    } // if
+                    off += parts [j].width ();
+                } // for
+            } // encode
+            public KeyType decode (byte [] src, int off)
+            {
+                Comparable [] vals = new Comparable [parts.length];
+                for (int j = 0; j < parts.length; j++) {
+                    vals [j] = (Comparable) parts [j].decode (src, off);
+                    off += parts [j].width ();
+                } // for
+                return new KeyType (vals);
+            } // decode
+        };
+    } // keyTypeKeys
+
+    /********************************************************************************
+     * Return a codec for KeyTypes whose attributes have the given domains (Integer,
+     * Long, Double or String, the latter limited to maxChars characters).
+     * @param domains   the class of each attribute of the key
+     * @param maxChars  the longest String attribute allowed
+     * @throws IllegalArgumentException if a domain has no fixed-width codec
+     */
+    public static KeyCodec <KeyType> keyTypeKeys (Class [] domains, int maxChars)
+    {
+        KeyCodec <?> [] parts = new KeyCodec <?> [domains.length];
+        for (int j = 0; j < domains.length; j++) {
+            if      (domains [j] == Integer.class) parts [j] = INT_KEYS;
+            else if (domains [j] == Long.class)    parts [j] = LONG_KEYS;
+            else if (domains [j] == Double.class)  parts [j] = DOUBLE_KEYS;
+            else if (domains [j] == String.class)  parts [j] = stringKeys (maxChars);
+            else throw new IllegalArgumentException ("keyTypeKeys: no fixed-width codec for " + domains [j]);
+        } // for
+        return keyTypeKeys (parts);
+    } // keyTypeKeys
+
+    /********************************************************************************
+     * This interface locates the fixed-size slots that nodes are stored in.  A buffer
+     * returned by buffer is only used until the next call, so a store may page slots
+     * in and out behind it.
+     */
+    public interface SlotStore
+    {
+        /** Return the buffer holding slot id (creating the slot if it is new).
+         */
+        ByteBuffer buffer (int id);
+
+        /** Return the offset of slot id in its buffer.
+         */
+        int offset (int id);
+
+        /** Note that slot id has been changed.
+         */
+        void written (int id);
+
+        /** Discard all the slots.
+         */
+        void clear ();
+
+        /** Return the number of bytes of memory held for slots.
+         */
+        long bytes ();
+    } // SlotStore interface
+
+    /********************************************************************************
+     * This inner class carves slots out of direct buffers of CHUNK_BYTES each.
+     */
+    private static class DirectSlots
+            implements SlotStore
+    {
+        private final int               slotSize, slotsPerChunk;
+        private final List <ByteBuffer> chunks = new ArrayList <> ();
+
+        DirectSlots (int _slotSize)
+        {
+            slotSize      = _slotSize;
+            slotsPerChunk = Math.max (1, CHUNK_BYTES / slotSize);
+        } // constructor
+
+        public ByteBuffer buffer (int id)
+        {
+            int c = id / slotsPerChunk;
+            while (c >= chunks.size ()) chunks.add (ByteBuffer.allocateDirect (slotsPerChunk * slotSize));
+            return chunks.get (c);
+        } // buffer
+
+        public int offset (int id)
+        {
+            return (id % slotsPerChunk) * slotSize;
+        } // offset
+
+        public void written (int id) { }
+
+        public void clear ()
+        {
+            chunks.clear ();
+        } // clear
+
+        public long bytes ()
+        {
+            return (long) chunks.size () * slotsPerChunk * slotSize;
+        } // bytes
+    } // DirectSlots inner class
+
+    /** Byte offsets of the fields in a node slot: leaf flag, key count, next leaf,
+     *  then order - 1 keys and order refs (tuple ids in leaves, node ids otherwise).
+     */
+    private static final int LEAF = 0, NKEYS = 4, NEXT = 8, KEYS = 12;
+
+    /** The node id standing for no node.
+     */
+    private static final int NIL = -1;
+
+    /** The size of each direct buffer that node slots are carved from.
+     */
+    private static final int CHUNK_BYTES = 1 << 20;
+
+    /** The maximum fanout for a B+Tree node.
+     */
+    private final int order;
+
+    /** The codec for keys and the number of bytes in each encoded key.
+     */
+    private final KeyCodec <K> codec;
+    private final int          width;
+
+    /** The layout of a node slot.
+     */
+    private final int refsAt;
+
+    /** Where the node slots are kept.
+     */
+    private final SlotStore store;
+
+    /** The number of slots handed out so far, and the first of the freed ones (which
+     *  are chained through their next fields).
+     */
+    private int slots    = 0;
+    private int freeHead = NIL;
+
+    /** The id of the root node, the number of entries and the number of levels.
+     */
+    private int root;
+    private int size   = 0;
+    private int height = 1;
+
+    /** The number of structural changes, for fail-fast iteration.
+     */
+    private transient int modCount = 0;
+
+    /********************************************************************************
+     * This inner class holds a copy of one node on the heap while it is being changed.
+     * It has room for one key (and ref) more than a node, so an insert can be made
+     * before the node is split.
+     */
+    private final class Page
+    {
+        final int    id;
+        boolean      leaf;
+        int          nKeys;
+        int          next = NIL;
+        final byte[] key  = new byte [order * width];
+        final int[]  ref  = new int [order + 1];
+
+        Page (int _id, boolean _leaf)
+        {
+            id   = _id;
+            leaf = _leaf;
+        } // constructor
+
+        /** Wedge the key-ref pair in at position i.
+         */
+        void wedge (int i, byte [] k, int r)
+        {
+            System.arraycopy (key, i * width, key, (i + 1) * width, (nKeys - i) * width);
+            System.arraycopy (k, 0, key, i * width, width);
+            int j = leaf ? i : i + 1;
+            System.arraycopy (ref, j, ref, j + 1, (leaf ? nKeys : nKeys + 1) - j);
+            ref [j] = r;
+            nKeys++;
+        } // wedge
+
+        /** Remove the key at position i with the ref at position i (leaves) or i + 1.
+         */
+        void removeAt (int i)
+        {
+            System.arraycopy (key, (i + 1) * width, key, i * width, (nKeys - i - 1) * width);
+            int j = leaf ? i : i + 1;
+            System.arraycopy (ref, j + 1, ref, j, (leaf ? nKeys : nKeys + 1) - j - 1);
+            nKeys--;
+        } // removeAt
+
+        /** Return a copy of the key at position i.
+         */
+        byte [] keyAt (int i)
+        {
+            return Arrays.copyOfRange (key, i * width, (i + 1) * width);
+        } // keyAt
+
+        /** Overwrite the key at position i.
+         */
+        void setKey (int i, byte [] k)
+        {
+            System.arraycopy (k, 0, key, i * width, width);
+        } // setKey
+    } // Page inner class
+
+    /********************************************************************************
+     * This inner class iterates over the entries of a key range by walking the leaf
+     * chain in the buffers.
+     */
+    private class EntryIterator
+            implements Iterator <Map.Entry <K, Integer>>
+    {
+        private int           leaf, pos;
+        private final byte [] hi;
+        private final boolean hiInclusive;
+        private int           expectedModCount = modCount;
+
+        EntryIterator (byte [] lo, boolean loInclusive, byte [] _hi, boolean _hiInclusive)
+        {
+            hi          = _hi;
+            hiInclusive = _hiInclusive;
+            if (lo == null) {
+                leaf = root;
+                while (! isLeaf (leaf)) leaf = ref (leaf, 0);
+                pos = 0;
+            } else {
+                leaf = findLeaf (lo);
+                int i = search (leaf, lo);
+                pos = (i >= 0) ? (loInclusive ? i : i + 1) : -i - 1;
+            } // if
+            advance ();
+        } // constructor
+
+        /** Skip over exhausted (or empty) leaves and stop after the upper bound.
+         */
+        private void advance ()
+        {
+            while (leaf != NIL && pos >= nKeys (leaf)) {
+                leaf = nextLeaf (leaf);
+                pos  = 0;
+            } // while
+            if (leaf != NIL && hi != null) {
+                int c = compare (leaf, pos, hi);
+                if (c > 0 || (c == 0 && ! hiInclusive)) leaf = NIL;
+            } // if
+        } // advance
+
+        public boolean hasNext ()
+        {
+            return leaf != NIL;
+        } // hasNext
+
+        public Map.Entry <K, Integer> next ()
+        {
+            if (leaf == NIL) throw new NoSuchElementException ();
+            if (modCount != expectedModCount) throw new ConcurrentModificationException ();
+            Map.Entry <K, Integer> e = new SimpleImmutableEntry <> (keyOf (leaf, pos), ref (leaf, refsAt (pos)));
+            pos++;
+            advance ();
+            return e;
+        } // next
+    } // EntryIterator inner class
+
+    /********************************************************************************
+     * This inner class provides a live view of the entries in a key range.  A null
+     * bound leaves that side of the range open.
+     */
+    private class RangeView
+            extends AbstractMap <K, Integer>
+            implements SortedMap <K, Integer>
+    {
+        private final K       lo, hi;
+        private final byte [] loBytes, hiBytes;
+        private final boolean loInclusive, hiInclusive;
+
+        RangeView (K _lo, boolean _loInclusive, K _hi, boolean _hiInclusive)
+        {
+            lo          = _lo;
+            hi          = _hi;
+            loBytes     = (_lo == null) ? null : encode (_lo);
+            hiBytes     = (_hi == null) ? null : encode (_hi);
+            loInclusive = _loInclusive;
+            hiInclusive = _hiInclusive;
+        } // constructor
+
+        boolean inRange (byte [] k)
+        {
+            if (loBytes != null) {
+                int c = Arrays.compareUnsigned (k, loBytes);
+                if (c < 0 || (c == 0 && ! loInclusive)) return false;
+            } // if
+            if (hiBytes != null) {
+                int c = Arrays.compareUnsigned (k, hiBytes);
+                if (c > 0 || (c == 0 && ! hiInclusive)) return false;
+            } // if
+            return true;
+        } // inRange
+
+        public Set <Map.Entry <K, Integer>> entrySet ()
+        {
+            return new AbstractSet <Map.Entry <K, Integer>> () {
+                public Iterator <Map.Entry <K, Integer>> iterator ()
+                {
+                    return new EntryIterator (loBytes, loInclusive, hiBytes, hiInclusive);
+                } // iterator
+                public int size ()
+                {
+                    return RangeView.this.size ();
+                } // size
+            };
+        } // entrySet
+
+        public int size ()
+        {
+            if (loBytes == null && hiBytes == null) return OffHeapBpTreeMap.this.size;
+            int n = 0;
+            for (Iterator <?> it = new EntryIterator (loBytes, loInclusive, hiBytes, hiInclusive); it.hasNext (); it.next ()) n++;
+            return n;
+        } // size
+
+        public boolean isEmpty ()
+        {
+            return ! new EntryIterator (loBytes, loInclusive, hiBytes, hiInclusive).hasNext ();
+        } // isEmpty
+
+        @SuppressWarnings("unchecked")
+        public Integer get (Object key)
+        {
+            byte [] k = encode ((K) key);
+            return inRange (k) ? lookup (k) : null;
+        } // get
+
+        public boolean containsKey (Object key)
+        {
+            return get (key) != null;
+        } // containsKey
+
+        public Integer put (K key, Integer value)
+        {
+            byte [] k = encode (key);
+            if (! inRange (k)) throw new IllegalArgumentException ("put: key out of range " + key);
+            return insert (k, value, true);
+        } // put
+
+        @SuppressWarnings("unchecked")
+        public Integer remove (Object key)
+        {
+            byte [] k = encode ((K) key);
+            return inRange (k) ? delete (k) : null;
+        } // remove
+
+        public Comparator <? super K> comparator ()
+        {
+            return null;
+        } // comparator
+
+        public K firstKey ()
+        {
+            Iterator <Map.Entry <K, Integer>> it = new EntryIterator (loBytes, loInclusive, hiBytes, hiInclusive);
+            if (! it.hasNext ()) throw new NoSuchElementException ();
+            return it.next ().getKey ();
+        } // firstKey
+
+        public K lastKey ()
+        {
+            byte [] k = lastBelow (hiBytes, hiInclusive);
+            if (k == null || ! inRange (k)) throw new NoSuchElementException ();
+            return codec.decode (k, 0);
+        } // lastKey
+
+        public SortedMap <K, Integer> headMap (K toKey)
+        {
+            return subView (lo, loInclusive, toKey, true);
+        } // headMap
+
+        public SortedMap <K, Integer> tailMap (K fromKey)
+        {
+            return subView (fromKey, true, hi, hiInclusive);
+        } // tailMap
+
+        public SortedMap <K, Integer> subMap (K fromKey, K toKey)
+        {
+            return subView (fromKey, true, toKey, true);
+        } // subMap
+
+        /** Return a view of the intersection of this range with the given one.
+         */
+        RangeView subView (K _lo, boolean _loInclusive, K _hi, boolean _hiInclusive)
+        {
+            if (lo != null && (_lo == null || _lo.compareTo (lo) < 0)) {
+                _lo = lo; _loInclusive = loInclusive;
+            } else if (lo != null && _lo.compareTo (lo) == 0) {
+                _loInclusive &= loInclusive;
+            } // if
+            if (hi != null && (_hi == null || _hi.compareTo (hi) > 0)) {
+                _hi = hi; _hiInclusive = hiInclusive;
+            } else if (hi != null && _hi.compareTo (hi) == 0) {
+                _hiInclusive &= hiInclusive;
+            } // if
+            return new RangeView (_lo, _loInclusive, _hi, _hiInclusive);
+        } // subView
+    } // RangeView inner class
+
+    /********************************************************************************
+     * Construct an empty off-heap B+Tree map with the default fanout.
+     * @param _codec  the fixed-width encoding of the keys
+     */
+    public OffHeapBpTreeMap (KeyCodec <K> _codec)
+    {
+        this (_codec, BpTreeMap.DEFAULT_ORDER);
+    } // constructor
+
+    /********************************************************************************
+     * Construct an empty off-heap B+Tree map with the given maximum fanout.
+     * @param _codec  the fixed-width encoding of the keys
+     * @param _order  the maximum fanout for a node (at least BpTreeMap.MIN_ORDER)
+     */
+    public OffHeapBpTreeMap (KeyCodec <K> _codec, int _order)
+    {
+        this (_codec, _order, new DirectSlots (slotSize (_codec.width (), _order)), null);
+    } // constructor
+
+    /********************************************************************************
+     * Construct a B+Tree map over the slots of the given store, either empty or, for
+     * a store that was saved, picking up the tree it holds.
+     * @param _codec  the fixed-width encoding of the keys
+     * @param _order  the maximum fanout for a node (at least BpTreeMap.MIN_ORDER)
+     * @param _store  where the node slots are kept
+     * @param state   the saved state of the tree (see state), or null for a new tree
+     */
+    protected OffHeapBpTreeMap (KeyCodec <K> _codec, int _order, SlotStore _store, int [] state)
+    {
+        if (_order < BpTreeMap.MIN_ORDER) {
+            throw new IllegalArgumentException ("OffHeapBpTreeMap: order must be at least " + BpTreeMap.MIN_ORDER);
+        } // if
+        order    = _order;
+        codec    = _codec;
+        width    = _codec.width ();
+        refsAt   = KEYS + (order - 1) * width;
+        store    = _store;
+        if (state == null) {
+            root = newNode (true);
+        } else {
+            root     = state [0];
+            size     = state [1];
+            height   = state [2];
+            slots    = state [3];
+            freeHead = state [4];
+        } // if
+    } // constructor
+
+    //--------------------------------------------------------------------------------
+    // Public Methods
+    //--------------------------------------------------------------------------------
+
+    /********************************************************************************
+     * Return a set view of the entries in ascending key order.
+     */
+    public Set <Map.Entry <K, Integer>> entrySet ()
+    {
+        return new RangeView (null, false, null, false).entrySet ();
+    } // entrySet
+
+    /********************************************************************************
+     * Given the key, look up its tuple id.
+     * @param key  the key used for look up
+     * @return  the tuple id, or null if the key is not present
+     */
+    @SuppressWarnings("unchecked")
+    public Integer get (Object key)
+    {
+        return lookup (encode ((K) key));
+    } // get
+
+    /********************************************************************************
+     * Determine whether the key is present.
+     * @param key  the key to look for
+     */
+    public boolean containsKey (Object key)
+    {
+        return get (key) != null;
+    } // containsKey
+
+    /********************************************************************************
+     * Put the key and tuple id in the map, replacing the id of an existing key.
+     * @param key    the key to insert
+     * @param value  the tuple id (non-negative)
+     * @return  the previous tuple id for the key, or null if there was none
+     */
+    public Integer put (K key, Integer value)
+    {
+        return insert (encode (key), value, true);
+    } // put
+
+    /********************************************************************************
+     * Put the key and tuple id in the map unless the key already has one.
+     * @return  the current tuple id for the key, or null if the pair was inserted
+     */
+    public Integer putIfAbsent (K key, Integer value)
+    {
+        return insert (encode (key), value, false);
+    } // putIfAbsent
+
+    /********************************************************************************
+     * Remove the key and its tuple id, borrowing from or merging with a sibling when
+     * a node is left less than half full.  Freed slots are reused by later inserts.
+     * @param key  the key to remove
+     * @return  the tuple id that was removed, or null if the key was not present
+     */
+    @SuppressWarnings("unchecked")
+    public Integer remove (Object key)
+    {
+        return delete (encode ((K) key));
+    } // remove
+
+    /********************************************************************************
+     * Replace each tuple id with the function's result for its entry, walking the
+     * leaves and rewriting the ids in place rather than looking up each key.  The
+     * shape of the tree is unchanged, and only leaves whose ids change are written.
+     * @param function  the new tuple id given the key and the old id
+     */
+    public void replaceAll (BiFunction <? super K, ? super Integer, ? extends Integer> function)
+    {
+        int leaf = root;
+        while (! isLeaf (leaf)) leaf = ref (leaf, refsAt (0));
+        for ( ; leaf != NIL; leaf = nextLeaf (leaf)) {
+            boolean changed = false;
+            for (int i = 0; i < nKeys (leaf); i++) {
+                int     old   = ref (leaf, refsAt (i));
+                Integer value = function.apply (keyOf (leaf, i), old);
+                if (value == null || value < 0) throw new IllegalArgumentException ("replaceAll: tuple id must be non-negative");
+                if (value != old) {
+                    buf (leaf).putInt (base (leaf) + refsAt (i), value);
+                    changed = true;
+                } // if
+            } // for
+            if (changed) store.written (leaf);
+        } // for
+    } // replaceAll
+
+    /********************************************************************************
+     * Remove all the entries, releasing the off-heap buffers.
+     */
+    public void clear ()
+    {
+        store.clear ();
+        slots    = 0;
+        freeHead = NIL;
+        size     = 0;
+        height = 1;
+        root   = newNode (true);
+        modCount++;
+    } // clear
+
+    /********************************************************************************
+     * Return the number of entries.
+     */
+    public int size ()
+    {
+        return size;
+    } // size
+
+    /********************************************************************************
+     * Return the number of off-heap bytes allocated for node slots.
+     */
+    public long offHeapBytes ()
+    {
+        return store.bytes ();
+    } // offHeapBytes
+
+    /********************************************************************************
+     * Return the maximum fanout for a node.
+     */
+    public int order ()
+    {
+        return order;
+    } // order
+
+    /********************************************************************************
+     * Return the number of bytes in a node slot for keys of the given width.
+     */
+    protected static int slotSize (int width, int order)
+    {
+        return KEYS + (order - 1) * width + 4 * order;
+    } // slotSize
+
+    /********************************************************************************
+     * Return the state of the tree that is not kept in its slots (root, size, height,
+     * slots used, free chain), from which it can be constructed again.
+     */
+    protected int [] state ()
+    {
+        return new int [] { root, size, height, slots, freeHead };
+    } // state
+
+    /********************************************************************************
+     * Return null, as keys are in their natural order.
+     */
+    public Comparator <? super K> comparator ()
+    {
+        return null;
+    } // comparator
+
+    /********************************************************************************
+     * Return the first (smallest) key.
+     */
+    public K firstKey ()
+    {
+        return new RangeView (null, false, null, false).firstKey ();
+    } // firstKey
+
+    /********************************************************************************
+     * Return the last (largest) key.
+     */
+    public K lastKey ()
+    {
+        return new RangeView (null, false, null, false).lastKey ();
+    } // lastKey
+
+    /********************************************************************************
+     * Return the portion of the map with keys up to toKey (inclusive).
+     */
+    public SortedMap <K, Integer> headMap (K toKey)
+    {
+        return new RangeView (null, false, toKey, true);
+    } // headMap
+
+    /********************************************************************************
+     * Return the portion of the map with keys from fromKey (inclusive).
+     */
+    public SortedMap <K, Integer> tailMap (K fromKey)
+    {
+        return new RangeView (fromKey, true, null, false);
+    } // tailMap
+
+    /********************************************************************************
+     * Return the portion of the map with keys from fromKey to toKey (both inclusive).
+     */
+    public SortedMap <K, Integer> subMap (K fromKey, K toKey)
+    {
+        return subMap (fromKey, true, toKey, true);
+    } // subMap
+
+    /********************************************************************************
+     * Return the portion of the map with keys between fromKey and toKey.
+     */
+    public SortedMap <K, Integer> subMap (K fromKey, boolean fromInclusive, K toKey, boolean toInclusive)
+    {
+        if (fromKey.compareTo (toKey) > 0) throw new IllegalArgumentException ("subMap: fromKey > toKey");
+        return new RangeView (fromKey, fromInclusive, toKey, toInclusive);
+    } // subMap
+
+    //--------------------------------------------------------------------------------
+    // Node slot access
+    //--------------------------------------------------------------------------------
+
+    /** Return the buffer holding node id, and the offset of its slot in that buffer.
+     */
+    private ByteBuffer buf (int id)   { return store.buffer (id); }
+    private int        base (int id)  { return store.offset (id); }
+
+    private boolean isLeaf (int id)   { return buf (id).getInt (base (id) + LEAF) != 0; }
+    private int     nKeys (int id)    { return buf (id).getInt (base (id) + NKEYS); }
+    private int     nextLeaf (int id) { return buf (id).getInt (base (id) + NEXT); }
+    private int     ref (int id, int at) { return buf (id).getInt (base (id) + at); }
+
+    /** Return the slot offset of the i-th ref.
+     */
+    private int refsAt (int i)
+    {
+        return refsAt + 4 * i;
+    } // refsAt
+
+    /********************************************************************************
+     * Allocate a slot for a new empty node, reusing a freed one when there is one.
+     */
+    private int newNode (boolean leaf)
+    {
+        int id;
+        if (freeHead != NIL) {
+            id       = freeHead;
+            freeHead = nextLeaf (id);
+        } else {
+            id = slots++;
+        } // if
+        ByteBuffer b = buf (id);
+        b.putInt (base (id) + LEAF, leaf ? 1 : 0);
+        b.putInt (base (id) + NKEYS, 0);
+        b.putInt (base (id) + NEXT, NIL);
+        store.written (id);
+        return id;
+    } // newNode
+
+    /********************************************************************************
+     * Return the slot of a node that is no longer in the tree to the free list.
+     */
+    private void freeNode (int id)
+    {
+        buf (id).putInt (base (id) + NEXT, freeHead);
+        store.written (id);
+        freeHead = id;
+    } // freeNode
+
+    /********************************************************************************
+     * Copy node id out of its slot into a page on the heap.
+     */
+    private Page read (int id)
+    {
+        ByteBuffer b = buf (id);
+        int        o = base (id);
+        Page       p = new Page (id, b.getInt (o + LEAF) != 0);
+        p.nKeys = b.getInt (o + NKEYS);
+        p.next  = b.getInt (o + NEXT);
+        b.get (o + KEYS, p.key, 0, p.nKeys * width);
+        int nRefs = p.leaf ? p.nKeys : p.nKeys + 1;
+        for (int i = 0; i < nRefs; i++) p.ref [i] = b.getInt (o + refsAt (i));
+        return p;
+    } // read
+
+    /********************************************************************************
+     * Copy a (no longer overfull) page back into its node's slot.
+     */
+    private void write (Page p)
+    {
+        ByteBuffer b = buf (p.id);
+        int        o = base (p.id);
+        b.putInt (o + LEAF, p.leaf ? 1 : 0);
+        b.putInt (o + NKEYS, p.nKeys);
+        b.putInt (o + NEXT, p.next);
+        b.put (o + KEYS, p.key, 0, p.nKeys * width);
+        int nRefs = p.leaf ? p.nKeys : p.nKeys + 1;
+        for (int i = 0; i < nRefs; i++) b.putInt (o + refsAt (i), p.ref [i]);
+        store.written (p.id);
+    } // write
+
+    //--------------------------------------------------------------------------------
+    // Private Methods
+    //--------------------------------------------------------------------------------
+
+    /********************************************************************************
+     * Return the encoded form of the key.
+     */
+    private byte [] encode (K key)
+    {
+        byte [] k = new byte [width];
+        codec.encode (key, k, 0);
+        return k;
+    } // encode
+
+    /********************************************************************************
+     * Decode the i-th key of node id.
+     */
+    private K keyOf (int id, int i)
+    {
+        byte [] k = new byte [width];
+        buf (id).get (base (id) + KEYS + i * width, k, 0, width);
+        return codec.decode (k, 0);
+    } // keyOf
+
+    /********************************************************************************
+     * Compare the i-th key of node id with the encoded key k, eight bytes at a time.
+     */
+    private int compare (int id, int i, byte [] k)
+    {
+        ByteBuffer b   = buf (id);
+        ByteBuffer kb  = ByteBuffer.wrap (k);
+        int        pos = base (id) + KEYS + i * width;
+        int        j   = 0;
+        for ( ; j + 8 <= width; j += 8) {
+            int c = Long.compareUnsigned (b.getLong (pos + j), kb.getLong (j));
+            if (c != 0) return c;
+        } // for
+        for ( ; j < width; j++) {
+            int c = Integer.compare (b.get (pos + j) & 0xff, k [j] & 0xff);
+            if (c != 0) return c;
+        } // for
+        return 0;
+    } // compare
+
+    /********************************************************************************
+     * Binary search node id for the encoded key k.
+     * @return  the position of k if found, otherwise (-(insertion point) - 1)
+     */
+    private int search (int id, byte [] k)
+    {
+        int lo = 0, hi = nKeys (id) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c   = compare (id, mid, k);
+            if      (c < 0) lo = mid + 1;
+            else if (c > 0) hi = mid - 1;
+            else            return mid;
+        } // while
+        return -lo - 1;
+    } // search
+
+    /********************************************************************************
+     * Return the position of the child of internal node id that covers key k.
+     */
+    private int child (int id, byte [] k)
+    {
+        int i = search (id, k);
+        return (i >= 0) ? i + 1 : -i - 1;
+    } // child
+
+    /********************************************************************************
+     * Descend from the root to the leaf that covers key k.
+     */
+    private int findLeaf (byte [] k)
+    {
+        int n = root;
+        while (! isLeaf (n)) n = ref (n, refsAt (child (n, k)));
+        return n;
+    } // findLeaf
+
+    /********************************************************************************
+     * Return the tuple id for encoded key k, or null if it is not present.
+     */
+    private Integer lookup (byte [] k)
+    {
+        int leaf = findLeaf (k);
+        int i    = search (leaf, k);
+        return (i >= 0) ? ref (leaf, refsAt (i)) : null;
+    } // lookup
+
+    /********************************************************************************
+     * Return the largest encoded key below hi (any key if hi is null), or null.
+     */
+    private byte [] lastBelow (byte [] hi, boolean inclusive)
+    {
+        int n    = root;
+        int left = NIL;
+        while (! isLeaf (n)) {
+            int c = (hi == null) ? nKeys (n) : child (n, hi);
+            if (c > 0) left = ref (n, refsAt (c - 1));
+            n = ref (n, refsAt (c));
+        } // while
+        int i = (hi == null) ? -nKeys (n) - 1 : search (n, hi);
+        i = (i >= 0) ? (inclusive ? i : i - 1) : -i - 2;
+        if (i < 0) {
+            if (left == NIL) return null;
+            while (! isLeaf (left)) left = ref (left, refsAt (nKeys (left)));
+            n = left;
+            i = nKeys (n) - 1;
+            if (i < 0) return null;
+        } // if
+        byte [] k = new byte [width];
+        buf (n).get (base (n) + KEYS + i * width, k, 0, width);
+        return k;
+    } // lastBelow
+
+    /********************************************************************************
+     * Insert encoded key k with tuple id value in one descent, splitting full nodes
+     * on the way back up the recorded path.
+     * @param replace  whether to replace the tuple id of an existing key
+     * @return  the previous tuple id for the key, or null if the key was new
+     */
+    private Integer insert (byte [] k, Integer value, boolean replace)
+    {
+        if (value == null || value < 0) throw new IllegalArgumentException ("put: tuple id must be non-negative");
+        int [] path     = new int [height];
+        int [] childPos = new int [height];
+        int    depth    = 0;
+        int    n        = root;
+        while (! isLeaf (n)) {
+            int c = child (n, k);
+            path [depth]       = n;
+            childPos [depth++] = c;
+            n = ref (n, refsAt (c));
+        } // while
+
+        int i = search (n, k);
+        if (i >= 0) {
+            int old = ref (n, refsAt (i));
+            if (replace) {
+                buf (n).putInt (base (n) + refsAt (i), value);
+                store.written (n);
+            } // if
+            return old;
+        } // if
+        size++;
+        modCount++;
+
+        // Wedge into the leaf, then split overfull pages on the way up
+        Page p = read (n);
+        p.wedge (-i - 1, k, value);
+        for (int level = depth - 1; p.nKeys > order - 1; level--) {
+            Page    sib     = new Page (newNode (p.leaf), p.leaf);
+            byte [] divider = split (p, sib);
+            write (sib);
+            if (level < 0) {
+                write (p);
+                Page newRoot = new Page (newNode (false), false);
+                newRoot.setKey (0, divider);
+                newRoot.ref [0] = p.id;
+                newRoot.ref [1] = sib.id;
+                newRoot.nKeys   = 1;
+                write (newRoot);
+                root = newRoot.id;
+                height++;
+                return null;
+            } // if
+            write (p);
+            p = read (path [level]);
+            p.wedge (childPos [level], divider, sib.id);
+        } // for
+        write (p);
+        return null;
+    } // insert
+
+    /********************************************************************************
+     * Split overfull page p, moving its upper half into the empty page sib.  For
+     * internal nodes the middle key moves up rather than into either half.
+     * @return  the divider key to post to the parent
+     */
+    private byte [] split (Page p, Page sib)
+    {
+        if (p.leaf) {
+            int left  = order / 2;
+            int right = p.nKeys - left;
+            System.arraycopy (p.key, left * width, sib.key, 0, right * width);
+            System.arraycopy (p.ref, left, sib.ref, 0, right);
+            p.nKeys   = left;
+            sib.nKeys = right;
+            sib.next  = p.next;
+            p.next    = sib.id;
+            return sib.keyAt (0);
+        } // if
+        int     left    = (order - 1) / 2;
+        int     right   = p.nKeys - left - 1;
+        byte [] divider = p.keyAt (left);
+        System.arraycopy (p.key, (left + 1) * width, sib.key, 0, right * width);
+        System.arraycopy (p.ref, left + 1, sib.ref, 0, right + 1);
+        p.nKeys   = left;
+        sib.nKeys = right;
+        return divider;
+    } // split
+
+    /********************************************************************************
+     * Remove encoded key k, rebalancing up the recorded path.
+     * @return  the tuple id that was removed, or null if the key was not present
+     */
+    private Integer delete (byte [] k)
+    {
+        int [] path     = new int [height];
+        int [] childPos = new int [height];
+        int    depth    = 0;
+        int    id       = root;
+        while (! isLeaf (id)) {
+            int c = child (id, k);
+            path [depth]       = id;
+            childPos [depth++] = c;
+            id = ref (id, refsAt (c));
+        } // while
+
+        int i = search (id, k);
+        if (i < 0) return null;
+        Page n   = read (id);
+        int  old = n.ref [i];
+        n.removeAt (i);
+        size--;
+        modCount++;
+
+        int minKeys = (order - 1) / 2;
+        for (int level = depth - 1; level >= 0 && n.nKeys < minKeys; level--) {
+            Page p     = read (path [level]);
+            int  c     = childPos [level];
+            Page left  = (c > 0)       ? read (p.ref [c - 1]) : null;
+            Page right = (c < p.nKeys) ? read (p.ref [c + 1]) : null;
+
+            if (left != null && left.nKeys > minKeys) {
+                // Borrow the last key of the left sibling
+                int last = left.nKeys - 1;
+                if (n.leaf) {
+                    n.wedge (0, left.keyAt (last), left.ref [last]);
+                    left.removeAt (last);
+                    p.setKey (c - 1, n.keyAt (0));
+                } else {
+                    System.arraycopy (n.key, 0, n.key, width, n.nKeys * width);
+                    System.arraycopy (n.ref, 0, n.ref, 1, n.nKeys + 1);
+                    n.setKey (0, p.keyAt (c - 1));
+                    n.ref [0] = left.ref [left.nKeys];
+                    n.nKeys++;
+                    p.setKey (c - 1, left.keyAt (last));
+                    left.nKeys--;
+                } // if
+                write (left);
+                write (n);
+                write (p);
+                return old;
+            } // if
+
+            if (right != null && right.nKeys > minKeys) {
+                // Borrow the first key of the right sibling
+                if (n.leaf) {
+                    n.wedge (n.nKeys, right.keyAt (0), right.ref [0]);
+                    right.removeAt (0);
+                    p.setKey (c, right.keyAt (0));
+                } else {
+                    n.setKey (n.nKeys, p.keyAt (c));
+                    n.ref [n.nKeys + 1] = right.ref [0];
+                    n.nKeys++;
+                    p.setKey (c, right.keyAt (0));
+                    System.arraycopy (right.key, width, right.key, 0, (right.nKeys - 1) * width);
+                    System.arraycopy (right.ref, 1, right.ref, 0, right.nKeys);
+                    right.nKeys--;
+                } // if
+                write (right);
+                write (n);
+                write (p);
+                return old;
+            } // if
+
+            // Merge with a sibling, the right page of the pair being absorbed by the left
+            if (left != null) {
+                merge (left, n, p, c - 1);
+                write (left);
+                freeNode (n.id);
+            } else {
+                merge (n, right, p, c);
+                write (n);
+                freeNode (right.id);
+            } // if
+            n = p;
+        } // for
+        write (n);
+
+        // An internal root left with a single child is replaced by that child
+        if (! isLeaf (root) && nKeys (root) == 0) {
+            int oldRoot = root;
+            root = ref (root, refsAt (0));
+            freeNode (oldRoot);
+            height--;
+        } // if
+        return old;
+    } // delete
+
+    /********************************************************************************
+     * Merge page r into its left sibling l and remove their divider (at position i),
+     * along with the reference to r, from the parent page p.
+     */
+    private void merge (Page l, Page r, Page p, int i)
+    {
+        if (l.leaf) {
+            System.arraycopy (r.key, 0, l.key, l.nKeys * width, r.nKeys * width);
+            System.arraycopy (r.ref, 0, l.ref, l.nKeys, r.nKeys);
+            l.nKeys += r.nKeys;
+            l.next   = r.next;
+        } else {
+            l.setKey (l.nKeys, p.keyAt (i));
+            System.arraycopy (r.key, 0, l.key, (l.nKeys + 1) * width, r.nKeys * width);
+            System.arraycopy (r.ref, 0, l.ref, l.nKeys + 1, r.nKeys + 1);
+            l.nKeys += r.nKeys + 1;
+        } // if
+        p.removeAt (i);
+    } // merge
+
+} // OffHeapBpTreeMap class
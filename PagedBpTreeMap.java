@@ -0,0 +1,149 @@
+
+/************************************************************************************
+ * @file PagedBpTreeMap.java
+ */
+
+import java.util.Arrays;
+
+/************************************************************************************
+ * This class provides a disk-resident B+Tree map.  Each node is one page of a file,
+ * cached in a bounded BufferPool, so only the pool's frames take memory however large
+ * the tree grows.  The fanout is the largest that fits a node in a page.  Changes
+ * reach the file as dirty pages are evicted and at each checkpoint.  There is no log,
+ * so the file holds a consistent tree only as of a checkpoint with no changes after
+ * it; a map that was closed can be opened again to pick up its tree.  Keys and
+ * values are as for OffHeapBpTreeMap.  Like its pool, the map is for one thread at a
+ * time, even just to read it.
+ */
+public class PagedBpTreeMap <K extends Comparable <K>>
+       extends OffHeapBpTreeMap <K>
+{
+    /** The default number of bytes in a page.
+     */
+    public static final int PAGE_SIZE = 4096;
+
+    /** The number of header words before the saved tree state: order and key width.
+     */
+    private static final int META = 2;
+
+    /** The buffer pool caching the file's pages.
+     */
+    private final BufferPool pool;
+
+    /** The number of bytes in an encoded key.
+     */
+    private final int keyWidth;
+
+    /********************************************************************************
+     * Open (or create) a paged B+Tree map with pages of PAGE_SIZE bytes.
+     * @param file    the name of the file holding the tree
+     * @param _codec  the fixed-width encoding of the keys
+     * @param frames  the number of pages the buffer pool may hold
+     */
+    public PagedBpTreeMap (String file, KeyCodec <K> _codec, int frames)
+    {
+        this (new BufferPool (file, PAGE_SIZE, frames), _codec, PAGE_SIZE);
+    } // constructor
+
+    /********************************************************************************
+     * Open (or create) a paged B+Tree map with pages of the given size.
+     * @param file      the name of the file holding the tree
+     * @param _codec    the fixed-width encoding of the keys
+     * @param frames    the number of pages the buffer pool may hold
+     * @param pageSize  the number of bytes in a page
+     */
+    public PagedBpTreeMap (String file, KeyCodec <K> _codec, int frames, int pageSize)
+    {
+        this (new BufferPool (file, pageSize, frames), _codec, pageSize);
+    } // constructor
+
+    /********************************************************************************
+     * Construct the map over an opened buffer pool, picking up the tree saved in its
+     * header if there is one.
+     */
+    private PagedBpTreeMap (BufferPool _pool, KeyCodec <K> _codec, int pageSize)
+    {
+        super (_codec, orderOf (_pool, _codec, pageSize), _pool, stateOf (_pool));
+        pool     = _pool;
+        keyWidth = _codec.width ();
+    } // constructor
+
+    //--------------------------------------------------------------------------------
+    // Public Methods
+    //--------------------------------------------------------------------------------
+
+    /********************************************************************************
+     * Write all dirty pages and the tree's state to the file, so it can be opened
+     * again in this state.
+     */
+    public void checkpoint ()
+    {
+        int [] state = state ();
+        int [] words = new int [META + state.length];
+        words [0] = order ();
+        words [1] = keyWidth;
+        System.arraycopy (state, 0, words, META, state.length);
+        pool.checkpoint (words);
+    } // checkpoint
+
+    /********************************************************************************
+     * Checkpoint the tree and close its file.
+     */
+    public void close ()
+    {
+        checkpoint ();
+        pool.close ();
+    } // close
+
+    /********************************************************************************
+     * Return the buffer pool, for its hit, miss and write counters.
+     */
+    public BufferPool pool ()
+    {
+        return pool;
+    } // pool
+
+    /********************************************************************************
+     * Return the fraction of page requests served from the buffer pool.
+     */
+    public double hitRate ()
+    {
+        return pool.hitRate ();
+    } // hitRate
+
+    //--------------------------------------------------------------------------------
+    // Private Methods
+    //--------------------------------------------------------------------------------
+
+    /********************************************************************************
+     * Return the fanout saved in the pool's header, or for a new file the largest
+     * one whose nodes fit in a page.
+     * @throws IllegalArgumentException if the file was written with another key width
+     */
+    private static int orderOf (BufferPool pool, KeyCodec <?> codec, int pageSize)
+    {
+        int [] header = pool.header ();
+        if (header != null) {
+            if (header [1] != codec.width ()) {
+                throw new IllegalArgumentException ("PagedBpTreeMap: file has " + header [1] + " byte keys, not " + codec.width ());
+            } // if
+            return header [0];
+        } // if
+        int order = BpTreeMap.MIN_ORDER;
+        while (slotSize (codec.width (), order + 1) <= pageSize) order++;
+        if (slotSize (codec.width (), order) > pageSize) {
+            throw new IllegalArgumentException ("PagedBpTreeMap: " + pageSize + " byte pages are too small for the keys");
+        } // if
+        return order;
+    } // orderOf
+
+    /********************************************************************************
+     * Return the tree state saved in the pool's header, or null for a new file.
+     */
+    private static int [] stateOf (BufferPool pool)
+    {
+        int [] header = pool.header ();
+        return (header == null) ? null : Arrays.copyOfRange (header, META, header.length);
+    } // stateOf
+
+} // PagedBpTreeMap class
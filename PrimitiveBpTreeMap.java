@@ -0,0 +1,705 @@
+
+/************************************************************************************
+ * @file PrimitiveBpTreeMap.java
+ */
+
+import java.util.*;
+
+/************************************************************************************
+ * This abstract class provides B+Tree maps whose keys are primitive integers.  Each
+ * node keeps its keys in a primitive array (int [] or long [], chosen by the subclass),
+ * so comparing keys needs no boxing and no virtual compareTo.  Keys are passed in as
+ * long, which holds either width exactly.  Leaves are linked left to right for range
+ * scans.
+ */
+public abstract class PrimitiveBpTreeMap <V>
+{
+    /** The maximum fanout for a B+Tree node.
+     */
+    protected final int order;
+
+    /********************************************************************************
+     * This inner class defines nodes that are stored in the B+tree map.  Leaves hold
+     * values in ref and link to the next leaf; internal nodes hold children in ref.
+     */
+    protected static class Node
+    {
+        boolean        isLeaf;
+        int            nKeys;
+        final Object   key;          // int [] or long [] of size order - 1
+        final Object[] ref;
+        Node           next;         // next leaf to the right (leaves only)
+
+        Node (boolean _isLeaf, Object _key, int order)
+        {
+            isLeaf = _isLeaf;
+            key    = _key;
+            ref    = new Object [order];
+        } // constructor
+    } // Node inner class
+
+    /********************************************************************************
+     * This inner class scans the entries of a key range in ascending order without
+     * allocating per entry.  Call next to move to each entry, then read key and value.
+     */
+    public class Cursor
+    {
+        private Node          leaf;
+        private int           pos;
+        private final long    hi;
+        private final boolean hiInclusive;
+        private long          key;
+        private Object        value;
+
+        Cursor (Node _leaf, int _pos, long _hi, boolean _hiInclusive)
+        {
+            leaf        = _leaf;
+            pos         = _pos;
+            hi          = _hi;
+            hiInclusive = _hiInclusive;
+        } // constructor
+
+        /** Move to the next entry in the range.
+         *  @return  whether there is such an entry
+         */
+        public boolean next ()
+        {
+            while (leaf != null && pos >= leaf.nKeys) {
+                leaf = leaf.next;
+                pos  = 0;
+            } // while
+            if (leaf == null) return false;
+            long k = keyAt (leaf.key, pos);
+            if (k > hi || (k == hi && ! hiInclusive)) {
+                leaf = null;
+                return false;
+            } // if
+            key   = k;
+            value = leaf.ref [pos++];
+            return true;
+        } // next
+
+        /** Return the key of the current entry.
+         */
+        public long key ()
+        {
+            return key;
+        } // key
+
+        /** Return the value of the current entry.
+         */
+        @SuppressWarnings("unchecked")
+        public V value ()
+        {
+            return (V) value;
+        } // value
+
+        /** Replace the value of the current entry in its leaf.
+         */
+        public void setValue (V v)
+        {
+            if (leaf == null || pos == 0) throw new IllegalStateException ();
+            leaf.ref [pos - 1] = v;
+            value = v;
+        } // setValue
+    } // Cursor inner class
+
+    /** The root of the B+Tree
+     */
+    private Node root;
+
+    /** The number of entries in the B+Tree.
+     */
+    private int size = 0;
+
+    /** The number of levels in the B+Tree (1 when the root is a leaf).
+     */
+    private int height = 1;
+
+    /********************************************************************************
+     * Construct an empty B+Tree map with the given maximum fanout.
+     * @param _order  the maximum fanout for a node (at least BpTreeMap.MIN_ORDER)
+     */
+    protected PrimitiveBpTreeMap (int _order)
+    {
+        if (_order < BpTreeMap.MIN_ORDER) {
+            throw new IllegalArgumentException ("PrimitiveBpTreeMap: order must be at least " + BpTreeMap.MIN_ORDER);
+        } // if
+        order = _order;
+        root  = newNode (true);
+    } // constructor
+
+    //--------------------------------------------------------------------------------
+    // Key storage, provided by the subclass for its key width
+    //--------------------------------------------------------------------------------
+
+    /** Create a key array holding n keys.
+     */
+    protected abstract Object newKeys (int n);
+
+    /** Return the key at position i of the key array.
+     */
+    protected abstract long keyAt (Object keys, int i);
+
+    /** Set the key at position i of the key array.
+     */
+    protected abstract void setKey (Object keys, int i, long k);
+
+    /** Binary search the first nKeys keys for k, with a single comparison per probe.
+     *  @return  the position of k if found, otherwise (-(insertion point) - 1)
+     */
+    protected abstract int search (Object keys, int nKeys, long k);
+
+    /** Check that key k fits the key width, throwing IllegalArgumentException if not.
+     */
+    protected abstract void checkKey (long k);
+
+    //--------------------------------------------------------------------------------
+    // Public Methods
+    //--------------------------------------------------------------------------------
+
+    /********************************************************************************
+     * Return the number of entries in the B+Tree map.
+     */
+    public int size ()
+    {
+        return size;
+    } // size
+
+    /********************************************************************************
+     * Return whether the B+Tree map has no entries.
+     */
+    public boolean isEmpty ()
+    {
+        return size == 0;
+    } // isEmpty
+
+    /********************************************************************************
+     * Return the number of levels in the B+Tree.
+     */
+    public int height ()
+    {
+        return height;
+    } // height
+
+    /********************************************************************************
+     * Given the key, look up the value in the B+Tree map.
+     * @param k  the key used for look up
+     * @return  the value associated with the key, or null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    public V get (long k)
+    {
+        Node leaf = findLeaf (k);
+        int  i    = search (leaf.key, leaf.nKeys, k);
+        return (i >= 0) ? (V) leaf.ref [i] : null;
+    } // get
+
+    /********************************************************************************
+     * Determine whether the B+Tree map contains the key.
+     * @param k  the key to look for
+     */
+    public boolean containsKey (long k)
+    {
+        Node leaf = findLeaf (k);
+        return search (leaf.key, leaf.nKeys, k) >= 0;
+    } // containsKey
+
+    /********************************************************************************
+     * Put the key-value pair in the B+Tree map, replacing the value of an existing key.
+     * @param k      the key to insert
+     * @param value  the value to insert
+     * @return  the previous value for the key, or null if there was none
+     */
+    public V put (long k, V value)
+    {
+        return insert (k, value, true);
+    } // put
+
+    /********************************************************************************
+     * Put the key-value pair in the B+Tree map unless the key already has a value.
+     * @param k      the key to insert
+     * @param value  the value to insert
+     * @return  the current value for the key, or null if the pair was inserted
+     */
+    public V putIfAbsent (long k, V value)
+    {
+        return insert (k, value, false);
+    } // putIfAbsent
+
+    /********************************************************************************
+     * Remove the key and its value from the B+Tree map, borrowing from or merging
+     * with a sibling when a node is left less than half full.
+     * @param k  the key to remove
+     * @return  the value that was removed, or null if the key was not present
+     */
+    @SuppressWarnings("unchecked")
+    public V remove (long k)
+    {
+        Node [] path     = new Node [height];
+        int []  childPos = new int [height];
+        int     depth    = 0;
+        Node    n        = root;
+        while (! n.isLeaf) {
+            int c = child (k, n);
+            path [depth]       = n;
+            childPos [depth++] = c;
+            n = (Node) n.ref [c];
+        } // while
+
+        int i = search (n.key, n.nKeys, k);
+        if (i < 0) return null;
+        V old = (V) n.ref [i];
+        removeAt (n, i);
+        size--;
+        rebalance (n, path, childPos, depth - 1);
+        return old;
+    } // remove
+
+    /********************************************************************************
+     * Remove all the entries from the B+Tree map.
+     */
+    public void clear ()
+    {
+        root   = newNode (true);
+        size   = 0;
+        height = 1;
+    } // clear
+
+    /********************************************************************************
+     * Return the smallest key in the B+Tree map.
+     * @throws NoSuchElementException if the map is empty
+     */
+    public long firstKey ()
+    {
+        if (size == 0) throw new NoSuchElementException ();
+        Node n = root;
+        while (! n.isLeaf) n = (Node) n.ref [0];
+        return keyAt (n.key, 0);
+    } // firstKey
+
+    /********************************************************************************
+     * Return the largest key in the B+Tree map.
+     * @throws NoSuchElementException if the map is empty
+     */
+    public long lastKey ()
+    {
+        if (size == 0) throw new NoSuchElementException ();
+        Node n = root;
+        while (! n.isLeaf) n = (Node) n.ref [n.nKeys];
+        return keyAt (n.key, n.nKeys - 1);
+    } // lastKey
+
+    /********************************************************************************
+     * Return the largest key below the given bound, in one descent.
+     * @param hi         the upper bound
+     * @param inclusive  whether a key equal to hi qualifies
+     * @throws NoSuchElementException if there is no such key
+     */
+    public long lastKey (long hi, boolean inclusive)
+    {
+        Node n    = root;
+        Node left = null;
+        while (! n.isLeaf) {
+            int c = child (hi, n);
+            if (c > 0) left = (Node) n.ref [c - 1];
+            n = (Node) n.ref [c];
+        } // while
+        int i = search (n.key, n.nKeys, hi);
+        i = (i >= 0) ? (inclusive ? i : i - 1) : -i - 2;
+        if (i >= 0) return keyAt (n.key, i);
+        if (left == null) throw new NoSuchElementException ();
+        while (! left.isLeaf) left = (Node) left.ref [left.nKeys];
+        if (left.nKeys == 0) throw new NoSuchElementException ();
+        return keyAt (left.key, left.nKeys - 1);
+    } // lastKey
+
+    /********************************************************************************
+     * Return a cursor over all the entries in ascending key order.
+     */
+    public Cursor scan ()
+    {
+        return scan (Long.MIN_VALUE, true, Long.MAX_VALUE, true);
+    } // scan
+
+    /********************************************************************************
+     * Return a cursor over the entries whose keys are between lo and hi, found by a
+     * seek to lo followed by a walk along the leaf chain that stops after hi.
+     * @param lo           the lower bound
+     * @param loInclusive  whether lo itself is in the range
+     * @param hi           the upper bound
+     * @param hiInclusive  whether hi itself is in the range
+     */
+    public Cursor scan (long lo, boolean loInclusive, long hi, boolean hiInclusive)
+    {
+        Node leaf = findLeaf (lo);
+        int  i    = search (leaf.key, leaf.nKeys, lo);
+        i = (i >= 0) ? (loInclusive ? i : i + 1) : -i - 1;
+        return new Cursor (leaf, i, hi, hiInclusive);
+    } // scan
+
+    /********************************************************************************
+     * Return keys that divide the map into about the given number of key ranges, for
+     * scanning the ranges in parallel: evenly spaced divider keys from the top levels
+     * of the tree, as for BpTreeMap.splitKeys.
+     * @param parts  the number of ranges wanted
+     * @return  up to parts - 1 keys in ascending order
+     */
+    public long [] splitKeys (int parts)
+    {
+        List <Long> keys = new ArrayList <> ();                  // only the top levels' few keys
+        for (int depth = 1; keys.size () + 1 < parts; depth++) {
+            int found = keys.size ();
+            keys.clear ();
+            dividers (root, depth, keys);
+            if (keys.size () == found) break;                     // no deeper internal level
+        } // for
+
+        int     n     = Math.min (keys.size (), Math.max (parts - 1, 0));
+        long [] split = new long [n];
+        for (int i = 0; i < n; i++) {
+            split [i] = (keys.size () < parts) ? keys.get (i) : keys.get ((int) ((long) (i + 1) * keys.size () / parts));
+        } // for
+        return split;
+    } // splitKeys
+
+    /********************************************************************************
+     * Replace the contents of this B+Tree map by building it bottom-up from keys in
+     * strictly ascending order.  Nodes are packed to the given fill factor but never
+     * left less than half full.  The map is unchanged if the input is rejected.
+     * @param keys        the keys in strictly ascending order
+     * @param values      the value for each key
+     * @param fillFactor  the fraction of each node to fill, in (0, 1]
+     * @throws IllegalArgumentException if the keys are not strictly ascending, do not
+     *         fit the key width, or the fill factor is out of range
+     */
+    public void bulkLoad (long [] keys, List <? extends V> values, double fillFactor)
+    {
+        if (! (fillFactor > 0.0 && fillFactor <= 1.0)) {
+            throw new IllegalArgumentException ("bulkLoad: fill factor must be in (0, 1]");
+        } // if
+        if (keys.length != values.size ()) {
+            throw new IllegalArgumentException ("bulkLoad: need one value per key");
+        } // if
+        for (int i = 0; i < keys.length; i++) {
+            checkKey (keys [i]);
+            if (i > 0 && keys [i - 1] >= keys [i]) {
+                throw new IllegalArgumentException ("bulkLoad: keys not in ascending order at " + keys [i]);
+            } // if
+        } // for
+        int minKeys = (order - 1) / 2;
+        int perLeaf = Math.max (Math.max (minKeys, 1), (int) Math.round (fillFactor * (order - 1)));
+        int perNode = Math.max (minKeys + 1, (int) Math.round (fillFactor * order));
+
+        // Pack the leaves left to right, keeping the first key of each
+        List <Node> level = new ArrayList <> ();
+        long []     low   = new long [Math.max (1, keys.length)];
+        int         k     = 0;
+        Node        prev  = null;
+        for (int sz : (keys.length == 0) ? new int [] { 0 } : BpTreeMap.groupSizes (keys.length, perLeaf, minKeys, order - 1)) {
+            Node leaf = newNode (true);
+            for (int j = 0; j < sz; j++, k++) {
+                setKey (leaf.key, j, keys [k]);
+                leaf.ref [j] = values.get (k);
+            } // for
+            leaf.nKeys = sz;
+            if (sz > 0) low [level.size ()] = keys [k - sz];
+            if (prev != null) prev.next = leaf;
+            prev = leaf;
+            level.add (leaf);
+        } // for
+
+        // Build each internal level over the one below until a single root remains
+        int levels = 1;
+        while (level.size () > 1) {
+            List <Node> upper = new ArrayList <> ();
+            int c = 0;
+            for (int sz : BpTreeMap.groupSizes (level.size (), perNode, minKeys + 1, order)) {
+                Node n = newNode (false);
+                n.ref [0] = level.get (c);
+                for (int j = 1; j < sz; j++) {
+                    setKey (n.key, j - 1, low [c + j]);
+                    n.ref [j] = level.get (c + j);
+                } // for
+                n.nKeys = sz - 1;
+                low [upper.size ()] = low [c];
+                upper.add (n);
+                c += sz;
+            } // for
+            level = upper;
+            levels++;
+        } // while
+        root   = level.get (0);
+        size   = keys.length;
+        height = levels;
+    } // bulkLoad
+
+    //--------------------------------------------------------------------------------
+    // Private Methods
+    //--------------------------------------------------------------------------------
+
+    /********************************************************************************
+     * Create an empty node with a key array of the subclass's width.
+     */
+    private Node newNode (boolean isLeaf)
+    {
+        return new Node (isLeaf, newKeys (order - 1), order);
+    } // newNode
+
+    /********************************************************************************
+     * Return the position of the child of internal node n that covers key k.
+     */
+    private int child (long k, Node n)
+    {
+        int i = search (n.key, n.nKeys, k);
+        return (i >= 0) ? i + 1 : -i - 1;
+    } // child
+
+    /********************************************************************************
+     * Add the divider keys of the internal nodes within depth levels of node n to the
+     * list, in ascending order.
+     */
+    private void dividers (Node n, int depth, List <Long> keys)
+    {
+        if (n.isLeaf) return;
+        for (int i = 0; i <= n.nKeys; i++) {
+            if (depth > 1) dividers ((Node) n.ref [i], depth - 1, keys);
+            if (i < n.nKeys) keys.add (keyAt (n.key, i));
+        } // for
+    } // dividers
+
+    /********************************************************************************
+     * Descend from the root to the leaf that covers key k.
+     */
+    private Node findLeaf (long k)
+    {
+        Node n = root;
+        while (! n.isLeaf) n = (Node) n.ref [child (k, n)];
+        return n;
+    } // findLeaf
+
+    /********************************************************************************
+     * Helper function for inserting a key in one descent, splitting full nodes on the
+     * way back up the recorded path.
+     * @param k        the key to insert
+     * @param value    the value to insert
+     * @param replace  whether to replace the value of an existing key
+     * @return  the previous value for the key, or null if the key was new
+     */
+    @SuppressWarnings("unchecked")
+    private V insert (long k, V value, boolean replace)
+    {
+        checkKey (k);
+        Node [] path     = new Node [height];
+        int []  childPos = new int [height];
+        int     depth    = 0;
+        Node    n        = root;
+        while (! n.isLeaf) {
+            int c = child (k, n);
+            path [depth]       = n;
+            childPos [depth++] = c;
+            n = (Node) n.ref [c];
+        } // while
+
+        int i = search (n.key, n.nKeys, k);
+        if (i >= 0) {
+            V old = (V) n.ref [i];
+            if (replace || old == null) n.ref [i] = value;
+            return old;
+        } // if
+        size++;
+
+        // Wedge into the first node on the way up with room, splitting full ones
+        int    pos = -i - 1;
+        Object ref = value;
+        for (int level = depth - 1; ; level--) {
+            if (n.nKeys < order - 1) {
+                wedge (n, pos, k, ref);
+                return null;
+            } // if
+            Node sib = newNode (n.isLeaf);
+            k   = split (n, pos, k, ref, sib);
+            ref = sib;
+            if (level < 0) {
+                Node newRoot = newNode (false);
+                setKey (newRoot.key, 0, k);
+                newRoot.ref [0] = n;
+                newRoot.ref [1] = sib;
+                newRoot.nKeys   = 1;
+                root = newRoot;
+                height++;
+                return null;
+            } // if
+            n   = path [level];
+            pos = childPos [level];
+        } // for
+    } // insert
+
+    /********************************************************************************
+     * Wedge the key-ref pair into node n at position i.
+     */
+    private void wedge (Node n, int i, long k, Object ref)
+    {
+        System.arraycopy (n.key, i, n.key, i + 1, n.nKeys - i);
+        setKey (n.key, i, k);
+        if (n.isLeaf) {
+            System.arraycopy (n.ref, i, n.ref, i + 1, n.nKeys - i);
+            n.ref [i] = ref;
+        } else {
+            System.arraycopy (n.ref, i + 1, n.ref, i + 2, n.nKeys - i);
+            n.ref [i + 1] = ref;
+        } // if
+        n.nKeys++;
+    } // wedge
+
+    /********************************************************************************
+     * Split full node n around the key-ref pair to be wedged at position pos, moving
+     * the upper half into the empty sibling sib.  For internal nodes the middle key
+     * moves up rather than into either half.
+     * @return  the divider key to post to the parent
+     */
+    private long split (Node n, int pos, long k, Object ref, Node sib)
+    {
+        // Lay out the order keys (and their references) in temporary arrays
+        Object   tk = newKeys (order);
+        Object[] tr = new Object [order + 1];
+        System.arraycopy (n.key, 0, tk, 0, pos);
+        setKey (tk, pos, k);
+        System.arraycopy (n.key, pos, tk, pos + 1, order - 1 - pos);
+        int r = n.isLeaf ? pos : pos + 1;
+        int nRefs = n.isLeaf ? order - 1 : order;
+        System.arraycopy (n.ref, 0, tr, 0, r);
+        tr [r] = ref;
+        System.arraycopy (n.ref, r, tr, r + 1, nRefs - r);
+        Arrays.fill (n.ref, null);
+
+        long divider;
+        if (n.isLeaf) {
+            int left = order / 2;
+            System.arraycopy (tk, 0, n.key, 0, left);
+            System.arraycopy (tr, 0, n.ref, 0, left);
+            System.arraycopy (tk, left, sib.key, 0, order - left);
+            System.arraycopy (tr, left, sib.ref, 0, order - left);
+            n.nKeys   = left;
+            sib.nKeys = order - left;
+            sib.next  = n.next;
+            n.next    = sib;
+            divider   = keyAt (sib.key, 0);
+        } else {
+            int left = (order - 1) / 2;
+            System.arraycopy (tk, 0, n.key, 0, left);
+            System.arraycopy (tr, 0, n.ref, 0, left + 1);
+            System.arraycopy (tk, left + 1, sib.key, 0, order - 1 - left);
+            System.arraycopy (tr, left + 1, sib.ref, 0, order - left);
+            n.nKeys   = left;
+            sib.nKeys = order - 1 - left;
+            divider   = keyAt (tk, left);
+        } // if
+        return divider;
+    } // split
+
+    /********************************************************************************
+     * Remove the key-value pair at position i from leaf n.
+     */
+    private void removeAt (Node n, int i)
+    {
+        System.arraycopy (n.key, i + 1, n.key, i, n.nKeys - i - 1);
+        System.arraycopy (n.ref, i + 1, n.ref, i, n.nKeys - i - 1);
+        n.nKeys--;
+        n.ref [n.nKeys] = null;
+    } // removeAt
+
+    /********************************************************************************
+     * Restore the minimum fill of node n after a removal, by borrowing from a sibling
+     * or merging with one, moving up the recorded path while merges leave a parent
+     * underfull.
+     * @param n         the node that lost a key
+     * @param path      the internal nodes on the path from the root down to n
+     * @param childPos  the child position taken at each node in path
+     * @param level     the position of n's parent in path (-1 if n is the root)
+     */
+    private void rebalance (Node n, Node [] path, int [] childPos, int level)
+    {
+        int minKeys = (order - 1) / 2;
+        for ( ; level >= 0 && n.nKeys < minKeys; level--) {
+            Node p     = path [level];
+            int  c     = childPos [level];
+            Node left  = (c > 0)       ? (Node) p.ref [c - 1] : null;
+            Node right = (c < p.nKeys) ? (Node) p.ref [c + 1] : null;
+
+            if (left != null && left.nKeys > minKeys) {
+                // Borrow the last key of the left sibling
+                int last = left.nKeys - 1;
+                if (n.isLeaf) {
+                    wedge (n, 0, keyAt (left.key, last), left.ref [last]);
+                    removeAt (left, last);
+                    setKey (p.key, c - 1, keyAt (n.key, 0));
+                } else {
+                    System.arraycopy (n.key, 0, n.key, 1, n.nKeys);
+                    System.arraycopy (n.ref, 0, n.ref, 1, n.nKeys + 1);
+                    setKey (n.key, 0, keyAt (p.key, c - 1));
+                    n.ref [0] = left.ref [left.nKeys];
+                    n.nKeys++;
+                    setKey (p.key, c - 1, keyAt (left.key, last));
+                    left.ref [left.nKeys] = null;
+                    left.nKeys--;
+                } // if
+                return;
+            } // if
+
+            if (right != null && right.nKeys > minKeys) {
+                // Borrow the first key of the right sibling
+                if (n.isLeaf) {
+                    wedge (n, n.nKeys, keyAt (right.key, 0), right.ref [0]);
+                    removeAt (right, 0);
+                    setKey (p.key, c, keyAt (right.key, 0));
+                } else {
+                    setKey (n.key, n.nKeys, keyAt (p.key, c));
+                    n.ref [n.nKeys + 1] = right.ref [0];
+                    n.nKeys++;
+                    setKey (p.key, c, keyAt (right.key, 0));
+                    System.arraycopy (right.key, 1, right.key, 0, right.nKeys - 1);
+                    System.arraycopy (right.ref, 1, right.ref, 0, right.nKeys);
+                    right.ref [right.nKeys] = null;
+                    right.nKeys--;
+                } // if
+                return;
+            } // if
+
+            // Merge with a sibling, the right node of the pair being absorbed by the left
+            if (left != null) merge (left, n, p, c - 1);
+            else              merge (n, right, p, c);
+            n = p;
+        } // for
+
+        // An internal root left with a single child is replaced by that child
+        if (! root.isLeaf && root.nKeys == 0) {
+            root = (Node) root.ref [0];
+            height--;
+        } // if
+    } // rebalance
+
+    /********************************************************************************
+     * Merge node r into its left sibling l and remove their divider (at position i),
+     * along with the reference to r, from the parent p.
+     */
+    private void merge (Node l, Node r, Node p, int i)
+    {
+        if (l.isLeaf) {
+            System.arraycopy (r.key, 0, l.key, l.nKeys, r.nKeys);
+            System.arraycopy (r.ref, 0, l.ref, l.nKeys, r.nKeys);
+            l.nKeys += r.nKeys;
+            l.next   = r.next;
+        } else {
+            setKey (l.key, l.nKeys, keyAt (p.key, i));
+            System.arraycopy (r.key, 0, l.key, l.nKeys + 1, r.nKeys);
+            System.arraycopy (r.ref, 0, l.ref, l.nKeys + 1, r.nKeys + 1);
+            l.nKeys += r.nKeys + 1;
+        } // if
+        System.arraycopy (p.key, i + 1, p.key, i, p.nKeys - i - 1);
+        System.arraycopy (p.ref, i + 2, p.ref, i + 1, p.nKeys - i - 1);
+        p.nKeys--;
+        p.ref [p.nKeys + 1] = null;
+    } // merge
+
+} // PrimitiveBpTreeMap class
@@ -0,0 +1,329 @@
+
+/************************************************************************************
+ * @file PrimitiveKeyIndex.java
+ */
+
+import java.util.*;
+import java.util.function.BiFunction;
+
+/************************************************************************************
+ * This class presents a PrimitiveBpTreeMap as a sorted map keyed by single-attribute
+ * KeyTypes, so a table whose primary key is one Integer or Long column can index its
+ * tuples in an IntBpTreeMap or LongBpTreeMap.  An instance may be restricted to a key
+ * range, in which case it is a live view of the tree.  As in BpTreeMap, the upper
+ * bound of headMap and subMap is inclusive.
+ */
+public class PrimitiveKeyIndex <V>
+       extends AbstractMap <KeyType, V>
+       implements SortedMap <KeyType, V>
+{
+    /** The primitive-keyed tree holding the entries.
+     */
+    private final PrimitiveBpTreeMap <V> tree;
+
+    /** Whether keys are handed out as Integer (rather than Long) attribute values.
+     */
+    private final boolean intKeys;
+
+    /** The key range of this map (the whole tree unless bounded).
+     */
+    private final long    lo, hi;
+    private final boolean loInclusive, hiInclusive, bounded;
+
+    /********************************************************************************
+     * Construct an index over the whole of the given tree.
+     * @param _tree  the IntBpTreeMap or LongBpTreeMap to index with
+     */
+    public PrimitiveKeyIndex (PrimitiveBpTreeMap <V> _tree)
+    {
+        this (_tree, Long.MIN_VALUE, true, Long.MAX_VALUE, true, false);
+    } // constructor
+
+    /********************************************************************************
+     * Construct a view of the given tree restricted to a key range.
+     */
+    private PrimitiveKeyIndex (PrimitiveBpTreeMap <V> _tree, long _lo, boolean _loInclusive,
+                               long _hi, boolean _hiInclusive, boolean _bounded)
+    {
+        tree        = _tree;
+        intKeys     = _tree instanceof IntBpTreeMap;
+        lo          = _lo;
+        loInclusive = _loInclusive;
+        hi          = _hi;
+        hiInclusive = _hiInclusive;
+        bounded     = _bounded;
+    } // constructor
+
+    //--------------------------------------------------------------------------------
+    // Public Methods
+    //--------------------------------------------------------------------------------
+
+    /********************************************************************************
+     * Return a set view of the entries in ascending key order, streamed from the
+     * tree's leaf chain.
+     */
+    public Set <Map.Entry <KeyType, V>> entrySet ()
+    {
+        return new AbstractSet <Map.Entry <KeyType, V>> () {
+            public Iterator <Map.Entry <KeyType, V>> iterator ()
+            {
+                PrimitiveBpTreeMap <V>.Cursor c = tree.scan (lo, loInclusive, hi, hiInclusive);
+                return new Iterator <Map.Entry <KeyType, V>> () {
+                    private boolean ready = c.next ();
+                    public boolean hasNext () { return ready; }
+                    public Map.Entry <KeyType, V> next ()
+                    {
+                        if (! ready) throw new NoSuchElementException ();
+                        Map.Entry <KeyType, V> e = new SimpleImmutableEntry <> (toKey (c.key ()), c.value ());
+                        ready = c.next ();
+                        return e;
+                    } // next
+                };
+            } // iterator
+
+            public int size ()
+            {
+                return PrimitiveKeyIndex.this.size ();
+            } // size
+        };
+    } // entrySet
+
+    /********************************************************************************
+     * Return the number of entries, counted along the leaf chain for a bounded view.
+     */
+    public int size ()
+    {
+        if (! bounded) return tree.size ();
+        int n = 0;
+        for (PrimitiveBpTreeMap <V>.Cursor c = tree.scan (lo, loInclusive, hi, hiInclusive); c.next (); ) n++;
+        return n;
+    } // size
+
+    /********************************************************************************
+     * Return whether there are no entries in range.
+     */
+    public boolean isEmpty ()
+    {
+        return bounded ? ! tree.scan (lo, loInclusive, hi, hiInclusive).next () : tree.isEmpty ();
+    } // isEmpty
+
+    /********************************************************************************
+     * Given the key, look up the value in the tree.
+     * @param key  the single-attribute key to look up
+     */
+    public V get (Object key)
+    {
+        return accepts (key) ? tree.get (toLong (key)) : null;
+    } // get
+
+    /********************************************************************************
+     * Determine whether the key is present.
+     * @param key  the single-attribute key to look for
+     */
+    public boolean containsKey (Object key)
+    {
+        return accepts (key) && tree.containsKey (toLong (key));
+    } // containsKey
+
+    /********************************************************************************
+     * Put the key-value pair in the tree, replacing the value of an existing key.
+     * @throws IllegalArgumentException if the key is not one integer value in range
+     */
+    public V put (KeyType key, V value)
+    {
+        return tree.put (check (key), value);
+    } // put
+
+    /********************************************************************************
+     * Put the key-value pair in the tree unless the key already has a value.
+     * @throws IllegalArgumentException if the key is not one integer value in range
+     */
+    public V putIfAbsent (KeyType key, V value)
+    {
+        return tree.putIfAbsent (check (key), value);
+    } // putIfAbsent
+
+    /********************************************************************************
+     * Replace each value in range with the function's result for its entry, in place
+     * along the tree's leaves rather than by looking up each key.
+     * @param function  the new value given the key and the old value
+     */
+    public void replaceAll (BiFunction <? super KeyType, ? super V, ? extends V> function)
+    {
+        for (PrimitiveBpTreeMap <V>.Cursor c = tree.scan (lo, loInclusive, hi, hiInclusive); c.next (); ) {
+            c.setValue (function.apply (toKey (c.key ()), c.value ()));
+        } // for
+    } // replaceAll
+
+    /********************************************************************************
+     * Remove the key and its value from the tree.
+     * @param key  the single-attribute key to remove
+     */
+    public V remove (Object key)
+    {
+        return accepts (key) ? tree.remove (toLong (key)) : null;
+    } // remove
+
+    /********************************************************************************
+     * Remove all the entries in range (the whole tree when unbounded).
+     */
+    public void clear ()
+    {
+        if (! bounded) tree.clear ();
+        else           super.clear ();
+    } // clear
+
+    /********************************************************************************
+     * Replace the contents of the (unbounded) index by bulk loading the tree.
+     * @param sorted      the entries in strictly ascending key order
+     * @param fillFactor  the fraction of each node to fill, in (0, 1]
+     * @throws IllegalArgumentException as for PrimitiveBpTreeMap.bulkLoad
+     */
+    public void bulkLoad (Iterator <? extends Map.Entry <KeyType, V>> sorted, double fillFactor)
+    {
+        if (bounded) throw new UnsupportedOperationException ("bulkLoad: not on a range view");
+        long []   keys   = new long [16];
+        List <V>  values = new ArrayList <> ();
+        while (sorted.hasNext ()) {
+            Map.Entry <KeyType, V> e = sorted.next ();
+            if (values.size () == keys.length) keys = Arrays.copyOf (keys, 2 * keys.length);
+            keys [values.size ()] = check (e.getKey ());
+            values.add (e.getValue ());
+        } // while
+        tree.bulkLoad (Arrays.copyOf (keys, values.size ()), values, fillFactor);
+    } // bulkLoad
+
+    /********************************************************************************
+     * Return null, as keys are in their natural order.
+     */
+    public Comparator <? super KeyType> comparator ()
+    {
+        return null;
+    } // comparator
+
+    /********************************************************************************
+     * Return the first (smallest) key in range.
+     */
+    public KeyType firstKey ()
+    {
+        PrimitiveBpTreeMap <V>.Cursor c = tree.scan (lo, loInclusive, hi, hiInclusive);
+        if (! c.next ()) throw new NoSuchElementException ();
+        return toKey (c.key ());
+    } // firstKey
+
+    /********************************************************************************
+     * Return the last (largest) key in range.
+     */
+    public KeyType lastKey ()
+    {
+        long k = bounded ? tree.lastKey (hi, hiInclusive) : tree.lastKey ();
+        if (k < lo || (k == lo && ! loInclusive)) throw new NoSuchElementException ();
+        return toKey (k);
+    } // lastKey
+
+    /********************************************************************************
+     * Return the portion of the index with keys up to toKey (inclusive).
+     */
+    public SortedMap <KeyType, V> headMap (KeyType toKey)
+    {
+        return view (lo, loInclusive, toLong (toKey), true);
+    } // headMap
+
+    /********************************************************************************
+     * Return the portion of the index with keys from fromKey (inclusive).
+     */
+    public SortedMap <KeyType, V> tailMap (KeyType fromKey)
+    {
+        return view (toLong (fromKey), true, hi, hiInclusive);
+    } // tailMap
+
+    /********************************************************************************
+     * Return the portion of the index with keys from fromKey to toKey (both inclusive).
+     */
+    public SortedMap <KeyType, V> subMap (KeyType fromKey, KeyType toKey)
+    {
+        return subMap (fromKey, true, toKey, true);
+    } // subMap
+
+    /********************************************************************************
+     * Return the portion of the index with keys between fromKey and toKey.
+     */
+    public SortedMap <KeyType, V> subMap (KeyType fromKey, boolean fromInclusive, KeyType toKey, boolean toInclusive)
+    {
+        if (fromKey.compareTo (toKey) > 0) throw new IllegalArgumentException ("subMap: fromKey > toKey");
+        return view (toLong (fromKey), fromInclusive, toLong (toKey), toInclusive);
+    } // subMap
+
+    /********************************************************************************
+     * Return keys that divide the index into about the given number of key ranges,
+     * from the tree's splitKeys.
+     * @param parts  the number of ranges wanted
+     * @return  up to parts - 1 keys in ascending order
+     */
+    public List <KeyType> splitKeys (int parts)
+    {
+        List <KeyType> keys = new ArrayList <> ();
+        for (long k : tree.splitKeys (parts)) {
+            KeyType key = toKey (k);
+            if (accepts (key)) keys.add (key);
+        } // for
+        return keys;
+    } // splitKeys
+
+    //--------------------------------------------------------------------------------
+    // Private Methods
+    //--------------------------------------------------------------------------------
+
+    /********************************************************************************
+     * Return a view bounded by the intersection of this range and the given one.
+     */
+    private PrimitiveKeyIndex <V> view (long _lo, boolean _loInclusive, long _hi, boolean _hiInclusive)
+    {
+        if (_lo < lo) { _lo = lo; _loInclusive = loInclusive; }
+        else if (_lo == lo) _loInclusive &= loInclusive;
+        if (_hi > hi) { _hi = hi; _hiInclusive = hiInclusive; }
+        else if (_hi == hi) _hiInclusive &= hiInclusive;
+        return new PrimitiveKeyIndex <> (tree, _lo, _loInclusive, _hi, _hiInclusive, true);
+    } // view
+
+    /********************************************************************************
+     * Determine whether the object is a single-attribute integer key within range.
+     */
+    private boolean accepts (Object key)
+    {
+        if (! (key instanceof KeyType)) return false;
+        KeyType k = (KeyType) key;
+        if (k.length () != 1 || ! (k.get (0) instanceof Integer || k.get (0) instanceof Long)) return false;
+        long v = toLong (k);
+        return (v > lo || (v == lo && loInclusive)) && (v < hi || (v == hi && hiInclusive));
+    } // accepts
+
+    /********************************************************************************
+     * Return the primitive form of the key, failing if it is not one accepted here.
+     */
+    private long check (KeyType key)
+    {
+        if (! accepts (key)) throw new IllegalArgumentException ("PrimitiveKeyIndex: key not accepted " + key);
+        return toLong (key);
+    } // check
+
+    /********************************************************************************
+     * Return the primitive form of a single-attribute integer key.
+     */
+    private static long toLong (Object key)
+    {
+        Comparable v = ((KeyType) key).get (0);
+        if (v == KeyType.MIN) return Long.MIN_VALUE;
+        if (v == KeyType.MAX) return Long.MAX_VALUE;
+        return ((Number) v).longValue ();
+    } // toLong
+
+    /********************************************************************************
+     * Return the KeyType for a primitive key, boxed as the column's type.
+     */
+    private KeyType toKey (long k)
+    {
+        return intKeys ? new KeyType ((int) k) : new KeyType (k);
+    } // toKey
+
+} // PrimitiveKeyIndex class
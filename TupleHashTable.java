@@ -0,0 +1,192 @@
+
+/************************************************************************************
+ * @file TupleHashTable.java
+ */
+
+import java.util.*;
+
+/************************************************************************************
+ * This class provides an open-addressing hash table of tuples keyed by the values in
+ * some of their columns, for hash joins and other set operations on tables.  Each
+ * slot holds one distinct key, found by linear probing, and the tuples having that
+ * key are chained through an int array, so nothing is allocated per tuple.  Values
+ * match by equals (and hash by hashCode), not by reference.
+ */
+class TupleHashTable
+{
+    /** The index returned when there is no (further) matching tuple.
+     */
+    static final int NONE = -1;
+
+    /** The columns holding the key of each tuple.
+     */
+    private final int [] cols;
+
+    /** The tuples in the order they were added, and for each the index of the next
+     *  tuple with the same key.
+     */
+    private Comparable [][] tuples;
+    private int []          next;
+    private int             size = 0;
+
+    /** For each slot, the hash of its key and the first and last tuple with the key
+     *  (head is NONE for an empty slot).
+     */
+    private int [] hashes, head, tail;
+
+    /** The number of slots less one, and the number of slots in use.
+     */
+    private int mask, keys = 0;
+
+    /********************************************************************************
+     * Construct an empty table for tuples keyed by the given columns.
+     * @param _cols     the key columns
+     * @param expected  the number of tuples expected
+     */
+    TupleHashTable (int [] _cols, int expected)
+    {
+        cols   = _cols;
+        tuples = new Comparable [Math.max (expected, 4)][];
+        next   = new int [tuples.length];
+        allocate (Integer.highestOneBit (Math.max (expected, 4) * 2 - 1) << 1);
+    } // constructor
+
+    /********************************************************************************
+     * Add the tuple, after any others with the same key.
+     * @param tup  the tuple to add
+     * @return  whether its key was not in the table before
+     */
+    boolean add (Comparable [] tup)
+    {
+        if (size == tuples.length) {
+            tuples = Arrays.copyOf (tuples, 2 * size);
+            next   = Arrays.copyOf (next, 2 * size);
+        } // if
+        tuples [size] = tup;
+        next [size]   = NONE;
+
+        int     h     = hash (tup, cols);
+        int     s     = slotOf (tup, cols, h);
+        boolean isNew = head [s] == NONE;
+        if (isNew) {
+            hashes [s] = h;
+            head [s]   = size;
+            keys++;
+        } else {
+            next [tail [s]] = size;
+        } // if
+        tail [s] = size++;
+        if (isNew && 2 * keys > head.length) allocate (2 * head.length);
+        return isNew;
+    } // add
+
+    /********************************************************************************
+     * Return the first tuple whose key equals the values in the probe's columns.
+     * @param probe      the tuple to match
+     * @param probeCols  the columns of the probe to match against the key columns
+     * @return  the index of the tuple, or NONE if there is none
+     */
+    int find (Comparable [] probe, int [] probeCols)
+    {
+        return head [slotOf (probe, probeCols, hash (probe, probeCols))];
+    } // find
+
+    /********************************************************************************
+     * Return the next tuple with the same key as tuple i.
+     * @param i  the index of a tuple
+     * @return  the index of the next tuple, or NONE if there is none
+     */
+    int next (int i)
+    {
+        return next [i];
+    } // next
+
+    /********************************************************************************
+     * Return tuple i.
+     */
+    Comparable [] get (int i)
+    {
+        return tuples [i];
+    } // get
+
+    /********************************************************************************
+     * Return the number of tuples in the table.
+     */
+    int size ()
+    {
+        return size;
+    } // size
+
+    /********************************************************************************
+     * Return the number of distinct keys in the table.
+     */
+    int keys ()
+    {
+        return keys;
+    } // keys
+
+    /********************************************************************************
+     * Hash the values in the given columns of the tuple.
+     * @param t      the tuple
+     * @param tCols  the columns to hash
+     */
+    static int hash (Comparable [] t, int [] tCols)
+    {
+        int h = 1;
+        for (int c : tCols) h = 31 * h + Objects.hashCode (t [c]);
+        h *= 0x9E3779B9;                                      // spread sequential hash codes
+        return h ^ (h >>> 16);
+    } // hash
+
+    //--------------------------------------------------------------------------------
+    // Private Methods
+    //--------------------------------------------------------------------------------
+
+    /********************************************************************************
+     * Return the slot holding the key of t (in tCols), or the empty slot where it
+     * would go.
+     */
+    private int slotOf (Comparable [] t, int [] tCols, int h)
+    {
+        int s = h & mask;
+        while (head [s] != NONE) {
+            if (hashes [s] == h && matches (tuples [head [s]], t, tCols)) return s;
+            s = (s + 1) & mask;
+        } // while
+        return s;
+    } // slotOf
+
+    /********************************************************************************
+     * Determine whether the key of tuple u equals the values in t's columns tCols.
+     */
+    private boolean matches (Comparable [] u, Comparable [] t, int [] tCols)
+    {
+        for (int j = 0; j < cols.length; j++) {
+            if (! Objects.equals (u [cols [j]], t [tCols [j]])) return false;
+        } // for
+        return true;
+    } // matches
+
+    /********************************************************************************
+     * Make the given (power of two) number of slots and put the keys back in them.
+     */
+    private void allocate (int slots)
+    {
+        int [] oldHashes = hashes, oldHead = head, oldTail = tail;
+        hashes = new int [slots];
+        head   = new int [slots];
+        tail   = new int [slots];
+        mask   = slots - 1;
+        Arrays.fill (head, NONE);
+        if (oldHead == null) return;
+        for (int s = 0; s < oldHead.length; s++) {
+            if (oldHead [s] == NONE) continue;
+            int t = oldHashes [s] & mask;
+            while (head [t] != NONE) t = (t + 1) & mask;
+            hashes [t] = oldHashes [s];
+            head [t]   = oldHead [s];
+            tail [t]   = oldTail [s];
+        } // for
+    } // allocate
+
+} // TupleHashTable class
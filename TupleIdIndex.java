@@ -0,0 +1,234 @@
+
+/************************************************************************************
+ * @file TupleIdIndex.java
+ */
+
+import java.util.*;
+import java.util.function.IntUnaryOperator;
+
+/************************************************************************************
+ * This class presents a sorted map from keys to tuple ids (positions in a table's
+ * list of tuples) as an index from keys to the tuples themselves.  It lets a table
+ * keep its index in an OffHeapBpTreeMap or PagedBpTreeMap, which store ids rather
+ * than references.  The ids go stale when tuples before them are removed from the
+ * list, so the table renumbers them after a delete.
+ */
+public class TupleIdIndex
+       extends AbstractMap <KeyType, Comparable []>
+       implements SortedMap <KeyType, Comparable []>
+{
+    /** The map from keys to tuple ids.
+     */
+    private final SortedMap <KeyType, Integer> ids;
+
+    /** The tuples the ids refer to.
+     */
+    private final List <Comparable []> tuples;
+
+    /********************************************************************************
+     * Construct an index over the tuples using the given map of ids.
+     * @param _ids     the map from keys to tuple ids
+     * @param _tuples  the tuples the ids refer to
+     */
+    public TupleIdIndex (SortedMap <KeyType, Integer> _ids, List <Comparable []> _tuples)
+    {
+        ids    = _ids;
+        tuples = _tuples;
+    } // constructor
+
+    /********************************************************************************
+     * Return the underlying map from keys to tuple ids.
+     */
+    public SortedMap <KeyType, Integer> ids ()
+    {
+        return ids;
+    } // ids
+
+    /********************************************************************************
+     * Return a set view of the key-tuple entries in ascending key order.
+     */
+    public Set <Map.Entry <KeyType, Comparable []>> entrySet ()
+    {
+        return new AbstractSet <Map.Entry <KeyType, Comparable []>> () {
+            public Iterator <Map.Entry <KeyType, Comparable []>> iterator ()
+            {
+                Iterator <Map.Entry <KeyType, Integer>> it = ids.entrySet ().iterator ();
+                return new Iterator <Map.Entry <KeyType, Comparable []>> () {
+                    public boolean hasNext () { return it.hasNext (); }
+                    public Map.Entry <KeyType, Comparable []> next ()
+                    {
+                        Map.Entry <KeyType, Integer> e = it.next ();
+                        return new SimpleImmutableEntry <> (e.getKey (), tuples.get (e.getValue ()));
+                    } // next
+                };
+            } // iterator
+
+            public int size ()
+            {
+                return ids.size ();
+            } // size
+        };
+    } // entrySet
+
+    /********************************************************************************
+     * Return the number of indexed keys.
+     */
+    public int size ()
+    {
+        return ids.size ();
+    } // size
+
+    /********************************************************************************
+     * Given the key, look up the tuple through its id.
+     */
+    public Comparable [] get (Object key)
+    {
+        Integer id = ids.get (key);
+        return (id == null) ? null : tuples.get (id);
+    } // get
+
+    /********************************************************************************
+     * Determine whether the key is indexed.
+     */
+    public boolean containsKey (Object key)
+    {
+        return ids.containsKey (key);
+    } // containsKey
+
+    /********************************************************************************
+     * Index the tuple, which must already be in the list (normally just appended).
+     */
+    public Comparable [] put (KeyType key, Comparable [] tup)
+    {
+        Integer id = ids.put (key, idOf (tup));
+        return (id == null) ? null : tuples.get (id);
+    } // put
+
+    /********************************************************************************
+     * Index the tuple unless the key already has one.
+     */
+    public Comparable [] putIfAbsent (KeyType key, Comparable [] tup)
+    {
+        Integer id = ids.get (key);
+        if (id != null) return tuples.get (id);
+        ids.put (key, idOf (tup));
+        return null;
+    } // putIfAbsent
+
+    /********************************************************************************
+     * Remove the key from the index, returning the tuple it referred to.
+     */
+    public Comparable [] remove (Object key)
+    {
+        Integer id = ids.remove (key);
+        return (id == null) ? null : tuples.get (id);
+    } // remove
+
+    /********************************************************************************
+     * Remove all the keys from the index.
+     */
+    public void clear ()
+    {
+        ids.clear ();
+    } // clear
+
+    /********************************************************************************
+     * Replace the contents of the index with the sorted key-id entries, bulk loading
+     * the map of ids when it is a B+Tree.
+     * @param sorted  the entries in ascending key order
+     */
+    @SuppressWarnings("unchecked")
+    public void loadIds (Iterator <? extends Map.Entry <KeyType, Integer>> sorted)
+    {
+        if (ids instanceof BpTreeMap) {
+            ((BpTreeMap <KeyType, Integer>) ids).bulkLoad (sorted, 1.0);
+        } else if (ids instanceof PrimitiveKeyIndex) {
+            ((PrimitiveKeyIndex <Integer>) ids).bulkLoad (sorted, 1.0);
+        } else {
+            ids.clear ();
+            while (sorted.hasNext ()) {
+                Map.Entry <KeyType, Integer> e = sorted.next ();
+                ids.put (e.getKey (), e.getValue ());
+            } // while
+        } // if
+    } // loadIds
+
+    /********************************************************************************
+     * Replace each tuple id with newId applied to it, in place in one pass over the
+     * map of ids (without rebuilding it), after tuples are removed from the list.
+     * The keys of the removed tuples must already be gone.
+     * @param newId  the new id for each id
+     */
+    public void renumber (IntUnaryOperator newId)
+    {
+        ids.replaceAll ((k, id) -> newId.applyAsInt (id));
+    } // renumber
+
+    /********************************************************************************
+     * Return the comparator of the map of ids.
+     */
+    public Comparator <? super KeyType> comparator ()
+    {
+        return ids.comparator ();
+    } // comparator
+
+    /********************************************************************************
+     * Return the first (smallest) key.
+     */
+    public KeyType firstKey ()
+    {
+        return ids.firstKey ();
+    } // firstKey
+
+    /********************************************************************************
+     * Return the last (largest) key.
+     */
+    public KeyType lastKey ()
+    {
+        return ids.lastKey ();
+    } // lastKey
+
+    /********************************************************************************
+     * Return the portion of the index given by headMap on the map of ids.
+     */
+    public SortedMap <KeyType, Comparable []> headMap (KeyType toKey)
+    {
+        return new TupleIdIndex (ids.headMap (toKey), tuples);
+    } // headMap
+
+    /********************************************************************************
+     * Return the portion of the index given by tailMap on the map of ids.
+     */
+    public SortedMap <KeyType, Comparable []> tailMap (KeyType fromKey)
+    {
+        return new TupleIdIndex (ids.tailMap (fromKey), tuples);
+    } // tailMap
+
+    /********************************************************************************
+     * Return the portion of the index given by subMap on the map of ids.
+     */
+    public SortedMap <KeyType, Comparable []> subMap (KeyType fromKey, KeyType toKey)
+    {
+        return new TupleIdIndex (ids.subMap (fromKey, toKey), tuples);
+    } // subMap
+
+    //--------------------------------------------------------------------------------
+    // Private Methods
+    //--------------------------------------------------------------------------------
+
+    /********************************************************************************
+     * Return the position of the tuple in the list, searching from the end since it
+     * is normally the tuple just inserted.  A ColumnStore builds its rows afresh, so
+     * there the tuple is matched by its values.
+     */
+    private int idOf (Comparable [] tup)
+    {
+        boolean byValue = tuples instanceof ColumnStore;
+        for (int i = tuples.size () - 1; i >= 0; i--) {
+            Comparable [] t = tuples.get (i);
+            if (t == tup || (byValue && Arrays.equals (t, tup))) return i;
+        } // for
+        throw new IllegalArgumentException ("TupleIdIndex: tuple is not in the table");
+    } // idOf
+
+} // TupleIdIndex class